@@ -16,7 +16,15 @@ package org.openmrs.module.muzima;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.muzima.monitor.DaoMetrics;
+import org.openmrs.module.muzima.monitor.LatencyTracker;
+import org.openmrs.module.muzima.monitor.MonitorRegistry;
+import org.openmrs.module.muzima.monitor.QueueHealthMonitor;
+import org.openmrs.module.muzima.monitor.QueueProcessorControl;
+import org.openmrs.module.muzima.task.QueueDataProcessor;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
@@ -50,6 +58,14 @@ public class MuzimaActivator implements ModuleActivator {
      * @see ModuleActivator#started()
      */
     public void started() {
+        MonitorRegistry.register("QueueProcessor", new QueueProcessorControl(QueueDataProcessor.getInstance()));
+        QueueHealthMonitor.getInstance().start();
+        AdministrationService administrationService = Context.getAdministrationService();
+        DaoMetrics.getInstance().setSlowThreshold(administrationService.getGlobalProperty(DaoMetrics.SLOW_THRESHOLD));
+        administrationService.addGlobalPropertyListener(DaoMetrics.getInstance());
+        LatencyTracker.getInstance().setSlo(administrationService.getGlobalProperty(LatencyTracker.LATENCY_SLO));
+        LatencyTracker.getInstance().load();
+        administrationService.addGlobalPropertyListener(LatencyTracker.getInstance());
         log.info("Muzima Processor Module started");
     }
 
@@ -64,6 +80,12 @@ public class MuzimaActivator implements ModuleActivator {
      * @see ModuleActivator#stopped()
      */
     public void stopped() {
+        MonitorRegistry.unregisterAll();
+        QueueHealthMonitor.getInstance().stop();
+        Context.getAdministrationService().removeGlobalPropertyListener(DaoMetrics.getInstance());
+        Context.getAdministrationService().removeGlobalPropertyListener(LatencyTracker.getInstance());
+        LatencyTracker.getInstance().save();
+        QueueDataProcessor.getInstance().shutdown();
         log.info("Muzima Processor Module stopped");
     }
 
@@ -0,0 +1,95 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.advice;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.muzima.monitor.DaoMetrics;
+import org.springframework.aop.support.AopUtils;
+
+import java.util.Collection;
+
+/**
+ * Time every call of the data daos and log the calls over the slow threshold with their arguments and row count. The
+ * search terms and the data may contain patient information, so only the numbers, such as ids and page sizes, are
+ * logged as they are: the strings are logged by length and the other arguments by type.
+ * The daos are wrapped by the auto proxy creator of the module application context, so adding a dao to the timed
+ * daos is a matter of adding its bean name there.
+ */
+public class DaoTimingInterceptor implements MethodInterceptor {
+
+    private final Log log = LogFactory.getLog(DaoTimingInterceptor.class);
+
+    @Override
+    public Object invoke(final MethodInvocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        Object result = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            String dao = invocation.getThis() == null
+                    ? invocation.getMethod().getDeclaringClass().getSimpleName()
+                    : AopUtils.getTargetClass(invocation.getThis()).getSimpleName();
+            String operation = dao + "." + invocation.getMethod().getName();
+            if (DaoMetrics.getInstance().record(operation, elapsed) && log.isWarnEnabled()) {
+                log.warn("Slow dao call " + operation + " on " + getEntity(dao)
+                        + " with " + formatArguments(invocation.getArguments())
+                        + " returned " + formatRows(result) + " in " + elapsed / 1000000 + " ms");
+            }
+        }
+    }
+
+    private String getEntity(final String dao) {
+        return StringUtils.removeEnd(StringUtils.removeStart(dao, "Hibernate"), "Dao");
+    }
+
+    private String formatArguments(final Object[] arguments) {
+        StringBuilder builder = new StringBuilder("(");
+        for (int i = 0; arguments != null && i < arguments.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(formatArgument(arguments[i]));
+        }
+        return builder.append(")").toString();
+    }
+
+    private String formatArgument(final Object argument) {
+        if (argument == null || argument instanceof Number || argument instanceof Boolean) {
+            return String.valueOf(argument);
+        }
+        if (argument instanceof String) {
+            return "String(" + ((String) argument).length() + ")";
+        }
+        if (argument instanceof Collection) {
+            return argument.getClass().getSimpleName() + "[" + ((Collection<?>) argument).size() + "]";
+        }
+        return argument.getClass().getSimpleName();
+    }
+
+    private String formatRows(final Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size() + " rows";
+        }
+        if (result instanceof Number) {
+            return "count " + result;
+        }
+        return result == null ? "nothing" : "1 row";
+    }
+}
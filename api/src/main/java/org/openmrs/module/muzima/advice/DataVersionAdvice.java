@@ -0,0 +1,108 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.advice;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.version.DataVersions;
+import org.springframework.aop.AfterReturningAdvice;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bump the version of the tables changed by the data service once the change is committed. The tables changed by each
+ * write method are declared below, whatever the storage mode does underneath: in the lifecycle storage the moves
+ * between the queue, error and archive data don't go through the save methods of the target tables. A write method
+ * missing from the declarations bumps all tables.
+ */
+public class DataVersionAdvice implements AfterReturningAdvice {
+
+    private static final String[] READ_METHODS = {"get", "count", "is", "await"};
+
+    private static final Map<String, List<String>> CHANGED_TABLES = new HashMap<String, List<String>>();
+
+    static {
+        declare(new String[]{"saveQueueData", "purgeQueueData", "purgeQueueDataIfExists"}, DataVersions.QUEUE);
+        declare(new String[]{"saveErrorData", "purgeErrorData"}, DataVersions.ERROR);
+        declare(new String[]{"saveArchiveData", "purgeArchiveData", "createArchivePartitions",
+                "dropArchivePartitions", "tierArchiveData"}, DataVersions.ARCHIVE);
+        declare(new String[]{"purgeExpiredData"}, DataVersions.ERROR, DataVersions.ARCHIVE);
+        declare(new String[]{"archiveQueueData", "processQueueData"}, DataVersions.QUEUE, DataVersions.ARCHIVE);
+        declare(new String[]{"failQueueData", "requeueErrorData"}, DataVersions.QUEUE, DataVersions.ERROR);
+        declare(new String[]{"saveDataSource", "purgeDataSource"}, DataVersions.SOURCE);
+        declare(new String[]{"markNotificationDataRead", "rebuildNotificationCounters", "saveNotificationData",
+                "broadcastNotificationData", "voidExpiredNotificationData", "purgeExpiredNotificationData",
+                "purgeNotificationData", "voidNotificationData"}, DataVersions.NOTIFICATION);
+        // orphaned payloads are not referenced by any data, no result changes.
+        declare(new String[]{"purgeOrphanedPayloads"});
+    }
+
+    private static void declare(final String[] methodNames, final String... tables) {
+        for (String methodName : methodNames) {
+            CHANGED_TABLES.put(methodName, Collections.unmodifiableList(Arrays.asList(tables)));
+        }
+    }
+
+    /**
+     * Get the tables changed by the data service method.
+     *
+     * @param method the data service method.
+     * @return the changed tables, empty for a read method.
+     * @should return the queue and error tables for failing queue data.
+     * @should return all tables for an undeclared write method.
+     * @should return no table for a read method.
+     */
+    static List<String> getChangedTables(final Method method) {
+        for (String readMethod : READ_METHODS) {
+            if (method.getName().startsWith(readMethod)) {
+                return Collections.emptyList();
+            }
+        }
+        List<String> tables = CHANGED_TABLES.get(method.getName());
+        return tables == null ? Arrays.asList(DataVersions.TABLES) : tables;
+    }
+
+    @Override
+    public void afterReturning(final Object returnValue, final Method method, final Object[] args, final Object target)
+            throws Throwable {
+        final List<String> tables = getChangedTables(method);
+        if (tables.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    increment(tables);
+                }
+            });
+        } else {
+            increment(tables);
+        }
+    }
+
+    private void increment(final List<String> tables) {
+        for (DataVersions dataVersions : Context.getRegisteredComponents(DataVersions.class)) {
+            for (String table : tables) {
+                dataVersions.increment(table);
+            }
+        }
+    }
+}
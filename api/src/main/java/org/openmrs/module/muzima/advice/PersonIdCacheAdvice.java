@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.advice;
+
+import org.openmrs.Person;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.notification.PersonCache;
+import org.openmrs.module.muzima.notification.PersonIdCache;
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Evict the persons from the person id cache after they are voided, unvoided, purged or merged through the person or
+ * patient service, and from the registered {@link PersonCache}s after they are also saved, as saving may change the
+ * rendered names.
+ */
+public class PersonIdCacheAdvice implements AfterReturningAdvice {
+
+    private static final String[] EVICTING_METHODS = {"void", "unvoid", "purge", "merge"};
+
+    private static final String[] CHANGING_METHODS = {"save", "void", "unvoid", "purge", "merge"};
+
+    @Override
+    public void afterReturning(final Object returnValue, final Method method, final Object[] args, final Object target)
+            throws Throwable {
+        if (!startsWithAny(method.getName(), CHANGING_METHODS)) {
+            return;
+        }
+        Set<String> personUuids = new HashSet<String>();
+        for (Object arg : args) {
+            collectPersonUuids(arg, personUuids);
+        }
+        if (personUuids.isEmpty()) {
+            return;
+        }
+        if (startsWithAny(method.getName(), EVICTING_METHODS)) {
+            for (PersonIdCache personIdCache : Context.getRegisteredComponents(PersonIdCache.class)) {
+                for (String personUuid : personUuids) {
+                    personIdCache.evict(personUuid);
+                }
+            }
+        }
+        for (PersonCache personCache : Context.getRegisteredComponents(PersonCache.class)) {
+            for (String personUuid : personUuids) {
+                personCache.evictPerson(personUuid);
+            }
+        }
+    }
+
+    private boolean startsWithAny(final String methodName, final String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (methodName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collectPersonUuids(final Object arg, final Set<String> personUuids) {
+        if (arg instanceof Person) {
+            personUuids.add(((Person) arg).getUuid());
+        } else if (arg instanceof Collection) {
+            for (Object element : (Collection<?>) arg) {
+                collectPersonUuids(element, personUuids);
+            }
+        }
+    }
+}
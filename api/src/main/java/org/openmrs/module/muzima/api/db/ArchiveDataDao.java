@@ -2,7 +2,78 @@ package org.openmrs.module.muzima.api.db;
 
 import org.openmrs.module.muzima.model.ArchiveData;
 
+import java.util.Date;
+import java.util.List;
+
 /**
  */
-public interface ArchiveDataDao extends DataDao<ArchiveData> {
+public interface ArchiveDataDao extends AuditableDataDao<ArchiveData> {
+
+    /**
+     * Get archive data with matching search term archived within the date range for particular page.
+     *
+     * @param search     the search term.
+     * @param startDate  the start of the archive date range (inclusive), can be null.
+     * @param endDate    the end of the archive date range (exclusive), can be null.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return list of archive data for the page.
+     */
+    List<ArchiveData> getPagedData(final String search, final Date startDate, final Date endDate,
+                                   final Integer pageNumber, final Integer pageSize);
+
+    /**
+     * Get the total number of archive data with matching search term archived within the date range.
+     *
+     * @param search    the search term.
+     * @param startDate the start of the archive date range (inclusive), can be null.
+     * @param endDate   the end of the archive date range (exclusive), can be null.
+     * @return total number of archive data within the date range.
+     */
+    Number countData(final String search, final Date startDate, final Date endDate);
+
+    /**
+     * Flag whether the archive table is partitioned by the archive date.
+     *
+     * @return true when the archive table is partitioned.
+     */
+    boolean isPartitioned();
+
+    /**
+     * Create the monthly archive partitions up to and including the month of the given date.
+     *
+     * @param date the date which must be covered by a monthly partition.
+     * @return the number of created partitions.
+     * @should create monthly partitions up to the month of the date.
+     * @should not create partition when the month is already covered.
+     */
+    int createPartitions(final Date date);
+
+    /**
+     * Drop the archive partitions which only contain data archived before the given date.
+     *
+     * @param date the retention cut off date.
+     * @return the number of dropped partitions.
+     * @should drop partitions older than the date.
+     * @should not drop partition containing data archived after the date.
+     */
+    int dropPartitions(final Date date);
+
+    /**
+     * Get archive data archived before the given date, ordered by the id.
+     *
+     * @param date       the archive date cut off.
+     * @param afterId    only return archive data with id greater than this id, can be null.
+     * @param maxResults the maximum number of archive data to return.
+     * @return the archive data archived before the date.
+     */
+    List<ArchiveData> getDataArchivedBefore(final Date date, final Integer afterId, final Integer maxResults);
+
+    /**
+     * Delete the archive data with the given ids in bulk, without calling the data handlers.
+     *
+     * @param ids the archive data ids.
+     * @return the number of deleted archive data.
+     */
+    int deleteData(final List<Integer> ids);
 }
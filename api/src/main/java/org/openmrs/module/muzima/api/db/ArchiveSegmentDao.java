@@ -0,0 +1,46 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db;
+
+import org.openmrs.module.muzima.model.ArchiveData;
+
+import java.util.Iterator;
+
+/**
+ * Dao for the cold archive tier. Old archive data is moved out of the database into compressed, append only segment
+ * files. Each segment has a sidecar index mapping the uuid of the archive data to its location in the segment.
+ */
+public interface ArchiveSegmentDao {
+
+    /**
+     * Write the archive data into a new segment. The segment is only visible for lookup after the segment and the
+     * index have been forced to the disk.
+     *
+     * @param archiveData the archive data to be written.
+     * @return the number of archive data written into the segment.
+     * @should write all archive data into a new segment.
+     * @should not create segment when there is no archive data.
+     */
+    int writeSegment(final Iterator<ArchiveData> archiveData);
+
+    /**
+     * Return the archive data with the given uuid from the segments.
+     *
+     * @param uuid the archive data uuid.
+     * @return the archive data with the matching uuid or null when no archive data with matching uuid.
+     * @should return archive data with matching uuid.
+     * @should return null when no archive data with matching uuid.
+     */
+    ArchiveData getArchiveDataByUuid(final String uuid);
+}
@@ -0,0 +1,50 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db;
+
+import org.openmrs.module.muzima.model.AuditableData;
+import org.openmrs.module.muzima.model.RetentionPolicy;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Dao for the queue, error and archive data.
+ */
+public interface AuditableDataDao<T extends AuditableData> extends DataDao<T> {
+
+    /**
+     * Delete a chunk of data expired according to the retention policy. The data is deleted in bulk, so the data
+     * handlers are not called for the deleted data.
+     *
+     * @param policy             the retention policy.
+     * @param overridingPolicies the more specific policies, data covered by these policies is not deleted.
+     * @param cutOffDate         the retention cut off date.
+     * @param chunkSize          the maximum number of data to delete.
+     * @return the number of deleted data.
+     * @should delete expired data matching the policy.
+     * @should not delete data covered by the overriding policies.
+     * @should not delete more than the chunk size.
+     */
+    int purgeExpiredData(final RetentionPolicy policy, final List<RetentionPolicy> overridingPolicies,
+                         final Date cutOffDate, final Integer chunkSize);
+
+    /**
+     * Get the number of data and the creation date of the oldest data, grouped by discriminator and data source.
+     *
+     * @return rows of discriminator, data source name, number of data and oldest creation date.
+     * @should return one row per discriminator and data source.
+     */
+    List<Object[]> getDataStatistics();
+}
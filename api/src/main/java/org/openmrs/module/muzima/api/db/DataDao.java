@@ -66,6 +66,17 @@ public interface DataDao<T extends Data> extends SingleClassDao<T> {
      */
     void purgeData(final T data);
 
+    /**
+     * Delete data from the database only when it still exists, so a data already removed by a concurrent transaction
+     * is reported instead of failing when the session is flushed.
+     *
+     * @param data the data.
+     * @return true when the data was deleted by this call.
+     * @should remove data from the database and return true.
+     * @should return false when the data was already removed.
+     */
+    boolean purgeDataIfExists(final T data);
+
     /**
      * Get data with matching search term for particular page.
      *
@@ -76,6 +87,16 @@ public interface DataDao<T extends Data> extends SingleClassDao<T> {
      */
     List<T> getPagedData(final String search, final Integer pageNumber, final Integer pageSize);
 
+    /**
+     * Get data with matching search term starting at the given position.
+     *
+     * @param search      the search term.
+     * @param firstResult the position of the first data, starting at 0.
+     * @param maxResults  the maximum number of data.
+     * @return list of data in the range.
+     */
+    List<T> getDataRange(final String search, final Integer firstResult, final Integer maxResults);
+
     /**
      * Get the total number of data with matching search term.
      *
@@ -17,6 +17,6 @@ import org.openmrs.module.muzima.model.ErrorData;
 
 /**
  */
-public interface ErrorDataDao extends DataDao<ErrorData> {
+public interface ErrorDataDao extends AuditableDataDao<ErrorData> {
 
 }
@@ -0,0 +1,69 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db;
+
+import org.openmrs.module.muzima.model.ArchiveData;
+import org.openmrs.module.muzima.model.ErrorData;
+import org.openmrs.module.muzima.model.QueueData;
+
+/**
+ * Dao for the single table lifecycle storage. When the lifecycle storage is enabled, the queue, error and archive data
+ * live in a single table and moving a data between them only updates the status of the row.
+ */
+public interface LifecycleDataDao {
+
+    /**
+     * Flag whether the queue, error and archive data are stored in the single lifecycle table.
+     *
+     * @return true when the lifecycle storage is enabled.
+     */
+    boolean isEnabled();
+
+    /**
+     * Get the entity name used to persist the data class in the lifecycle table.
+     *
+     * @param dataClass the data class.
+     * @return the lifecycle entity name of the data class.
+     */
+    String getEntityName(final Class<?> dataClass);
+
+    /**
+     * Move the queue data to the archive by updating the status of the row.
+     *
+     * @param queueData the queue data.
+     * @param message   the archive message.
+     * @return the archive view of the data.
+     * @should update the status of the queue data to archived.
+     */
+    ArchiveData archiveQueueData(final QueueData queueData, final String message);
+
+    /**
+     * Move the queue data to the error by updating the status of the row.
+     *
+     * @param queueData the queue data.
+     * @param message   the error message.
+     * @return the error view of the data.
+     * @should update the status of the queue data to error.
+     */
+    ErrorData failQueueData(final QueueData queueData, final String message);
+
+    /**
+     * Move the error data back to the queue by updating the status of the row.
+     *
+     * @param errorData the error data.
+     * @return the queue view of the data.
+     * @should update the status of the error data to queued.
+     */
+    QueueData requeueErrorData(final ErrorData errorData);
+}
@@ -13,10 +13,16 @@
  */
 package org.openmrs.module.muzima.api.db;
 
-import org.openmrs.Person;
+import org.openmrs.Location;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.module.muzima.model.NotificationCounter;
 import org.openmrs.module.muzima.model.NotificationData;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * TODO: Write brief description about the class here.
@@ -26,22 +32,178 @@ public interface NotificationDataDao extends DataDao<NotificationData> {
     /**
      * Get all notification for this particular person.
      *
-     * @param person the person for whom the notification designated to.
+     * @param personId the id of the person for whom the notification designated to.
      * @return the list of all notification for that particular person.
      */
-    List<NotificationData> getNotificationsByReceiver(final Person person, final String search,
+    List<NotificationData> getNotificationsByReceiver(final Integer personId, final String search, final Boolean read,
                                                       final Integer pageNumber, final Integer pageSize);
 
     /**
      * Get all notification from this particular person.
      *
-     * @param person the person from where the notification originated from.
+     * @param personId the id of the person from where the notification originated from.
      * @return the list of all notification from that particular person.
      */
-    List<NotificationData> getNotificationsBySender(final Person person, final String search,
+    List<NotificationData> getNotificationsBySender(final Integer personId, final String search,
                                                     final Integer pageNumber, final Integer pageSize);
 
-    Number countNotificationsByReceiver(Person person, String search);
+    /**
+     * Get the notification for this particular person starting at the given position.
+     *
+     * @param personId    the id of the person for whom the notification designated to.
+     * @param search      the search term.
+     * @param read        the read state of the notification, null to return read and unread notification.
+     * @param firstResult the position of the first notification, starting at 0.
+     * @param maxResults  the maximum number of notification.
+     * @return the notification for that particular person in the range.
+     */
+    List<NotificationData> getNotificationRangeByReceiver(final Integer personId, final String search,
+                                                          final Boolean read, final Integer firstResult,
+                                                          final Integer maxResults);
+
+    /**
+     * Get the notification from this particular person starting at the given position.
+     *
+     * @param personId    the id of the person from where the notification originated from.
+     * @param search      the search term.
+     * @param firstResult the position of the first notification, starting at 0.
+     * @param maxResults  the maximum number of notification.
+     * @return the notification from that particular person in the range.
+     */
+    List<NotificationData> getNotificationRangeBySender(final Integer personId, final String search,
+                                                        final Integer firstResult, final Integer maxResults);
+
+    Number countNotificationsByReceiver(Integer personId, String search, Boolean read);
+
+    Number countNotificationsBySender(Integer personId, String search);
+
+    /**
+     * Get the notification for this particular person changed after the sync cursor, including the voided
+     * notification. The notification are ordered by the date changed and the id.
+     *
+     * @param personId    the id of the person for whom the notification designated to.
+     * @param dateChanged the date changed of the sync cursor, null to start from the beginning.
+     * @param id          the id of the sync cursor.
+     * @param until       only return notification changed before this date.
+     * @param maxResults  the maximum number of notification to return.
+     * @return the list of notification changed after the sync cursor.
+     */
+    List<NotificationData> getNotificationsByReceiverChangedSince(final Integer personId, final Date dateChanged,
+                                                                  final Integer id, final Date until,
+                                                                  final Integer maxResults);
+
+    /**
+     * Get the notification counter of the receiver. When the receiver has no counter yet, the counts are computed from
+     * the notification table.
+     *
+     * @param personId the receiver person id.
+     * @return the notification counter of the receiver.
+     */
+    NotificationCounter getNotificationCounter(final Integer personId);
+
+    /**
+     * Apply the changes to the notification counter of the receiver, in the current transaction.
+     *
+     * @param personId    the receiver person id.
+     * @param totalDelta  the change of the total number of notification.
+     * @param unreadDelta the change of the number of unread notification.
+     */
+    void updateNotificationCounter(final Integer personId, final int totalDelta, final int unreadDelta);
+
+    /**
+     * Get the stored receiver and counted state of the notification, read from the database without flushing the
+     * pending changes of the session.
+     *
+     * @param id the notification id.
+     * @return the receiver person id, 1 when the notification is counted in the total and 1 when it is counted as
+     * unread, or null when the notification is not stored.
+     */
+    int[] getStoredCounterState(final Integer id);
+
+    /**
+     * Rebuild all notification counters from the notification table.
+     *
+     * @return the number of notification counters.
+     */
+    int rebuildNotificationCounters();
+
+    /**
+     * Mark the notification of the receiver with the given uuids read or unread with a bulk update, and update the
+     * unread count of the receiver. Voided notification and notification already in the requested read state are left
+     * untouched.
+     *
+     * @param personId    the receiver person id, the notification of other receivers are left untouched.
+     * @param uuids       the notification uuids.
+     * @param read        true to mark the notification read, false to mark them unread.
+     * @param dateChanged the date of the change.
+     * @param changedBy   the user making the change.
+     * @return the number of updated notification for each receiver person id.
+     */
+    Map<Integer, Integer> updateReadState(final Integer personId, final List<String> uuids, final boolean read,
+                                          final Date dateChanged, final User changedBy);
+
+    /**
+     * Get the person ids of the non retired users having the role.
+     *
+     * @param role the role.
+     * @return the person ids of the users with the role.
+     */
+    List<Integer> getPersonIdsByRole(final Role role);
+
+    /**
+     * Get the person ids of the non retired users having the location as their default location.
+     *
+     * @param location the location.
+     * @return the person ids of the users working at the location.
+     */
+    List<Integer> getPersonIdsByLocation(final Location location);
+
+    /**
+     * Insert a copy of the notification for each receiver with batched inserts, without loading the receivers. The
+     * notification counters are not updated.
+     *
+     * @param notificationData the notification to copy, the receiver of the notification is ignored.
+     * @param receiverIds      the person ids of the receivers.
+     * @return the number of inserted notification.
+     */
+    int saveNotifications(final NotificationData notificationData, final Collection<Integer> receiverIds);
 
-    Number countNotificationsBySender(Person person, String search);
+    /**
+     * Add one unread notification to the counters of the receivers, creating the missing counters from the
+     * notification table.
+     *
+     * @param receiverIds the person ids of the receivers.
+     */
+    void incrementNotificationCounters(final Collection<Integer> receiverIds);
+
+    /**
+     * Void a chunk of notification expired before the date with a bulk update, and update the counters of the
+     * receivers.
+     *
+     * @param date        the expiry cut off date.
+     * @param chunkSize   the maximum number of notification to void.
+     * @param dateChanged the date of the change.
+     * @param voidedBy    the user voiding the notification.
+     * @return the number of voided notification for each receiver person id.
+     */
+    Map<Integer, Integer> voidExpiredNotifications(final Date date, final Integer chunkSize, final Date dateChanged,
+                                                   final User voidedBy);
+
+    /**
+     * Delete a chunk of notification expired before the date with a bulk delete, and update the counters of the
+     * receivers.
+     *
+     * @param date      the expiry cut off date.
+     * @param chunkSize the maximum number of notification to delete.
+     * @return the number of deleted notification for each receiver person id.
+     */
+    Map<Integer, Integer> purgeExpiredNotifications(final Date date, final Integer chunkSize);
+
+    /**
+     * Get the id of the non voided person with the given uuid, without loading the person.
+     *
+     * @param uuid the person uuid.
+     * @return the person id or null when no non voided person with matching uuid.
+     */
+    Integer getPersonIdByUuid(final String uuid);
 }
@@ -0,0 +1,30 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db;
+
+/**
+ * Dao for the content addressed payload shared by the queue, error and archive data.
+ */
+public interface PayloadDao {
+
+    /**
+     * Delete a chunk of payloads which are not referenced by any queue, error or archive data anymore.
+     *
+     * @param chunkSize the maximum number of payloads to delete.
+     * @return the number of deleted payloads.
+     * @should delete payloads without referencing data.
+     * @should not delete payloads referenced by data.
+     */
+    int purgeOrphanedPayloads(final Integer chunkSize);
+}
@@ -4,5 +4,5 @@ import org.openmrs.module.muzima.model.QueueData;
 
 /**
  */
-public interface QueueDataDao extends DataDao<QueueData> {
+public interface QueueDataDao extends AuditableDataDao<QueueData> {
 }
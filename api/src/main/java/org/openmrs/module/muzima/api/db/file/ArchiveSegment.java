@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A single cold archive segment. The segment file is a sequence of gzip members, one for each archive data. The index
+ * file is a sorted list of fixed width entries (uuid, offset and length of the gzip member) which is memory mapped and
+ * binary searched.
+ */
+class ArchiveSegment {
+
+    static final int UUID_LENGTH = 38;
+
+    static final int ENTRY_LENGTH = UUID_LENGTH + 8 + 4;
+
+    private final File segmentFile;
+
+    private final MappedByteBuffer index;
+
+    ArchiveSegment(final File segmentFile, final File indexFile) throws IOException {
+        this.segmentFile = segmentFile;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(indexFile, "r");
+        try {
+            // the mapping stays valid after the file is closed.
+            index = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Convert the uuid into the fixed width index key.
+     *
+     * @param uuid the uuid.
+     * @return the index key of the uuid.
+     */
+    static byte[] toKey(final String uuid) {
+        byte[] key = new byte[UUID_LENGTH];
+        for (int i = 0; i < uuid.length() && i < UUID_LENGTH; i++) {
+            key[i] = (byte) uuid.charAt(i);
+        }
+        return key;
+    }
+
+    /**
+     * Compare two index keys as unsigned bytes.
+     */
+    static int compareKey(final byte[] key, final byte[] otherKey) {
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            int difference = (key[i] & 0xff) - (otherKey[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Read the compressed record of the archive data with the given uuid.
+     *
+     * @param uuid the archive data uuid.
+     * @return the compressed record or null when the uuid is not in this segment.
+     * @throws IOException when reading the segment file failed.
+     */
+    byte[] find(final String uuid) throws IOException {
+        byte[] key = toKey(uuid);
+        int low = 0;
+        int high = index.capacity() / ENTRY_LENGTH - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int position = middle * ENTRY_LENGTH;
+            int comparison = compareEntry(position, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return read(index.getLong(position + UUID_LENGTH), index.getInt(position + UUID_LENGTH + 8));
+            }
+        }
+        return null;
+    }
+
+    private int compareEntry(final int position, final byte[] key) {
+        // absolute gets only, the buffer position is shared between the threads.
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            int difference = (index.get(position + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    private byte[] read(final long offset, final int length) throws IOException {
+        byte[] record = new byte[length];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "r");
+        try {
+            randomAccessFile.seek(offset);
+            randomAccessFile.readFully(record);
+        } finally {
+            randomAccessFile.close();
+        }
+        return record;
+    }
+}
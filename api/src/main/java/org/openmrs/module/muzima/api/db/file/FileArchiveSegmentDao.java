@@ -0,0 +1,335 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db.file;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
+import org.openmrs.module.muzima.api.db.ArchiveSegmentDao;
+import org.openmrs.module.muzima.model.ArchiveData;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File based cold archive tier. The segments live in the muzima/archive folder of the application data directory.
+ */
+public class FileArchiveSegmentDao implements ArchiveSegmentDao {
+
+    private static final String SEGMENT_DIRECTORY = "muzima" + File.separator + "archive";
+
+    private static final String SEGMENT_EXTENSION = ".seg.gz";
+
+    private static final String INDEX_EXTENSION = ".idx";
+
+    private static final String PENDING_EXTENSION = ".tmp";
+
+    private static final int RECORD_VERSION = 1;
+
+    private final Log log = LogFactory.getLog(FileArchiveSegmentDao.class);
+
+    private File segmentDirectory;
+
+    private List<ArchiveSegment> segments;
+
+    /**
+     * Override the segment directory, mostly useful for testing.
+     *
+     * @param segmentDirectory the segment directory.
+     */
+    public void setSegmentDirectory(final File segmentDirectory) {
+        this.segmentDirectory = segmentDirectory;
+    }
+
+    /**
+     * Write the archive data into a new segment. The segment is only visible for lookup after the segment and the
+     * index have been forced to the disk.
+     *
+     * @param archiveData the archive data to be written.
+     * @return the number of archive data written into the segment.
+     * @should write all archive data into a new segment.
+     * @should not create segment when there is no archive data.
+     */
+    @Override
+    public int writeSegment(final Iterator<ArchiveData> archiveData) {
+        File directory = getSegmentDirectory();
+        String name = createSegmentName(directory);
+        File segmentFile = new File(directory, name + SEGMENT_EXTENSION);
+        File indexFile = new File(directory, name + INDEX_EXTENSION);
+        File pendingIndexFile = new File(directory, name + INDEX_EXTENSION + PENDING_EXTENSION);
+        try {
+            List<IndexEntry> entries = new ArrayList<IndexEntry>();
+            FileOutputStream segmentStream = new FileOutputStream(segmentFile);
+            try {
+                long offset = 0;
+                while (archiveData.hasNext()) {
+                    ArchiveData data = archiveData.next();
+                    byte[] record = encode(data);
+                    segmentStream.write(record);
+                    entries.add(new IndexEntry(ArchiveSegment.toKey(data.getUuid()), offset, record.length));
+                    offset = offset + record.length;
+                }
+                segmentStream.getChannel().force(true);
+            } finally {
+                segmentStream.close();
+            }
+
+            if (entries.isEmpty()) {
+                segmentFile.delete();
+                return 0;
+            }
+
+            Collections.sort(entries);
+            FileOutputStream indexStream = new FileOutputStream(pendingIndexFile);
+            try {
+                DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(indexStream));
+                for (IndexEntry entry : entries) {
+                    outputStream.write(entry.key);
+                    outputStream.writeLong(entry.offset);
+                    outputStream.writeInt(entry.length);
+                }
+                outputStream.flush();
+                indexStream.getChannel().force(true);
+            } finally {
+                indexStream.close();
+            }
+            // the index only appears once the segment is complete, a segment without index is never read.
+            if (!pendingIndexFile.renameTo(indexFile)) {
+                throw new IOException("Unable to rename the segment index: " + pendingIndexFile);
+            }
+
+            synchronized (this) {
+                if (segments != null) {
+                    segments.add(0, new ArchiveSegment(segmentFile, indexFile));
+                }
+            }
+            log.info("Archive segment " + segmentFile + " written with " + entries.size() + " archive data.");
+            return entries.size();
+        } catch (IOException e) {
+            segmentFile.delete();
+            pendingIndexFile.delete();
+            throw new APIException("Unable to write the archive segment: " + segmentFile, e);
+        }
+    }
+
+    /**
+     * Return the archive data with the given uuid from the segments.
+     *
+     * @param uuid the archive data uuid.
+     * @return the archive data with the matching uuid or null when no archive data with matching uuid.
+     * @should return archive data with matching uuid.
+     * @should return null when no archive data with matching uuid.
+     */
+    @Override
+    public ArchiveData getArchiveDataByUuid(final String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        try {
+            for (ArchiveSegment segment : getSegments()) {
+                byte[] record = segment.find(uuid);
+                if (record != null) {
+                    return decode(record);
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new APIException("Unable to read the archive segments.", e);
+        }
+    }
+
+    private synchronized File getSegmentDirectory() {
+        if (segmentDirectory == null) {
+            segmentDirectory = OpenmrsUtil.getDirectoryInApplicationDataDirectory(SEGMENT_DIRECTORY);
+        }
+        return segmentDirectory;
+    }
+
+    private synchronized List<ArchiveSegment> getSegments() throws IOException {
+        if (segments == null) {
+            File directory = getSegmentDirectory();
+            File[] indexFiles = directory.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(final File dir, final String name) {
+                    return name.endsWith(INDEX_EXTENSION);
+                }
+            });
+            if (indexFiles == null) {
+                indexFiles = new File[0];
+            }
+            // the segment names sort by creation time, search the newest segments first.
+            Arrays.sort(indexFiles, new Comparator<File>() {
+                @Override
+                public int compare(final File file, final File otherFile) {
+                    return otherFile.getName().compareTo(file.getName());
+                }
+            });
+            List<ArchiveSegment> archiveSegments = new ArrayList<ArchiveSegment>();
+            for (File indexFile : indexFiles) {
+                String name = indexFile.getName();
+                File segmentFile = new File(directory, name.substring(0, name.length() - INDEX_EXTENSION.length())
+                        + SEGMENT_EXTENSION);
+                if (segmentFile.exists()) {
+                    archiveSegments.add(new ArchiveSegment(segmentFile, indexFile));
+                }
+            }
+            segments = archiveSegments;
+        }
+        // lookups iterate over a copy of the list without holding the lock.
+        return new ArrayList<ArchiveSegment>(segments);
+    }
+
+    private String createSegmentName(final File directory) {
+        String prefix = "segment-" + new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
+        String name = prefix;
+        int sequence = 0;
+        while (new File(directory, name + SEGMENT_EXTENSION).exists()) {
+            name = prefix + "-" + (++sequence);
+        }
+        return name;
+    }
+
+    private byte[] encode(final ArchiveData archiveData) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(new GZIPOutputStream(bytes));
+        try {
+            outputStream.writeInt(RECORD_VERSION);
+            writeString(outputStream, archiveData.getUuid());
+            writeString(outputStream, archiveData.getDiscriminator());
+            writeString(outputStream, archiveData.getDataSource() == null ? null : archiveData.getDataSource().getUuid());
+            writeString(outputStream, archiveData.getMessage());
+            writeString(outputStream, archiveData.getPayload());
+            writeDate(outputStream, archiveData.getDateArchived());
+            writeInteger(outputStream, archiveData.getCreator() == null ? null : archiveData.getCreator().getUserId());
+            writeDate(outputStream, archiveData.getDateCreated());
+            writeInteger(outputStream, archiveData.getChangedBy() == null ? null : archiveData.getChangedBy().getUserId());
+            writeDate(outputStream, archiveData.getDateChanged());
+        } finally {
+            outputStream.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private ArchiveData decode(final byte[] record) throws IOException {
+        DataInputStream inputStream = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(record)));
+        try {
+            int version = inputStream.readInt();
+            if (version != RECORD_VERSION) {
+                throw new IOException("Unsupported archive record version: " + version);
+            }
+            ArchiveData archiveData = new ArchiveData();
+            archiveData.setUuid(readString(inputStream));
+            archiveData.setDiscriminator(readString(inputStream));
+            String dataSourceUuid = readString(inputStream);
+            if (dataSourceUuid != null) {
+                // only the reference is stored, the service resolves the actual data source.
+                DataSource dataSource = new DataSource();
+                dataSource.setUuid(dataSourceUuid);
+                archiveData.setDataSource(dataSource);
+            }
+            archiveData.setMessage(readString(inputStream));
+            archiveData.setPayload(readString(inputStream));
+            archiveData.setDateArchived(readDate(inputStream));
+            Integer creator = readInteger(inputStream);
+            archiveData.setCreator(creator == null ? null : new User(creator));
+            archiveData.setDateCreated(readDate(inputStream));
+            Integer changedBy = readInteger(inputStream);
+            archiveData.setChangedBy(changedBy == null ? null : new User(changedBy));
+            archiveData.setDateChanged(readDate(inputStream));
+            return archiveData;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void writeString(final DataOutputStream outputStream, final String value) throws IOException {
+        if (value == null) {
+            outputStream.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+    }
+
+    private String readString(final DataInputStream inputStream) throws IOException {
+        int length = inputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        inputStream.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private void writeDate(final DataOutputStream outputStream, final Date value) throws IOException {
+        outputStream.writeLong(value == null ? Long.MIN_VALUE : value.getTime());
+    }
+
+    private Date readDate(final DataInputStream inputStream) throws IOException {
+        long value = inputStream.readLong();
+        return value == Long.MIN_VALUE ? null : new Date(value);
+    }
+
+    private void writeInteger(final DataOutputStream outputStream, final Integer value) throws IOException {
+        outputStream.writeBoolean(value != null);
+        if (value != null) {
+            outputStream.writeInt(value);
+        }
+    }
+
+    private Integer readInteger(final DataInputStream inputStream) throws IOException {
+        return inputStream.readBoolean() ? inputStream.readInt() : null;
+    }
+
+    private static class IndexEntry implements Comparable<IndexEntry> {
+
+        private final byte[] key;
+
+        private final long offset;
+
+        private final int length;
+
+        private IndexEntry(final byte[] key, final long offset, final int length) {
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(final IndexEntry entry) {
+            return ArchiveSegment.compareKey(key, entry.key);
+        }
+    }
+}
@@ -13,14 +13,38 @@
  */
 package org.openmrs.module.muzima.api.db.hibernate;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.openmrs.module.muzima.api.db.ArchiveDataDao;
 import org.openmrs.module.muzima.model.ArchiveData;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
 
 /**
+ * The archive table is partitioned by month on the archive date (on MySQL with the split storage). Each partition
+ * holds the data archived before its upper bound, the last partition is the catch all partition for future data.
  */
-public class HibernateArchiveDataDao extends HibernateDataDao<ArchiveData> implements ArchiveDataDao {
+public class HibernateArchiveDataDao extends HibernateAuditableDataDao<ArchiveData> implements ArchiveDataDao {
+
+    private static final String ARCHIVE_TABLE = "muzima_archive_data";
+
+    private static final String FUTURE_PARTITION = "p_future";
+
+    private static final String PARTITION_QUERY = "from information_schema.partitions " +
+            "where table_schema = database() and table_name = '" + ARCHIVE_TABLE + "' and partition_name is not null";
 
     private final Log log = LogFactory.getLog(HibernateArchiveDataDao.class);
 
@@ -30,4 +54,215 @@ public class HibernateArchiveDataDao extends HibernateDataDao<ArchiveData> imple
     protected HibernateArchiveDataDao() {
         super(ArchiveData.class);
     }
+
+    /**
+     * The archive data is expired based on the date it was archived.
+     *
+     * @return the retention date property.
+     */
+    @Override
+    protected String getRetentionDateProperty() {
+        return "dateArchived";
+    }
+
+    /**
+     * Get archive data with matching search term archived within the date range for particular page.
+     *
+     * @param search     the search term.
+     * @param startDate  the start of the archive date range (inclusive), can be null.
+     * @param endDate    the end of the archive date range (exclusive), can be null.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return list of archive data for the page.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ArchiveData> getPagedData(final String search, final Date startDate, final Date endDate,
+                                          final Integer pageNumber, final Integer pageSize) {
+        Criteria criteria = createCriteria(search, startDate, endDate);
+        if (pageNumber != null) {
+            criteria.setFirstResult((pageNumber - 1) * pageSize);
+        }
+        if (pageSize != null) {
+            criteria.setMaxResults(pageSize);
+        }
+        criteria.addOrder(Order.desc("dateCreated"));
+        return criteria.list();
+    }
+
+    /**
+     * Get the total number of archive data with matching search term archived within the date range.
+     *
+     * @param search    the search term.
+     * @param startDate the start of the archive date range (inclusive), can be null.
+     * @param endDate   the end of the archive date range (exclusive), can be null.
+     * @return total number of archive data within the date range.
+     */
+    @Override
+    public Number countData(final String search, final Date startDate, final Date endDate) {
+        Criteria criteria = createCriteria(search, startDate, endDate);
+        criteria.setProjection(Projections.rowCount());
+        return (Number) criteria.uniqueResult();
+    }
+
+    /**
+     * Flag whether the archive table is partitioned by the archive date.
+     *
+     * @return true when the archive table is partitioned.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public boolean isPartitioned() {
+        // the lifecycle storage doesn't use the archive table and only the mysql changeset partitions the table.
+        if (!ArchiveData.class.getName().equals(getEntityName())
+                || !(((SessionFactoryImplementor) getSessionFactory()).getDialect() instanceof MySQLDialect)) {
+            return false;
+        }
+        Number partitions = (Number) getCurrentSession()
+                .createSQLQuery("select count(*) " + PARTITION_QUERY)
+                .uniqueResult();
+        return partitions.intValue() > 0;
+    }
+
+    /**
+     * Create the monthly archive partitions up to and including the month of the given date.
+     *
+     * @param date the date which must be covered by a monthly partition.
+     * @return the number of created partitions.
+     * @should create monthly partitions up to the month of the date.
+     * @should not create partition when the month is already covered.
+     */
+    @Override
+    @Transactional
+    public int createPartitions(final Date date) {
+        if (!isPartitioned()) {
+            return 0;
+        }
+        Date upperBound = (Date) getCurrentSession()
+                .createSQLQuery("select from_days(max(cast(partition_description as signed))) " + PARTITION_QUERY
+                        + " and partition_name <> :futurePartition")
+                .setParameter("futurePartition", FUTURE_PARTITION, Hibernate.STRING)
+                .uniqueResult();
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(upperBound == null ? date : upperBound);
+        truncateToMonth(calendar);
+
+        Calendar limit = Calendar.getInstance();
+        limit.setTime(date);
+        truncateToMonth(limit);
+        limit.add(Calendar.MONTH, 1);
+
+        int created = 0;
+        SimpleDateFormat nameFormat = new SimpleDateFormat("yyyyMM");
+        SimpleDateFormat boundFormat = new SimpleDateFormat("yyyy-MM-dd");
+        while (calendar.before(limit)) {
+            String partitionName = "p" + nameFormat.format(calendar.getTime());
+            calendar.add(Calendar.MONTH, 1);
+            // the future partition should be empty, so splitting it doesn't move any data.
+            getCurrentSession().createSQLQuery("alter table " + ARCHIVE_TABLE
+                    + " reorganize partition " + FUTURE_PARTITION + " into ("
+                    + "partition " + partitionName
+                    + " values less than (to_days('" + boundFormat.format(calendar.getTime()) + "')), "
+                    + "partition " + FUTURE_PARTITION + " values less than maxvalue)")
+                    .executeUpdate();
+            log.info("Created archive partition: " + partitionName);
+            created++;
+        }
+        return created;
+    }
+
+    /**
+     * Drop the archive partitions which only contain data archived before the given date.
+     *
+     * @param date the retention cut off date.
+     * @return the number of dropped partitions.
+     * @should drop partitions older than the date.
+     * @should not drop partition containing data archived after the date.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public int dropPartitions(final Date date) {
+        if (!isPartitioned()) {
+            return 0;
+        }
+        List<String> partitionNames = getCurrentSession()
+                .createSQLQuery("select partition_name " + PARTITION_QUERY
+                        + " and partition_name <> :futurePartition"
+                        + " and cast(partition_description as signed) <= to_days(:date)")
+                .setParameter("futurePartition", FUTURE_PARTITION, Hibernate.STRING)
+                .setParameter("date", date, Hibernate.DATE)
+                .list();
+        if (!partitionNames.isEmpty()) {
+            getCurrentSession().createSQLQuery("alter table " + ARCHIVE_TABLE
+                    + " drop partition " + StringUtils.join(partitionNames, ", "))
+                    .executeUpdate();
+            log.info("Dropped archive partitions: " + partitionNames);
+        }
+        return partitionNames.size();
+    }
+
+    /**
+     * Get archive data archived before the given date, ordered by the id.
+     *
+     * @param date       the archive date cut off.
+     * @param afterId    only return archive data with id greater than this id, can be null.
+     * @param maxResults the maximum number of archive data to return.
+     * @return the archive data archived before the date.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ArchiveData> getDataArchivedBefore(final Date date, final Integer afterId, final Integer maxResults) {
+        Criteria criteria = createCriteria(null, null, date);
+        if (afterId != null) {
+            criteria.add(Restrictions.gt("id", afterId));
+        }
+        criteria.addOrder(Order.asc("id"));
+        criteria.setMaxResults(maxResults);
+        return criteria.list();
+    }
+
+    /**
+     * Delete the archive data with the given ids in bulk, without calling the data handlers.
+     *
+     * @param ids the archive data ids.
+     * @return the number of deleted archive data.
+     */
+    @Override
+    @Transactional
+    public int deleteData(final List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return getCurrentSession().createQuery("delete from " + getEntityName() + " where id in (:ids)")
+                .setParameterList("ids", ids)
+                .executeUpdate();
+    }
+
+    private Session getCurrentSession() {
+        return getSessionFactory().getCurrentSession();
+    }
+
+    private Criteria createCriteria(final String search, final Date startDate, final Date endDate) {
+        Criteria criteria = getCurrentSession().createCriteria(getEntityName());
+        if (StringUtils.isNotEmpty(search)) {
+            addSearchRestrictions(criteria, search);
+        }
+        // bounding the archive date lets the database prune the partitions outside of the range.
+        if (startDate != null) {
+            criteria.add(Restrictions.ge("dateArchived", startDate));
+        }
+        if (endDate != null) {
+            criteria.add(Restrictions.lt("dateArchived", endDate));
+        }
+        return criteria;
+    }
+
+    private void truncateToMonth(final Calendar calendar) {
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+    }
 }
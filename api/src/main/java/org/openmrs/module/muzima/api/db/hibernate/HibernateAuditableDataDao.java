@@ -0,0 +1,258 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db.hibernate;
+
+import org.hibernate.Criteria;
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Disjunction;
+import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
+import org.openmrs.module.muzima.api.db.AuditableDataDao;
+import org.openmrs.module.muzima.api.db.LifecycleDataDao;
+import org.openmrs.module.muzima.model.AuditableData;
+import org.openmrs.module.muzima.model.Payload;
+import org.openmrs.module.muzima.model.RetentionPolicy;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Base dao for the queue, error and archive data. The payload of these data is stored in the content addressed
+ * payload table, so saving a data will re-use the stored payload with the same hash instead of storing it again.
+ * Depending on the storage mode, the data is stored in its own table or in the single lifecycle table.
+ */
+public abstract class HibernateAuditableDataDao<T extends AuditableData> extends HibernateDataDao<T>
+        implements AuditableDataDao<T> {
+
+    private static final String PAYLOAD_INSERT = "insert into muzima_payload (hash, content, uuid) values (?, ?, ?)";
+
+    /**
+     * SQL state class of the integrity constraint violations.
+     */
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+    private LifecycleDataDao lifecycleDataDao;
+
+    /**
+     * Default constructor.
+     *
+     * @param mappedClass
+     */
+    protected HibernateAuditableDataDao(final Class<T> mappedClass) {
+        super(mappedClass);
+    }
+
+    public LifecycleDataDao getLifecycleDataDao() {
+        return lifecycleDataDao;
+    }
+
+    public void setLifecycleDataDao(final LifecycleDataDao lifecycleDataDao) {
+        this.lifecycleDataDao = lifecycleDataDao;
+    }
+
+    /**
+     * The data is persisted in the single lifecycle table when the lifecycle storage is enabled.
+     *
+     * @return the hibernate entity name.
+     */
+    @Override
+    protected String getEntityName() {
+        if (lifecycleDataDao != null && lifecycleDataDao.isEnabled()) {
+            return lifecycleDataDao.getEntityName(mappedClass);
+        }
+        return super.getEntityName();
+    }
+
+    @Override
+    @Transactional
+    public T saveOrUpdate(final T object) {
+        Payload payload = object.getPayloadData();
+        if (payload != null && payload.getId() == null) {
+            object.setPayloadData(storePayload(payload));
+        }
+        return super.saveOrUpdate(object);
+    }
+
+    /**
+     * Get the stored payload with the same hash, storing the payload first when there is none yet. Two transactions
+     * saving the same new payload both miss it, so the insert runs in a savepoint: when the other transaction stored
+     * the payload first, the unique hash violation only rolls back the insert and the stored payload is read again.
+     * The re-used payload is locked until the end of the transaction, so the purge of the orphaned payloads can't
+     * delete it before the data referencing it is committed.
+     */
+    private Payload storePayload(final Payload payload) {
+        Payload storedPayload = getPayloadByHash(payload.getHash(), true);
+        if (storedPayload != null) {
+            return storedPayload;
+        }
+        insertPayloadIfAbsent(payload);
+        // the locking read sees the payload committed by the other transaction after this transaction started.
+        storedPayload = getPayloadByHash(payload.getHash(), true);
+        if (storedPayload == null) {
+            throw new IllegalStateException("Unable to store the payload with hash " + payload.getHash());
+        }
+        return storedPayload;
+    }
+
+    private void insertPayloadIfAbsent(final Payload payload) {
+        getSessionFactory().getCurrentSession().doWork(new Work() {
+            @Override
+            public void execute(final Connection connection) throws SQLException {
+                Savepoint savepoint = connection.setSavepoint();
+                PreparedStatement statement = connection.prepareStatement(PAYLOAD_INSERT);
+                try {
+                    statement.setString(1, payload.getHash());
+                    statement.setString(2, payload.getContent());
+                    statement.setString(3, payload.getUuid());
+                    statement.executeUpdate();
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    String sqlState = e.getSQLState();
+                    if (sqlState == null || !sqlState.startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+                        throw e;
+                    }
+                    connection.rollback(savepoint);
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the property holding the date used to decide whether the data is expired.
+     *
+     * @return the retention date property.
+     */
+    protected String getRetentionDateProperty() {
+        return "dateCreated";
+    }
+
+    /**
+     * Delete a chunk of data expired according to the retention policy. The data is deleted in bulk, so the data
+     * handlers are not called for the deleted data.
+     *
+     * @param policy             the retention policy.
+     * @param overridingPolicies the more specific policies, data covered by these policies is not deleted.
+     * @param cutOffDate         the retention cut off date.
+     * @param chunkSize          the maximum number of data to delete.
+     * @return the number of deleted data.
+     * @should delete expired data matching the policy.
+     * @should not delete data covered by the overriding policies.
+     * @should not delete more than the chunk size.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public int purgeExpiredData(final RetentionPolicy policy, final List<RetentionPolicy> overridingPolicies,
+                                final Date cutOffDate, final Integer chunkSize) {
+        Session session = getSessionFactory().getCurrentSession();
+        Criteria criteria = session.createCriteria(getEntityName());
+        criteria.createAlias("dataSource", "dataSource");
+        criteria.add(Restrictions.lt(getRetentionDateProperty(), cutOffDate));
+        criteria.add(createScopeRestrictions(policy));
+        for (RetentionPolicy overridingPolicy : overridingPolicies) {
+            criteria.add(Restrictions.not(createScopeRestrictions(overridingPolicy)));
+        }
+        criteria.setProjection(Projections.id());
+        criteria.setMaxResults(chunkSize);
+        List<Integer> ids = criteria.list();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return session.createQuery("delete from " + getEntityName() + " where id in (:ids)")
+                .setParameterList("ids", ids)
+                .executeUpdate();
+    }
+
+    private Conjunction createScopeRestrictions(final RetentionPolicy policy) {
+        Conjunction conjunction = Restrictions.conjunction();
+        if (policy.getDataSource() != null) {
+            conjunction.add(Restrictions.eq("dataSource.name", policy.getDataSource()));
+        }
+        if (policy.getDiscriminator() != null) {
+            conjunction.add(Restrictions.eq("discriminator", policy.getDiscriminator()));
+        }
+        return conjunction;
+    }
+
+    /**
+     * Get the number of data and the creation date of the oldest data, grouped by discriminator and data source.
+     *
+     * @return rows of discriminator, data source name, number of data and oldest creation date.
+     * @should return one row per discriminator and data source.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getDataStatistics() {
+        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(getEntityName());
+        criteria.createAlias("dataSource", "dataSource");
+        criteria.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("discriminator"))
+                .add(Projections.groupProperty("dataSource.name"))
+                .add(Projections.rowCount())
+                .add(Projections.min("dateCreated")));
+        return criteria.list();
+    }
+
+    /**
+     * Return the stored payload with the given hash.
+     *
+     * @param hash the hash of the payload content.
+     * @return the stored payload or null when no payload with matching hash.
+     */
+    protected Payload getPayloadByHash(final String hash) {
+        return getPayloadByHash(hash, false);
+    }
+
+    /**
+     * Return the stored payload with the given hash.
+     *
+     * @param hash the hash of the payload content.
+     * @param lock true to lock the stored payload until the end of the transaction.
+     * @return the stored payload or null when no payload with matching hash.
+     */
+    protected Payload getPayloadByHash(final String hash, final boolean lock) {
+        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(Payload.class);
+        criteria.add(Restrictions.eq("hash", hash));
+        if (lock) {
+            criteria.setLockMode(LockMode.UPGRADE);
+        }
+        return (Payload) criteria.uniqueResult();
+    }
+
+    /**
+     * The payload content lives in the payload table, so the search needs to join the payload.
+     *
+     * @param criteria the criteria.
+     * @param search   the search term.
+     */
+    @Override
+    protected void addSearchRestrictions(final Criteria criteria, final String search) {
+        criteria.createAlias("payloadData", "payloadData");
+        Disjunction disjunction = Restrictions.disjunction();
+        disjunction.add(Restrictions.ilike("payloadData.content", search, MatchMode.ANYWHERE));
+        disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
+        criteria.add(disjunction);
+    }
+}
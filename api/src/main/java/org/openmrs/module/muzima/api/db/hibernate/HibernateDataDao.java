@@ -17,6 +17,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.MatchMode;
@@ -26,6 +27,7 @@ import org.hibernate.criterion.Restrictions;
 import org.openmrs.module.muzima.api.db.DataDao;
 import org.openmrs.module.muzima.model.Data;
 import org.openmrs.module.muzima.model.handler.DataHandler;
+import org.openmrs.module.muzima.monitor.FlightEvents;
 import org.openmrs.util.HandlerUtil;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -65,6 +67,9 @@ public abstract class HibernateDataDao<T extends Data> extends HibernateSingleCl
     @Override
     public T getData(final Integer id) {
         T data = getById(id);
+        if (data == null) {
+            return null;
+        }
         List<DataHandler> handlers = HandlerUtil.getHandlersForType(DataHandler.class, data.getClass());
         for (DataHandler handler : handlers) {
             if (handler.accept(data)) {
@@ -85,9 +90,12 @@ public abstract class HibernateDataDao<T extends Data> extends HibernateSingleCl
     @Override
     @SuppressWarnings("unchecked")
     public T getDataByUuid(final String uuid) {
-        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(getEntityName());
         criteria.add(Restrictions.eq("uuid", uuid));
         T data = (T) criteria.uniqueResult();
+        if (data == null) {
+            return null;
+        }
         List<DataHandler> handlers = HandlerUtil.getHandlersForType(DataHandler.class, data.getClass());
         for (DataHandler handler : handlers) {
             if (handler.accept(data)) {
@@ -155,6 +163,33 @@ public abstract class HibernateDataDao<T extends Data> extends HibernateSingleCl
         delete(data);
     }
 
+    /**
+     * Delete data from the database only when it still exists, so a data already removed by a concurrent transaction
+     * is reported instead of failing when the session is flushed.
+     *
+     * @param data the data.
+     * @return true when the data was deleted by this call.
+     * @should remove data from the database and return true.
+     * @should return false when the data was already removed.
+     */
+    @Override
+    @Transactional
+    public boolean purgeDataIfExists(final T data) {
+        List<DataHandler> handlers = HandlerUtil.getHandlersForType(DataHandler.class, data.getClass());
+        for (DataHandler handler : handlers) {
+            if (handler.accept(data)) {
+                handler.handleDelete(data);
+            }
+        }
+        Session session = getSessionFactory().getCurrentSession();
+        int deleted = session.createQuery("delete from " + getEntityName() + " where id = :id")
+                .setParameter("id", data.getId())
+                .executeUpdate();
+        // the row is gone either way, drop the instance so the session doesn't try to flush it.
+        session.evict(data);
+        return deleted == 1;
+    }
+
     /**
      * Get data with matching search term for particular page.
      *
@@ -164,23 +199,37 @@ public abstract class HibernateDataDao<T extends Data> extends HibernateSingleCl
      * @return list of data for the page.
      */
     @Override
-    @SuppressWarnings("unchecked")
     public List<T> getPagedData(final String search, final Integer pageNumber, final Integer pageSize) {
-        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+        return getDataRange(search, pageNumber == null ? null : (pageNumber - 1) * pageSize, pageSize);
+    }
+
+    /**
+     * Get data with matching search term starting at the given position.
+     *
+     * @param search      the search term.
+     * @param firstResult the position of the first data, starting at 0.
+     * @param maxResults  the maximum number of data.
+     * @return list of data in the range.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> getDataRange(final String search, final Integer firstResult, final Integer maxResults) {
+        Object event = FlightEvents.DATA_PAGE_QUERY.begin();
+        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(getEntityName());
         if (StringUtils.isNotEmpty(search)) {
-            Disjunction disjunction = Restrictions.disjunction();
-            disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-            disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
-            criteria.add(disjunction);
+            addSearchRestrictions(criteria, search);
         }
-        if (pageNumber != null) {
-            criteria.setFirstResult((pageNumber - 1) * pageSize);
+        if (firstResult != null) {
+            criteria.setFirstResult(firstResult);
         }
-        if (pageSize != null) {
-            criteria.setMaxResults(pageSize);
+        if (maxResults != null) {
+            criteria.setMaxResults(maxResults);
         }
         criteria.addOrder(Order.desc("dateCreated"));
-        return criteria.list();
+        List<T> list = criteria.list();
+        FlightEvents.DATA_PAGE_QUERY.commit(event, getEntityName(), "page", search == null ? 0 : search.length(),
+                list.size());
+        return list;
     }
 
     /**
@@ -189,17 +238,33 @@ public abstract class HibernateDataDao<T extends Data> extends HibernateSingleCl
      *
      * @param search the search term.
      * @return total number of data in the database.
+     * @should count and page the queue data of the split storage only.
      */
     @Override
     public Number countData(final String search) {
-        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(mappedClass);
+        Object event = FlightEvents.DATA_PAGE_QUERY.begin();
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(getEntityName());
         if (StringUtils.isNotEmpty(search)) {
-            Disjunction disjunction = Restrictions.disjunction();
-            disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-            disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
-            criteria.add(disjunction);
+            addSearchRestrictions(criteria, search);
         }
         criteria.setProjection(Projections.rowCount());
-        return (Number) criteria.uniqueResult();
+        Number count = (Number) criteria.uniqueResult();
+        FlightEvents.DATA_PAGE_QUERY.commit(event, getEntityName(), "count", search == null ? 0 : search.length(),
+                count == null ? 0 : count.intValue());
+        return count;
+    }
+
+    /**
+     * Add the restrictions for the search term to the criteria. Subclasses mapping the payload differently should
+     * override this method.
+     *
+     * @param criteria the criteria.
+     * @param search   the search term.
+     */
+    protected void addSearchRestrictions(final Criteria criteria, final String search) {
+        Disjunction disjunction = Restrictions.disjunction();
+        disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
+        disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
+        criteria.add(disjunction);
     }
 }
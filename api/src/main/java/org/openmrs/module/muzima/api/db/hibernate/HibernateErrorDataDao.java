@@ -20,7 +20,7 @@ import org.openmrs.module.muzima.model.ErrorData;
 
 /**
  */
-public class HibernateErrorDataDao extends HibernateDataDao<ErrorData> implements ErrorDataDao {
+public class HibernateErrorDataDao extends HibernateAuditableDataDao<ErrorData> implements ErrorDataDao {
 
     private final Log log = LogFactory.getLog(HibernateErrorDataDao.class);
 
@@ -30,4 +30,14 @@ public class HibernateErrorDataDao extends HibernateDataDao<ErrorData> implement
     protected HibernateErrorDataDao() {
         super(ErrorData.class);
     }
+
+    /**
+     * The error data is expired based on the date it was processed.
+     *
+     * @return the retention date property.
+     */
+    @Override
+    protected String getRetentionDateProperty() {
+        return "dateProcessed";
+    }
 }
@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db.hibernate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.db.LifecycleDataDao;
+import org.openmrs.module.muzima.model.ArchiveData;
+import org.openmrs.module.muzima.model.AuditableData;
+import org.openmrs.module.muzima.model.ErrorData;
+import org.openmrs.module.muzima.model.QueueData;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+/**
+ * Hibernate implementation of the single table lifecycle storage. Moving a data between the queue, error and archive
+ * is a single update on the status of the row, guarded by the expected current status of the row.
+ */
+public class HibernateLifecycleDataDao implements LifecycleDataDao {
+
+    /**
+     * Runtime property to enable the single table lifecycle storage. Changing the storage requires a restart and an
+     * empty queue, because the data in the previous storage is not moved.
+     */
+    public static final String LIFECYCLE_STORAGE_PROPERTY = "muzima.storage.lifecycle";
+
+    public static final String STATUS_QUEUED = "queued";
+
+    public static final String STATUS_ERROR = "error";
+
+    public static final String STATUS_ARCHIVED = "archived";
+
+    private static final String TRANSITION_QUERY = "update muzima_lifecycle_data " +
+            "set status = :status, message = :message, date_processed = :dateProcessed, date_archived = :dateArchived, " +
+            "changed_by = :changedBy, date_changed = :dateChanged where id = :id and status = :currentStatus";
+
+    private final Log log = LogFactory.getLog(HibernateLifecycleDataDao.class);
+
+    private SessionFactory sessionFactory;
+
+    private Boolean enabled;
+
+    public void setSessionFactory(final SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Override the runtime property, mostly useful for testing.
+     *
+     * @param enabled flag whether the lifecycle storage is enabled.
+     */
+    public void setEnabled(final Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Flag whether the queue, error and archive data are stored in the single lifecycle table.
+     *
+     * @return true when the lifecycle storage is enabled.
+     */
+    @Override
+    public boolean isEnabled() {
+        if (enabled == null) {
+            String property = Context.getRuntimeProperties().getProperty(LIFECYCLE_STORAGE_PROPERTY, "false");
+            enabled = Boolean.valueOf(property.trim());
+            log.info("Muzima lifecycle storage enabled: " + enabled);
+        }
+        return enabled;
+    }
+
+    /**
+     * Get the entity name used to persist the data class in the lifecycle table.
+     *
+     * @param dataClass the data class.
+     * @return the lifecycle entity name of the data class.
+     */
+    @Override
+    public String getEntityName(final Class<?> dataClass) {
+        return "Lifecycle" + dataClass.getSimpleName();
+    }
+
+    /**
+     * Move the queue data to the archive by updating the status of the row.
+     *
+     * @param queueData the queue data.
+     * @param message   the archive message.
+     * @return the archive view of the data.
+     * @should update the status of the queue data to archived.
+     */
+    @Override
+    @Transactional
+    public ArchiveData archiveQueueData(final QueueData queueData, final String message) {
+        transition(queueData, QueueData.class, STATUS_QUEUED, STATUS_ARCHIVED, message, null, new Date());
+        return (ArchiveData) getCurrentSession().get(getEntityName(ArchiveData.class), queueData.getId());
+    }
+
+    /**
+     * Move the queue data to the error by updating the status of the row.
+     *
+     * @param queueData the queue data.
+     * @param message   the error message.
+     * @return the error view of the data.
+     * @should update the status of the queue data to error.
+     */
+    @Override
+    @Transactional
+    public ErrorData failQueueData(final QueueData queueData, final String message) {
+        transition(queueData, QueueData.class, STATUS_QUEUED, STATUS_ERROR, message, new Date(), null);
+        return (ErrorData) getCurrentSession().get(getEntityName(ErrorData.class), queueData.getId());
+    }
+
+    /**
+     * Move the error data back to the queue by updating the status of the row.
+     *
+     * @param errorData the error data.
+     * @return the queue view of the data.
+     * @should update the status of the error data to queued.
+     */
+    @Override
+    @Transactional
+    public QueueData requeueErrorData(final ErrorData errorData) {
+        transition(errorData, ErrorData.class, STATUS_ERROR, STATUS_QUEUED, null, null, null);
+        return (QueueData) getCurrentSession().get(getEntityName(QueueData.class), errorData.getId());
+    }
+
+    private Session getCurrentSession() {
+        return sessionFactory.getCurrentSession();
+    }
+
+    private void transition(final AuditableData data, final Class<?> dataClass,
+                            final String currentStatus, final String status, final String message,
+                            final Date dateProcessed, final Date dateArchived) {
+        Session session = getCurrentSession();
+        // make sure pending changes to the data are written before the row changes its status.
+        session.flush();
+
+        User user = Context.getAuthenticatedUser();
+        SQLQuery query = session.createSQLQuery(TRANSITION_QUERY);
+        query.setParameter("status", status, Hibernate.STRING);
+        query.setParameter("message", message, Hibernate.STRING);
+        query.setParameter("dateProcessed", dateProcessed, Hibernate.TIMESTAMP);
+        query.setParameter("dateArchived", dateArchived, Hibernate.TIMESTAMP);
+        query.setParameter("changedBy", user == null ? null : user.getUserId(), Hibernate.INTEGER);
+        query.setParameter("dateChanged", new Date(), Hibernate.TIMESTAMP);
+        query.setParameter("id", data.getId(), Hibernate.INTEGER);
+        query.setParameter("currentStatus", currentStatus, Hibernate.STRING);
+        if (query.executeUpdate() != 1) {
+            throw new StaleObjectStateException(getEntityName(dataClass), data.getId());
+        }
+        // the row now belongs to another view, drop the stale instance from the session.
+        session.evict(data);
+    }
+}
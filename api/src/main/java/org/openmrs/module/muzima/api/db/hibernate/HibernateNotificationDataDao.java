@@ -17,21 +17,69 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
-import org.openmrs.Person;
+import org.hibernate.jdbc.Work;
+import org.openmrs.Location;
+import org.openmrs.Role;
+import org.openmrs.User;
 import org.openmrs.module.muzima.api.db.NotificationDataDao;
+import org.openmrs.util.OpenmrsConstants;
+import org.springframework.transaction.annotation.Transactional;
+import org.openmrs.module.muzima.model.NotificationCounter;
 import org.openmrs.module.muzima.model.NotificationData;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  */
 public class HibernateNotificationDataDao extends HibernateDataDao<NotificationData> implements NotificationDataDao {
 
+    private static final String UNREAD_COUNT = "sum(case when date_read is null then 1 else 0 end)";
+
+    private static final String COUNTER_INSERT = "insert into muzima_notification_counter " +
+            "(person_id, total, unread, date_updated) select ?, count(*), coalesce(" + UNREAD_COUNT + ", 0), ? " +
+            "from muzima_notification_data where receiver = ? and voided = ?";
+
+    /**
+     * SQL state class of the integrity constraint violations.
+     */
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+    /**
+     * Maximum number of uuids in a single bulk read state update.
+     */
+    private static final int READ_STATE_CHUNK_SIZE = 1000;
+
+    /**
+     * Number of rows sent to the database in a single batch when broadcasting a notification.
+     */
+    private static final int BROADCAST_CHUNK_SIZE = 500;
+
+    private static final String EXPIRED_VOID_REASON = "Notification expired";
+
+    private static final String BROADCAST_INSERT = "insert into muzima_notification_data " +
+            "(subject, payload, receiver, sender, creator, date_created, date_changed, voided, uuid, expire_date) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     private final Log log = LogFactory.getLog(HibernateNotificationDataDao.class);
 
     /**
@@ -44,27 +92,45 @@ public class HibernateNotificationDataDao extends HibernateDataDao<NotificationD
     /**
      * Get all notification for this particular person.
      *
-     * @param person the person for whom the notification designated to.
+     * @param personId the id of the person for whom the notification designated to.
+     * @param read   the read state of the notification, null to return read and unread notification.
      * @return the list of all notification for that particular person.
      */
     @Override
-    @SuppressWarnings("unchecked")
-    public List<NotificationData> getNotificationsByReceiver(final Person person, final String search,
+    public List<NotificationData> getNotificationsByReceiver(final Integer personId, final String search,
+                                                             final Boolean read,
                                                              final Integer pageNumber, final Integer pageSize) {
+        return getNotificationRangeByReceiver(personId, search, read,
+                pageNumber == null ? null : (pageNumber - 1) * pageSize, pageSize);
+    }
+
+    /**
+     * Get the notification for this particular person starting at the given position.
+     *
+     * @param personId    the id of the person for whom the notification designated to.
+     * @param search      the search term.
+     * @param read        the read state of the notification, null to return read and unread notification.
+     * @param firstResult the position of the first notification, starting at 0.
+     * @param maxResults  the maximum number of notification.
+     * @return the notification for that particular person in the range.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<NotificationData> getNotificationRangeByReceiver(final Integer personId, final String search,
+                                                                 final Boolean read, final Integer firstResult,
+                                                                 final Integer maxResults) {
         Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
         if (StringUtils.isNotEmpty(search)) {
-            Disjunction disjunction = Restrictions.disjunction();
-            disjunction.add(Restrictions.ilike("subject", search, MatchMode.ANYWHERE));
-            disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-            criteria.add(disjunction);
+            addSearchRestrictions(criteria, search);
         }
-        criteria.add(Restrictions.eq("receiver", person));
+        criteria.add(Restrictions.eq("receiver.personId", personId));
         criteria.add(Restrictions.eq("voided", Boolean.FALSE));
-        if (pageNumber != null) {
-            criteria.setFirstResult((pageNumber - 1) * pageSize);
+        addReadRestrictions(criteria, read);
+        if (firstResult != null) {
+            criteria.setFirstResult(firstResult);
         }
-        if (pageSize != null) {
-            criteria.setMaxResults(pageSize);
+        if (maxResults != null) {
+            criteria.setMaxResults(maxResults);
         }
         criteria.addOrder(Order.desc("dateCreated"));
         return criteria.list();
@@ -75,19 +141,18 @@ public class HibernateNotificationDataDao extends HibernateDataDao<NotificationD
      *
      *
      * @param search the search term.
+     * @param read   the read state of the notification, null to count read and unread notification.
      * @return total number of notification data in the database.
      */
     @Override
-    public Number countNotificationsByReceiver(final Person person, final String search) {
+    public Number countNotificationsByReceiver(final Integer personId, final String search, final Boolean read) {
         Criteria criteria = sessionFactory.getCurrentSession().createCriteria(mappedClass);
         if (StringUtils.isNotEmpty(search)) {
-            Disjunction disjunction = Restrictions.disjunction();
-            disjunction.add(Restrictions.ilike("subject", search, MatchMode.ANYWHERE));
-            disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-            criteria.add(disjunction);
+            addSearchRestrictions(criteria, search);
         }
-        criteria.add(Restrictions.eq("receiver", person));
+        criteria.add(Restrictions.eq("receiver.personId", personId));
         criteria.add(Restrictions.eq("voided", Boolean.FALSE));
+        addReadRestrictions(criteria, read);
         criteria.setProjection(Projections.rowCount());
         return (Number) criteria.uniqueResult();
     }
@@ -95,27 +160,40 @@ public class HibernateNotificationDataDao extends HibernateDataDao<NotificationD
     /**
      * Get all notification from this particular person.
      *
-     * @param person the person from where the notification originated from.
+     * @param personId the id of the person from where the notification originated from.
      * @return the list of all notification from that particular person.
      */
     @Override
-    @SuppressWarnings("unchecked")
-    public List<NotificationData> getNotificationsBySender(final Person person, final String search,
+    public List<NotificationData> getNotificationsBySender(final Integer personId, final String search,
                                                            final Integer pageNumber, final Integer pageSize) {
+        return getNotificationRangeBySender(personId, search,
+                pageNumber == null ? null : (pageNumber - 1) * pageSize, pageSize);
+    }
+
+    /**
+     * Get the notification from this particular person starting at the given position.
+     *
+     * @param personId    the id of the person from where the notification originated from.
+     * @param search      the search term.
+     * @param firstResult the position of the first notification, starting at 0.
+     * @param maxResults  the maximum number of notification.
+     * @return the notification from that particular person in the range.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<NotificationData> getNotificationRangeBySender(final Integer personId, final String search,
+                                                               final Integer firstResult, final Integer maxResults) {
         Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
         if (StringUtils.isNotEmpty(search)) {
-            Disjunction disjunction = Restrictions.disjunction();
-            disjunction.add(Restrictions.ilike("subject", search, MatchMode.ANYWHERE));
-            disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-            criteria.add(disjunction);
+            addSearchRestrictions(criteria, search);
         }
-        criteria.add(Restrictions.eq("sender", person));
+        criteria.add(Restrictions.eq("sender.personId", personId));
         criteria.add(Restrictions.eq("voided", Boolean.FALSE));
-        if (pageNumber != null) {
-            criteria.setFirstResult((pageNumber - 1) * pageSize);
+        if (firstResult != null) {
+            criteria.setFirstResult(firstResult);
         }
-        if (pageSize != null) {
-            criteria.setMaxResults(pageSize);
+        if (maxResults != null) {
+            criteria.setMaxResults(maxResults);
         }
         criteria.addOrder(Order.desc("dateCreated"));
         return criteria.list();
@@ -129,17 +207,527 @@ public class HibernateNotificationDataDao extends HibernateDataDao<NotificationD
      * @return total number of notification data in the database.
      */
     @Override
-    public Number countNotificationsBySender(final Person person, final String search) {
+    public Number countNotificationsBySender(final Integer personId, final String search) {
         Criteria criteria = sessionFactory.getCurrentSession().createCriteria(mappedClass);
         if (StringUtils.isNotEmpty(search)) {
-            Disjunction disjunction = Restrictions.disjunction();
-            disjunction.add(Restrictions.ilike("subject", search, MatchMode.ANYWHERE));
-            disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-            criteria.add(disjunction);
+            addSearchRestrictions(criteria, search);
         }
-        criteria.add(Restrictions.eq("sender", person));
+        criteria.add(Restrictions.eq("sender.personId", personId));
         criteria.add(Restrictions.eq("voided", Boolean.FALSE));
         criteria.setProjection(Projections.rowCount());
         return (Number) criteria.uniqueResult();
     }
+
+    /**
+     * Get the notification for this particular person changed after the sync cursor, including the voided
+     * notification. The notification are ordered by the date changed and the id.
+     *
+     * @param personId    the id of the person for whom the notification designated to.
+     * @param dateChanged the date changed of the sync cursor, null to start from the beginning.
+     * @param id          the id of the sync cursor.
+     * @param until       only return notification changed before this date.
+     * @param maxResults  the maximum number of notification to return.
+     * @return the list of notification changed after the sync cursor.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<NotificationData> getNotificationsByReceiverChangedSince(final Integer personId, final Date dateChanged,
+                                                                         final Integer id, final Date until,
+                                                                         final Integer maxResults) {
+        // range scan on the (receiver, date_changed, id) index.
+        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+        criteria.add(Restrictions.eq("receiver.personId", personId));
+        if (dateChanged != null) {
+            criteria.add(Restrictions.or(
+                    Restrictions.gt("dateChanged", dateChanged),
+                    Restrictions.and(Restrictions.eq("dateChanged", dateChanged), Restrictions.gt("id", id))));
+        }
+        criteria.add(Restrictions.lt("dateChanged", until));
+        criteria.addOrder(Order.asc("dateChanged"));
+        criteria.addOrder(Order.asc("id"));
+        criteria.setMaxResults(maxResults);
+        return criteria.list();
+    }
+
+    /**
+     * Get the notification counter of the receiver. When the receiver has no counter yet, the counts are computed from
+     * the notification table.
+     *
+     * @param personId the receiver person id.
+     * @return the notification counter of the receiver.
+     */
+    @Override
+    public NotificationCounter getNotificationCounter(final Integer personId) {
+        Session session = getSessionFactory().getCurrentSession();
+        NotificationCounter counter = (NotificationCounter) session.get(NotificationCounter.class, personId);
+        if (counter == null) {
+            counter = new NotificationCounter(personId, countNotifications(personId, false),
+                    countNotifications(personId, true));
+        }
+        return counter;
+    }
+
+    /**
+     * Apply the changes to the notification counter of the receiver, in the current transaction.
+     *
+     * @param personId    the receiver person id.
+     * @param totalDelta  the change of the total number of notification.
+     * @param unreadDelta the change of the number of unread notification.
+     */
+    @Override
+    @Transactional
+    public void updateNotificationCounter(final Integer personId, final int totalDelta, final int unreadDelta) {
+        Session session = getSessionFactory().getCurrentSession();
+        if (applyCounterDelta(session, personId, totalDelta, unreadDelta) == 0) {
+            // first notification of the receiver, the counts of the new counter already include the flushed change.
+            session.flush();
+            if (!insertCounterIfAbsent(session, personId)) {
+                // a concurrent transaction created the counter first, the relative update waits for its row lock.
+                applyCounterDelta(session, personId, totalDelta, unreadDelta);
+            }
+        }
+    }
+
+    private int applyCounterDelta(final Session session, final Integer personId, final int totalDelta,
+                                  final int unreadDelta) {
+        // relative update, concurrent transactions only wait for the row lock instead of overwriting each other.
+        return session.createQuery("update NotificationCounter " +
+                "set total = total + :totalDelta, unread = unread + :unreadDelta, dateUpdated = :dateUpdated " +
+                "where personId = :personId")
+                .setInteger("totalDelta", totalDelta)
+                .setInteger("unreadDelta", unreadDelta)
+                .setTimestamp("dateUpdated", new Date())
+                .setInteger("personId", personId)
+                .executeUpdate();
+    }
+
+    /**
+     * Create the counter of the receiver from the notification table. Concurrent transactions creating the same counter
+     * are serialized on the primary key of the counter: the insert runs in a savepoint, so the transaction which comes
+     * second only rolls back the insert and updates the counter created by the first one instead.
+     *
+     * @return true when the counter was created, false when it already existed.
+     */
+    private boolean insertCounterIfAbsent(final Session session, final Integer personId) {
+        final boolean[] inserted = new boolean[1];
+        session.doWork(new Work() {
+            @Override
+            public void execute(final Connection connection) throws SQLException {
+                Savepoint savepoint = connection.setSavepoint();
+                PreparedStatement statement = connection.prepareStatement(COUNTER_INSERT);
+                try {
+                    statement.setInt(1, personId);
+                    statement.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                    statement.setInt(3, personId);
+                    statement.setBoolean(4, false);
+                    statement.executeUpdate();
+                    connection.releaseSavepoint(savepoint);
+                    inserted[0] = true;
+                } catch (SQLException e) {
+                    String sqlState = e.getSQLState();
+                    if (sqlState == null || !sqlState.startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+                        throw e;
+                    }
+                    connection.rollback(savepoint);
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        return inserted[0];
+    }
+
+    /**
+     * Get the stored receiver and counted state of the notification, read from the database without flushing the
+     * pending changes of the session.
+     *
+     * @param id the notification id.
+     * @return the receiver person id, 1 when the notification is counted in the total and 1 when it is counted as
+     * unread, or null when the notification is not stored.
+     */
+    @Override
+    public int[] getStoredCounterState(final Integer id) {
+        final int[][] state = new int[1][];
+        getSessionFactory().getCurrentSession().doWork(new Work() {
+            @Override
+            public void execute(final Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(
+                        "select receiver, voided, date_read from muzima_notification_data where id = ?");
+                try {
+                    statement.setInt(1, id);
+                    ResultSet resultSet = statement.executeQuery();
+                    try {
+                        if (resultSet.next()) {
+                            boolean counted = !resultSet.getBoolean(2);
+                            boolean unread = resultSet.getTimestamp(3) == null;
+                            state[0] = new int[]{resultSet.getInt(1), counted ? 1 : 0, counted && unread ? 1 : 0};
+                        }
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        return state[0];
+    }
+
+    /**
+     * Rebuild all notification counters from the notification table.
+     *
+     * @return the number of notification counters.
+     */
+    @Override
+    @Transactional
+    public int rebuildNotificationCounters() {
+        Session session = getSessionFactory().getCurrentSession();
+        session.createSQLQuery("delete from muzima_notification_counter").executeUpdate();
+        return session.createSQLQuery("insert into muzima_notification_counter (person_id, total, unread, date_updated) " +
+                "select receiver, count(*), " + UNREAD_COUNT + ", :dateUpdated from muzima_notification_data " +
+                "where voided = :voided group by receiver")
+                .setTimestamp("dateUpdated", new Date())
+                .setBoolean("voided", false)
+                .executeUpdate();
+    }
+
+    /**
+     * Mark the notification of the receiver with the given uuids read or unread with a bulk update, and update the
+     * unread count of the receiver. Voided notification and notification already in the requested read state are left
+     * untouched.
+     *
+     * @param personId    the receiver person id, the notification of other receivers are left untouched.
+     * @param uuids       the notification uuids.
+     * @param read        true to mark the notification read, false to mark them unread.
+     * @param dateChanged the date of the change.
+     * @param changedBy   the user making the change.
+     * @return the number of updated notification for each receiver person id.
+     * @should mark unread notification read and decrease the unread count.
+     * @should not update notification already in the requested read state.
+     * @should not update voided notification.
+     * @should not update notification of other receivers.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Integer> updateReadState(final Integer personId, final List<String> uuids, final boolean read,
+                                                 final Date dateChanged, final User changedBy) {
+        Session session = getSessionFactory().getCurrentSession();
+        // make sure pending changes to the notification are written before the bulk update.
+        session.flush();
+
+        // the count and the update must use the same filter, or the counters drift from the rows changed.
+        String filter = "uuid in (:uuids) and receiver.personId = :personId and voided = :voided and "
+                + (read ? "dateRead is null" : "dateRead is not null");
+        Map<Integer, Integer> updated = new HashMap<Integer, Integer>();
+        for (int i = 0; i < uuids.size(); i += READ_STATE_CHUNK_SIZE) {
+            List<String> chunk = uuids.subList(i, Math.min(i + READ_STATE_CHUNK_SIZE, uuids.size()));
+            // the counts are taken with the same filter as the update, within the same transaction.
+            List<Object[]> counts = session.createQuery("select receiver.personId, count(*) from NotificationData " +
+                    "where " + filter + " group by receiver.personId")
+                    .setParameterList("uuids", chunk)
+                    .setInteger("personId", personId)
+                    .setBoolean("voided", false)
+                    .list();
+            session.createQuery("update NotificationData set dateRead = :dateRead, dateChanged = :dateChanged, " +
+                    "changedBy = :changedBy where " + filter)
+                    .setTimestamp("dateRead", read ? dateChanged : null)
+                    .setTimestamp("dateChanged", dateChanged)
+                    .setParameter("changedBy", changedBy, Hibernate.entity(User.class))
+                    .setParameterList("uuids", chunk)
+                    .setInteger("personId", personId)
+                    .setBoolean("voided", false)
+                    .executeUpdate();
+            for (Object[] count : counts) {
+                Integer receiverId = (Integer) count[0];
+                int number = ((Number) count[1]).intValue();
+                updateNotificationCounter(receiverId, 0, read ? -number : number);
+                increment(updated, receiverId, number);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Get the person ids of the non retired users having the role.
+     *
+     * @param role the role.
+     * @return the person ids of the users with the role.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Integer> getPersonIdsByRole(final Role role) {
+        return getSessionFactory().getCurrentSession()
+                .createSQLQuery("select distinct u.person_id from users u " +
+                        "inner join user_role r on r.user_id = u.user_id where r.role = :role and u.retired = :retired")
+                .addScalar("person_id", Hibernate.INTEGER)
+                .setString("role", role.getRole())
+                .setBoolean("retired", false)
+                .list();
+    }
+
+    /**
+     * Get the person ids of the non retired users having the location as their default location.
+     *
+     * @param location the location.
+     * @return the person ids of the users working at the location.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Integer> getPersonIdsByLocation(final Location location) {
+        return getSessionFactory().getCurrentSession()
+                .createSQLQuery("select distinct u.person_id from users u " +
+                        "inner join user_property p on p.user_id = u.user_id " +
+                        "where p.property = :property and p.property_value = :location and u.retired = :retired")
+                .addScalar("person_id", Hibernate.INTEGER)
+                .setString("property", OpenmrsConstants.USER_PROPERTY_DEFAULT_LOCATION)
+                .setString("location", String.valueOf(location.getLocationId()))
+                .setBoolean("retired", false)
+                .list();
+    }
+
+    /**
+     * Insert a copy of the notification for each receiver with batched inserts, without loading the receivers. The
+     * notification counters are not updated.
+     *
+     * @param notificationData the notification to copy, the receiver of the notification is ignored.
+     * @param receiverIds      the person ids of the receivers.
+     * @return the number of inserted notification.
+     * @should insert a notification for each receiver.
+     */
+    @Override
+    @Transactional
+    public int saveNotifications(final NotificationData notificationData, final Collection<Integer> receiverIds) {
+        final List<Integer> receivers = new ArrayList<Integer>(receiverIds);
+        final int[] inserted = new int[1];
+        getSessionFactory().getCurrentSession().doWork(new Work() {
+            @Override
+            public void execute(final Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(BROADCAST_INSERT);
+                try {
+                    Timestamp dateCreated = new Timestamp(notificationData.getDateCreated().getTime());
+                    Timestamp dateChanged = new Timestamp(notificationData.getDateChanged().getTime());
+                    Date expireDate = notificationData.getExpireDate();
+                    for (int i = 0; i < receivers.size(); i++) {
+                        statement.setString(1, notificationData.getSubject());
+                        statement.setString(2, notificationData.getPayload());
+                        statement.setInt(3, receivers.get(i));
+                        statement.setInt(4, notificationData.getSender().getPersonId());
+                        statement.setInt(5, notificationData.getCreator().getUserId());
+                        statement.setTimestamp(6, dateCreated);
+                        statement.setTimestamp(7, dateChanged);
+                        statement.setBoolean(8, false);
+                        statement.setString(9, UUID.randomUUID().toString());
+                        statement.setTimestamp(10, expireDate == null ? null : new Timestamp(expireDate.getTime()));
+                        statement.addBatch();
+                        // bounded batches, the driver doesn't have to hold the whole broadcast in memory.
+                        if ((i + 1) % BROADCAST_CHUNK_SIZE == 0 || i == receivers.size() - 1) {
+                            statement.executeBatch();
+                            statement.clearBatch();
+                            inserted[0] = i + 1;
+                        }
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        return inserted[0];
+    }
+
+    /**
+     * Add one unread notification to the counters of the receivers, creating the missing counters from the
+     * notification table.
+     *
+     * @param receiverIds the person ids of the receivers.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public void incrementNotificationCounters(final Collection<Integer> receiverIds) {
+        Session session = getSessionFactory().getCurrentSession();
+        List<Integer> receivers = new ArrayList<Integer>(receiverIds);
+        Collections.sort(receivers);
+        for (int i = 0; i < receivers.size(); i += BROADCAST_CHUNK_SIZE) {
+            List<Integer> chunk = receivers.subList(i, Math.min(i + BROADCAST_CHUNK_SIZE, receivers.size()));
+            session.createQuery("update NotificationCounter " +
+                    "set total = total + 1, unread = unread + 1, dateUpdated = :dateUpdated where personId in (:personIds)")
+                    .setTimestamp("dateUpdated", new Date())
+                    .setParameterList("personIds", chunk)
+                    .executeUpdate();
+            List<Integer> counted = session.createQuery("select personId from NotificationCounter " +
+                    "where personId in (:personIds)")
+                    .setParameterList("personIds", chunk)
+                    .list();
+            List<Integer> missing = new ArrayList<Integer>(chunk);
+            missing.removeAll(counted);
+            // receivers without a counter get one computed from the table, which already has the new notification.
+            for (Integer personId : missing) {
+                if (!insertCounterIfAbsent(session, personId)) {
+                    applyCounterDelta(session, personId, 1, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Void a chunk of notification expired before the date with a bulk update, and update the counters of the
+     * receivers.
+     *
+     * @param date        the expiry cut off date.
+     * @param chunkSize   the maximum number of notification to void.
+     * @param dateChanged the date of the change.
+     * @param voidedBy    the user voiding the notification.
+     * @return the number of voided notification for each receiver person id.
+     * @should void notification expired before the date.
+     * @should not void more than the chunk size.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Integer> voidExpiredNotifications(final Date date, final Integer chunkSize,
+                                                          final Date dateChanged, final User voidedBy) {
+        Session session = getSessionFactory().getCurrentSession();
+        // range scan on the (voided, expire_date) index.
+        List<Object[]> expired = session.createQuery("select id, receiver.personId, dateRead from NotificationData " +
+                "where voided = :voided and expireDate < :date")
+                .setBoolean("voided", false)
+                .setTimestamp("date", date)
+                .setMaxResults(chunkSize)
+                .list();
+        if (expired.isEmpty()) {
+            return new HashMap<Integer, Integer>();
+        }
+        session.createQuery("update NotificationData set voided = :voided, voidedBy = :voidedBy, " +
+                "dateVoided = :dateChanged, voidReason = :voidReason, dateChanged = :dateChanged " +
+                "where id in (:ids)")
+                .setBoolean("voided", true)
+                .setParameter("voidedBy", voidedBy, Hibernate.entity(User.class))
+                .setTimestamp("dateChanged", dateChanged)
+                .setString("voidReason", EXPIRED_VOID_REASON)
+                .setParameterList("ids", getIds(expired))
+                .executeUpdate();
+        return updateExpiredCounters(expired);
+    }
+
+    /**
+     * Delete a chunk of notification expired before the date with a bulk delete, and update the counters of the
+     * receivers.
+     *
+     * @param date      the expiry cut off date.
+     * @param chunkSize the maximum number of notification to delete.
+     * @return the number of deleted notification for each receiver person id.
+     * @should delete notification expired before the date.
+     * @should delete voided notification expired before the date.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public Map<Integer, Integer> purgeExpiredNotifications(final Date date, final Integer chunkSize) {
+        Session session = getSessionFactory().getCurrentSession();
+        List<Object[]> expired = session.createQuery("select id, receiver.personId, dateRead, voided " +
+                "from NotificationData where expireDate < :date")
+                .setTimestamp("date", date)
+                .setMaxResults(chunkSize)
+                .list();
+        if (expired.isEmpty()) {
+            return new HashMap<Integer, Integer>();
+        }
+        session.createQuery("delete from NotificationData where id in (:ids)")
+                .setParameterList("ids", getIds(expired))
+                .executeUpdate();
+        // voided notification are not in the counters anymore.
+        List<Object[]> counted = new ArrayList<Object[]>();
+        for (Object[] row : expired) {
+            if (!Boolean.TRUE.equals(row[3])) {
+                counted.add(row);
+            }
+        }
+        updateExpiredCounters(counted);
+        Map<Integer, Integer> purged = new HashMap<Integer, Integer>();
+        for (Object[] row : expired) {
+            increment(purged, (Integer) row[1], 1);
+        }
+        return purged;
+    }
+
+    /**
+     * Remove the expired notification from the counters of their receivers.
+     *
+     * @param expired the id, receiver person id and date read of the expired notification.
+     * @return the number of expired notification for each receiver person id.
+     */
+    private Map<Integer, Integer> updateExpiredCounters(final List<Object[]> expired) {
+        Map<Integer, Integer> totals = new HashMap<Integer, Integer>();
+        Map<Integer, Integer> unreads = new HashMap<Integer, Integer>();
+        for (Object[] row : expired) {
+            Integer personId = (Integer) row[1];
+            increment(totals, personId, 1);
+            increment(unreads, personId, row[2] == null ? 1 : 0);
+        }
+        Session session = getSessionFactory().getCurrentSession();
+        for (Map.Entry<Integer, Integer> entry : totals.entrySet()) {
+            updateNotificationCounter(entry.getKey(), -entry.getValue(), -unreads.get(entry.getKey()));
+        }
+        return totals;
+    }
+
+    private List<Integer> getIds(final List<Object[]> rows) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Object[] row : rows) {
+            ids.add((Integer) row[0]);
+        }
+        return ids;
+    }
+
+    private void increment(final Map<Integer, Integer> counts, final Integer key, final int delta) {
+        Integer current = counts.get(key);
+        counts.put(key, current == null ? delta : current + delta);
+    }
+
+    /**
+     * Get the id of the non voided person with the given uuid, without loading the person.
+     *
+     * @param uuid the person uuid.
+     * @return the person id or null when no non voided person with matching uuid.
+     */
+    @Override
+    public Integer getPersonIdByUuid(final String uuid) {
+        return (Integer) getSessionFactory().getCurrentSession()
+                .createQuery("select personId from Person where uuid = :uuid and personVoided = :voided")
+                .setString("uuid", uuid)
+                .setBoolean("voided", false)
+                .uniqueResult();
+    }
+
+    private void addReadRestrictions(final Criteria criteria, final Boolean read) {
+        if (read != null) {
+            criteria.add(read ? Restrictions.isNotNull("dateRead") : Restrictions.isNull("dateRead"));
+        }
+    }
+
+    private Integer countNotifications(final Integer personId, final boolean unread) {
+        Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+        criteria.add(Restrictions.eq("receiver.personId", personId));
+        criteria.add(Restrictions.eq("voided", Boolean.FALSE));
+        if (unread) {
+            addReadRestrictions(criteria, Boolean.FALSE);
+        }
+        criteria.setProjection(Projections.rowCount());
+        return ((Number) criteria.uniqueResult()).intValue();
+    }
+
+    /**
+     * The notification data is searched on the subject and the payload.
+     *
+     * @param criteria the criteria.
+     * @param search   the search term.
+     */
+    @Override
+    protected void addSearchRestrictions(final Criteria criteria, final String search) {
+        Disjunction disjunction = Restrictions.disjunction();
+        disjunction.add(Restrictions.ilike("subject", search, MatchMode.ANYWHERE));
+        disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
+        criteria.add(disjunction);
+    }
 }
@@ -0,0 +1,79 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.module.muzima.api.db.PayloadDao;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Hibernate implementation of the payload dao. A payload is orphaned once the last data referencing it is purged.
+ * <p/>
+ * The archive data has no foreign key to the payload, so a payload re-used by a concurrent save could be deleted
+ * between finding the orphaned payloads and deleting them. The delete checks again that the payload is orphaned, and
+ * the save locks the payload it re-uses, so either the delete waits for the save and sees the new reference, or the
+ * save waits for the delete and stores the payload again.
+ */
+public class HibernatePayloadDao implements PayloadDao {
+
+    private static final String ORPHANED_PAYLOAD_CONDITION =
+            "not exists (select 1 from muzima_queue_data data where data.payload_id = muzima_payload.id) and " +
+            "not exists (select 1 from muzima_error_data data where data.payload_id = muzima_payload.id) and " +
+            "not exists (select 1 from muzima_archive_data data where data.payload_id = muzima_payload.id) and " +
+            "not exists (select 1 from muzima_lifecycle_data data where data.payload_id = muzima_payload.id)";
+
+    private static final String ORPHANED_PAYLOAD_QUERY =
+            "select muzima_payload.id from muzima_payload where " + ORPHANED_PAYLOAD_CONDITION;
+
+    private static final String ORPHANED_PAYLOAD_DELETE =
+            "delete from muzima_payload where id in (:ids) and " + ORPHANED_PAYLOAD_CONDITION;
+
+    private SessionFactory sessionFactory;
+
+    public void setSessionFactory(final SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Delete a chunk of payloads which are not referenced by any queue, error or archive data anymore.
+     *
+     * @param chunkSize the maximum number of payloads to delete.
+     * @return the number of deleted payloads.
+     * @should delete payloads without referencing data.
+     * @should not delete payloads referenced by data.
+     * @should not delete payloads referenced by data saved after the orphaned payloads were found.
+     */
+    @Override
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public int purgeOrphanedPayloads(final Integer chunkSize) {
+        Session session = sessionFactory.getCurrentSession();
+        List<Number> ids = session.createSQLQuery(ORPHANED_PAYLOAD_QUERY)
+                .setMaxResults(chunkSize)
+                .list();
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Integer[] payloadIds = new Integer[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            payloadIds[i] = ids.get(i).intValue();
+        }
+        return session.createSQLQuery(ORPHANED_PAYLOAD_DELETE)
+                .setParameterList("ids", payloadIds)
+                .executeUpdate();
+    }
+}
@@ -20,7 +20,7 @@ import org.openmrs.module.muzima.model.QueueData;
 
 /**
  */
-public class HibernateQueueDataDao extends HibernateDataDao<QueueData> implements QueueDataDao {
+public class HibernateQueueDataDao extends HibernateAuditableDataDao<QueueData> implements QueueDataDao {
 
     private final Log log = LogFactory.getLog(HibernateQueueDataDao.class);
 
@@ -54,38 +54,48 @@ public class HibernateSingleClassDao<T> implements SingleClassDao<T> {
         this.sessionFactory = sessionFactory;
     }
 
+    /**
+     * Get the hibernate entity name used to persist the mapped class. Subclasses can override this when the mapped
+     * class is mapped under more than one entity name.
+     *
+     * @return the hibernate entity name.
+     */
+    protected String getEntityName() {
+        return mappedClass.getName();
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     @Transactional(readOnly = true)
     public T getById(Integer id) {
-        return (T) sessionFactory.getCurrentSession().get(mappedClass, id);
+        return (T) sessionFactory.getCurrentSession().get(getEntityName(), id);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     @Transactional(readOnly = true)
     public List<T> getAll() {
-        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(mappedClass);
+        Criteria criteria = sessionFactory.getCurrentSession().createCriteria(getEntityName());
         return (List<T>) criteria.list();
     }
 
     @Override
     @Transactional
     public T saveOrUpdate(T object) {
-        sessionFactory.getCurrentSession().saveOrUpdate(object);
+        sessionFactory.getCurrentSession().saveOrUpdate(getEntityName(), object);
         return object;
     }
 
     @Override
     @Transactional
     public T update(T object) {
-        sessionFactory.getCurrentSession().update(object);
+        sessionFactory.getCurrentSession().update(getEntityName(), object);
         return object;
     }
 
     @Override
     @Transactional
     public void delete(T object) {
-        sessionFactory.getCurrentSession().delete(object);
+        sessionFactory.getCurrentSession().delete(getEntityName(), object);
     }
 }
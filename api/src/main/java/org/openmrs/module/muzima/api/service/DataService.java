@@ -1,19 +1,33 @@
 package org.openmrs.module.muzima.api.service;
 
+import org.openmrs.Location;
 import org.openmrs.Person;
+import org.openmrs.Role;
+import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.muzima.model.ArchiveData;
 import org.openmrs.module.muzima.model.DataSource;
 import org.openmrs.module.muzima.model.ErrorData;
+import org.openmrs.module.muzima.model.NotificationCounter;
 import org.openmrs.module.muzima.model.NotificationData;
 import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.model.RetentionPolicy;
+import org.openmrs.module.muzima.model.handler.QueueDataHandler;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
 import java.util.List;
 
 /**
  */
 public interface DataService extends OpenmrsService {
 
+    /**
+     * Privilege required to broadcast a notification data to a set of receivers.
+     */
+    String BROADCAST_NOTIFICATION_PRIVILEGE = "Broadcast Muzima Notification";
+
     /**
      * Return the queue data with the given id.
      *
@@ -60,6 +74,17 @@ public interface DataService extends OpenmrsService {
      */
     void purgeQueueData(final QueueData queueData);
 
+    /**
+     * Delete queue data from the database only when it is still in the queue.
+     *
+     * @param queueData the queue data.
+     * @return true when the queue data was deleted by this call.
+     * @should remove queue data from the database and return true.
+     * @should return false when the queue data was already moved or deleted.
+     */
+    @Transactional
+    boolean purgeQueueDataIfExists(final QueueData queueData);
+
     /**
      * Get the total number of the queue data in the database with partial matching search term on the payload.
      *
@@ -134,6 +159,24 @@ public interface DataService extends OpenmrsService {
      */
     Number countErrorData(final String search);
 
+    /**
+     * Get the number of queue data and the creation date of the oldest queue data, grouped by discriminator and data
+     * source.
+     *
+     * @return rows of discriminator, data source name, number of queue data and oldest creation date.
+     */
+    @Transactional(readOnly = true)
+    List<Object[]> getQueueDataStatistics();
+
+    /**
+     * Get the number of error data and the creation date of the oldest error data, grouped by discriminator and data
+     * source.
+     *
+     * @return rows of discriminator, data source name, number of error data and oldest creation date.
+     */
+    @Transactional(readOnly = true)
+    List<Object[]> getErrorDataStatistics();
+
     /**
      * Get error data with matching search term for a particular page.
      *
@@ -155,11 +198,13 @@ public interface DataService extends OpenmrsService {
     ArchiveData getArchiveData(final Integer id);
 
     /**
-     * Return the archive data with the given uuid.
+     * Return the archive data with the given uuid. Archive data which is no longer in the database is looked up in the
+     * cold archive segments.
      *
      * @param uuid the archive data uuid.
      * @return the archive data with the matching uuid.
      * @should return archive data with matching uuid.
+     * @should return archive data from the cold archive when not in the database.
      * @should return null when no archive data with matching uuid.
      */
     ArchiveData getArchiveDataByUuid(final String uuid);
@@ -209,6 +254,132 @@ public interface DataService extends OpenmrsService {
      */
     List<ArchiveData> getPagedArchiveData(final String search, final Integer pageNumber, final Integer pageSize);
 
+    /**
+     * Get the total number of the archive data archived within the date range with partial matching search term.
+     *
+     * @param search    the search term.
+     * @param startDate the start of the archive date range (inclusive), can be null.
+     * @param endDate   the end of the archive date range (exclusive), can be null.
+     * @return the total number of the archive data within the date range.
+     */
+    Number countArchiveData(final String search, final Date startDate, final Date endDate);
+
+    /**
+     * Get archive data archived within the date range with matching search term for a particular page.
+     *
+     * @param search     the search term.
+     * @param startDate  the start of the archive date range (inclusive), can be null.
+     * @param endDate    the end of the archive date range (exclusive), can be null.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return list of archive data within the date range with matching search term for a particular page.
+     */
+    List<ArchiveData> getPagedArchiveData(final String search, final Date startDate, final Date endDate,
+                                          final Integer pageNumber, final Integer pageSize);
+
+    /**
+     * Make sure the monthly archive partitions exist up to and including the month of the given date.
+     *
+     * @param date the date which must be covered by a monthly partition.
+     * @return the number of created partitions.
+     * @should create monthly partitions up to the month of the date.
+     */
+    int createArchivePartitions(final Date date);
+
+    /**
+     * Drop the archive partitions which only contain data archived before the given date.
+     *
+     * @param date the retention cut off date.
+     * @return the number of dropped partitions.
+     * @should drop partitions older than the date.
+     */
+    int dropArchivePartitions(final Date date);
+
+    /**
+     * Delete a chunk of archive or error data expired according to the retention policy. The data is deleted in bulk
+     * without calling the data handlers, each chunk is deleted in its own transaction.
+     *
+     * @param policy             the retention policy.
+     * @param overridingPolicies the more specific policies, data covered by these policies is not deleted.
+     * @param chunkSize          the maximum number of data to delete.
+     * @return the number of deleted data.
+     * @should delete expired data matching the policy.
+     * @should not delete data covered by the overriding policies.
+     */
+    @Transactional
+    int purgeExpiredData(final RetentionPolicy policy, final List<RetentionPolicy> overridingPolicies,
+                         final Integer chunkSize);
+
+    /**
+     * Delete a chunk of payloads which are not referenced by any queue, error or archive data anymore.
+     *
+     * @param chunkSize the maximum number of payloads to delete.
+     * @return the number of deleted payloads.
+     * @should delete payloads without referencing data.
+     */
+    @Transactional
+    int purgeOrphanedPayloads(final Integer chunkSize);
+
+    /**
+     * Move a segment of archive data archived before the given date out of the database into the cold archive. The
+     * archive data is deleted from the database only after the segment is written to the disk.
+     *
+     * @param date        the archive date cut off.
+     * @param segmentSize the maximum number of archive data in the segment.
+     * @return the number of archive data moved to the cold archive.
+     * @should move archive data archived before the date to the cold archive.
+     * @should not delete archive data when writing the segment failed.
+     */
+    @Transactional
+    int tierArchiveData(final Date date, final Integer segmentSize);
+
+    /**
+     * Move the processed queue data to the archive.
+     *
+     * @param queueData the queue data.
+     * @param message   the archive message.
+     * @return the archived data.
+     * @should move the queue data to the archive.
+     */
+    @Transactional
+    ArchiveData archiveQueueData(final QueueData queueData, final String message);
+
+    /**
+     * Process the queue data with the handler and move it to the archive in one transaction. The queue data is claimed
+     * before the handler runs, so a queue data moved or deleted by another transaction is never handled, and the claim
+     * is rolled back with the changes of the handler when the handler fails.
+     *
+     * @param queueData the queue data.
+     * @param handler   the queue data handler.
+     * @return the archived data.
+     * @should move the queue data to the archive after processing it.
+     * @should not process the queue data when it was already moved.
+     * @should keep the queue data in the queue when the handler fails.
+     */
+    @Transactional
+    ArchiveData processQueueData(final QueueData queueData, final QueueDataHandler handler);
+
+    /**
+     * Move the queue data which failed to process to the error data.
+     *
+     * @param queueData the queue data.
+     * @param message   the error message.
+     * @return the error data.
+     * @should move the queue data to the error data.
+     */
+    @Transactional
+    ErrorData failQueueData(final QueueData queueData, final String message);
+
+    /**
+     * Move the error data back to the queue to be processed again.
+     *
+     * @param errorData the error data.
+     * @return the queue data.
+     * @should move the error data back to the queue.
+     */
+    @Transactional
+    QueueData requeueErrorData(final ErrorData errorData);
+
     /**
      * Return the data source with the given id.
      *
@@ -303,6 +474,44 @@ public interface DataService extends OpenmrsService {
      */
     List<NotificationData> getAllNotificationData();
 
+    /**
+     * Return notification data with matching search term for a particular page.
+     *
+     * @param search     the search term.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return notification data with matching search term for the page.
+     * @should return notification data with matching search term for the page.
+     */
+    List<NotificationData> getPagedNotificationData(final String search, final Integer pageNumber,
+                                                    final Integer pageSize);
+
+    /**
+     * Return notification data with matching search term starting at the given position.
+     *
+     * @param receiverId  the receiver person id, null for any receiver.
+     * @param senderId    the sender person id, null for any sender. Ignored when the receiver is given.
+     * @param search      the search term.
+     * @param read        true for read notification data, false for unread, null for both. Only used with a receiver.
+     * @param firstResult the position of the first notification data, starting at 0.
+     * @param maxResults  the maximum number of notification data.
+     * @return notification data with matching search term in the range.
+     * @should return the notification data of the receiver starting at the first result.
+     * @should return the notification data of the sender starting at the first result.
+     */
+    List<NotificationData> getNotificationDataRange(final Integer receiverId, final Integer senderId,
+                                                    final String search, final Boolean read,
+                                                    final Integer firstResult, final Integer maxResults);
+
+    /**
+     * Return the total number of notification data with matching search term.
+     *
+     * @param search the search term.
+     * @return the total number of notification data with matching search term.
+     * @should return the number of notification data with matching search term.
+     */
+    Number countNotificationData(final String search);
+
     /**
      * Return all paged notification data for a particular person with matching search term for a particular page.
      *
@@ -316,6 +525,21 @@ public interface DataService extends OpenmrsService {
     List<NotificationData> getNotificationDataByReceiver(final Person person, final String search,
                                                          final Integer pageNumber, final Integer pageSize);
 
+    /**
+     * Return paged notification data for a particular person with matching search term and read state.
+     *
+     * @param receiverId the receiver person id.
+     * @param search     the search term.
+     * @param read       true for read notification data, false for unread, null for both.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return notification data with matching search term and read state for the page.
+     * @should return only unread notification data when read is false.
+     * @should return only read notification data when read is true.
+     */
+    List<NotificationData> getNotificationDataByReceiver(final Integer receiverId, final String search, final Boolean read,
+                                                         final Integer pageNumber, final Integer pageSize);
+
     /**
      * Return paged notification data from a particular person with matching search term for a particular page.
      *
@@ -329,6 +553,19 @@ public interface DataService extends OpenmrsService {
     List<NotificationData> getNotificationDataBySender(final Person person, final String search,
                                                        final Integer pageNumber, final Integer pageSize);
 
+    /**
+     * Return paged notification data from a particular person with matching search term for a particular page.
+     *
+     * @param senderId   the sender person id.
+     * @param search     the search term.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return notification data with matching search term for the page.
+     * @should return notification data from the sender.
+     */
+    List<NotificationData> getNotificationDataBySender(final Integer senderId, final String search,
+                                                       final Integer pageNumber, final Integer pageSize);
+
     /**
      * Return count for the paged notification data for a particular person with matching search term for a particular page.
      *
@@ -341,6 +578,53 @@ public interface DataService extends OpenmrsService {
      */
     Number countNotificationDataByReceiver(final Person person, final String search);
 
+    /**
+     * Return the number of notification data for a particular person with matching search term and read state.
+     *
+     * @param receiverId the receiver person id.
+     * @param search the search term.
+     * @param read   true for read notification data, false for unread, null for both.
+     * @return the number of notification data with matching search term and read state.
+     * @should return the number of unread notification data when read is false.
+     */
+    Number countNotificationDataByReceiver(final Integer receiverId, final String search, final Boolean read);
+
+    /**
+     * Mark the notification data of the receiver with the given uuids read or unread in bulk. Voided notification data,
+     * notification data of other receivers and notification data already in the requested read state are left
+     * untouched.
+     *
+     * @param receiver the receiver of the notification data.
+     * @param uuids    the notification data uuids.
+     * @param read     true to mark the notification data read, false to mark them unread.
+     * @return the number of notification data changing read state.
+     * @should mark unread notification data read.
+     * @should mark read notification data unread.
+     * @should update the unread count of the receiver.
+     * @should not change the notification data of other receivers.
+     */
+    @Transactional
+    int markNotificationDataRead(final Person receiver, final List<String> uuids, final boolean read);
+
+    /**
+     * Return the notification counter for a particular person.
+     *
+     * @param person the person.
+     * @return the notification counter with the total and unread number of notification data.
+     * @should return the counter of the person.
+     * @should compute the counter when the person has no counter yet.
+     */
+    NotificationCounter getNotificationCounter(final Person person);
+
+    /**
+     * Rebuild all notification counters from the notification data to reconcile any drift.
+     *
+     * @return the number of rebuilt notification counters.
+     * @should rebuild counters of all receivers.
+     */
+    @Transactional
+    int rebuildNotificationCounters();
+
     /**
      * Return count for the paged notification data from a particular person with matching search term for a particular page.
      *
@@ -353,6 +637,64 @@ public interface DataService extends OpenmrsService {
      */
     Number countNotificationDataBySender(final Person person, final String search);
 
+    /**
+     * Return the number of notification data from a particular person with matching search term.
+     *
+     * @param senderId the sender person id.
+     * @param search   the search term.
+     * @return the number of notification data from the sender with matching search term.
+     * @should return the number of notification data from the sender.
+     */
+    Number countNotificationDataBySender(final Integer senderId, final String search);
+
+    /**
+     * Return the id of the non voided person with the given uuid. The id is cached, so polling clients don't load the
+     * person on every request.
+     *
+     * @param uuid the person uuid.
+     * @return the person id or null when no non voided person with matching uuid.
+     * @should return the id of the person with matching uuid.
+     * @should return null for a voided person.
+     */
+    Integer getPersonIdByUuid(final String uuid);
+
+    /**
+     * Return the notification data for a particular person created, changed or voided after the sync cursor. Voided
+     * notification data is returned as well so the client can remove them. Notification data changed in the last
+     * couple of seconds is held back until the concurrent transactions writing at the same time have committed.
+     *
+     * @param receiverId  the receiver person id.
+     * @param dateChanged the date changed of the sync cursor, null to start from the beginning.
+     * @param id          the id of the sync cursor.
+     * @param maxResults  the maximum number of notification data to return.
+     * @return notification data changed after the sync cursor, ordered by the date changed and the id.
+     * @should return notification data changed after the sync cursor.
+     * @should return voided notification data.
+     */
+    List<NotificationData> getNotificationDataByReceiverChangedSince(final Integer receiverId, final Date dateChanged,
+                                                                     final Integer id, final Integer maxResults);
+
+    /**
+     * Return the notification data for a particular person changed after the sync cursor, waiting for new notification
+     * data when there is no change after the sync cursor yet. The wait is capped at one minute and returns right away
+     * when too many clients are already waiting. The wait runs outside of a transaction, so a waiting client doesn't
+     * hold a database connection, but it still holds its request thread: the servlet 2.5 containers of the supported
+     * OpenMRS versions have no asynchronous requests.
+     *
+     * @param receiverId  the receiver person id.
+     * @param dateChanged the date changed of the sync cursor, null to start from the beginning.
+     * @param id          the id of the sync cursor.
+     * @param maxResults  the maximum number of notification data to return.
+     * @param timeout     the maximum time to wait in milliseconds.
+     * @return notification data changed after the sync cursor, empty when nothing changed before the timeout.
+     * @should return notification data saved while waiting.
+     * @should return empty list when nothing changed before the timeout.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    List<NotificationData> awaitNotificationDataByReceiverChangedSince(final Integer receiverId, final Date dateChanged,
+                                                                       final Integer id, final Integer maxResults,
+                                                                       final Long timeout);
+
     /**
      * Return all saved notification data for a particular person.
      *
@@ -378,14 +720,78 @@ public interface DataService extends OpenmrsService {
      * @return saved notification data.
      * @should save notification data into the database.
      */
+    @Transactional
     NotificationData saveNotificationData(final NotificationData notificationData);
 
+    /**
+     * Broadcast a notification data to the receivers. A copy of the notification data is inserted for each receiver
+     * with batched inserts, so the broadcast doesn't load the receivers or go through the save of each copy.
+     *
+     * @param notificationData the notification data with the subject, payload and sender, the receiver is ignored.
+     * @param receivers        the receivers.
+     * @return the number of notification data created.
+     * @should create a notification data for each receiver.
+     * @should create a single notification data for a duplicated receiver.
+     */
+    @Transactional
+    @Authorized(BROADCAST_NOTIFICATION_PRIVILEGE)
+    int broadcastNotificationData(final NotificationData notificationData, final List<Person> receivers);
+
+    /**
+     * Broadcast a notification data to the users having the role.
+     *
+     * @param notificationData the notification data with the subject, payload and sender, the receiver is ignored.
+     * @param role             the role of the receivers.
+     * @return the number of notification data created.
+     * @should create a notification data for each user with the role.
+     */
+    @Transactional
+    @Authorized(BROADCAST_NOTIFICATION_PRIVILEGE)
+    int broadcastNotificationData(final NotificationData notificationData, final Role role);
+
+    /**
+     * Broadcast a notification data to the users having the location as their default location.
+     *
+     * @param notificationData the notification data with the subject, payload and sender, the receiver is ignored.
+     * @param location         the location of the receivers.
+     * @return the number of notification data created.
+     * @should create a notification data for each user at the location.
+     */
+    @Transactional
+    @Authorized(BROADCAST_NOTIFICATION_PRIVILEGE)
+    int broadcastNotificationData(final NotificationData notificationData, final Location location);
+
+    /**
+     * Void a chunk of notification data expired before the given date with a bulk update.
+     *
+     * @param date      the expiry cut off date.
+     * @param chunkSize the maximum number of notification data to void.
+     * @return the number of voided notification data.
+     * @should void notification data expired before the date.
+     * @should update the counters of the receivers.
+     */
+    @Transactional
+    int voidExpiredNotificationData(final Date date, final Integer chunkSize);
+
+    /**
+     * Delete a chunk of notification data expired before the given date with a bulk delete.
+     *
+     * @param date      the expiry cut off date.
+     * @param chunkSize the maximum number of notification data to delete.
+     * @return the number of deleted notification data.
+     * @should delete notification data expired before the date.
+     * @should update the counters of the receivers.
+     */
+    @Transactional
+    int purgeExpiredNotificationData(final Date date, final Integer chunkSize);
+
     /**
      * Delete notification data from the database.
      *
      * @param notificationData the notification data
      * @should remove notification data from the database
      */
+    @Transactional
     void purgeNotificationData(final NotificationData notificationData);
 
     /**
@@ -394,5 +800,6 @@ public interface DataService extends OpenmrsService {
      * @param notificationData the notification data to be voided.
      * @return the voided notification data.
      */
+    @Transactional
     NotificationData voidNotificationData(final NotificationData notificationData, final String reason);
 }
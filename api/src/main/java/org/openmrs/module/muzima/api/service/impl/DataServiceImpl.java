@@ -13,23 +13,45 @@
  */
 package org.openmrs.module.muzima.api.service.impl;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.hibernate.StaleObjectStateException;
+import org.openmrs.Location;
 import org.openmrs.Person;
+import org.openmrs.Role;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.muzima.api.db.ArchiveDataDao;
+import org.openmrs.module.muzima.api.db.ArchiveSegmentDao;
 import org.openmrs.module.muzima.api.db.DataSourceDao;
 import org.openmrs.module.muzima.api.db.ErrorDataDao;
+import org.openmrs.module.muzima.api.db.LifecycleDataDao;
 import org.openmrs.module.muzima.api.db.NotificationDataDao;
+import org.openmrs.module.muzima.api.db.PayloadDao;
 import org.openmrs.module.muzima.api.db.QueueDataDao;
 import org.openmrs.module.muzima.api.service.DataService;
 import org.openmrs.module.muzima.model.ArchiveData;
 import org.openmrs.module.muzima.model.DataSource;
 import org.openmrs.module.muzima.model.ErrorData;
+import org.openmrs.module.muzima.model.NotificationCounter;
 import org.openmrs.module.muzima.model.NotificationData;
 import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.model.RetentionPolicy;
+import org.openmrs.module.muzima.model.handler.QueueDataHandler;
+import org.openmrs.module.muzima.notification.NotificationRegistry;
+import org.openmrs.module.muzima.notification.PersonIdCache;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  */
@@ -37,6 +59,16 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
 
     private ErrorDataDao errorDataDao;
 
+    private static final int TIERING_PAGE_SIZE = 500;
+
+    private static final long SYNC_LAG = 2000;
+
+    private static final long MAX_SYNC_WAIT = 60000;
+
+    private static final String MAX_SYNC_WAITERS = "muzima.notification.maxWaiters";
+
+    private static final int DEFAULT_MAX_SYNC_WAITERS = 25;
+
     private QueueDataDao queueDataDao;
 
     private ArchiveDataDao archiveDataDao;
@@ -45,6 +77,16 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
 
     private NotificationDataDao notificationDataDao;
 
+    private LifecycleDataDao lifecycleDataDao;
+
+    private PayloadDao payloadDao;
+
+    private ArchiveSegmentDao archiveSegmentDao;
+
+    private NotificationRegistry notificationRegistry;
+
+    private PersonIdCache personIdCache;
+
     public QueueDataDao getQueueDataDao() {
         return queueDataDao;
     }
@@ -85,6 +127,46 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
         this.notificationDataDao = notificationDataDao;
     }
 
+    public LifecycleDataDao getLifecycleDataDao() {
+        return lifecycleDataDao;
+    }
+
+    public void setLifecycleDataDao(final LifecycleDataDao lifecycleDataDao) {
+        this.lifecycleDataDao = lifecycleDataDao;
+    }
+
+    public PayloadDao getPayloadDao() {
+        return payloadDao;
+    }
+
+    public void setPayloadDao(final PayloadDao payloadDao) {
+        this.payloadDao = payloadDao;
+    }
+
+    public ArchiveSegmentDao getArchiveSegmentDao() {
+        return archiveSegmentDao;
+    }
+
+    public void setArchiveSegmentDao(final ArchiveSegmentDao archiveSegmentDao) {
+        this.archiveSegmentDao = archiveSegmentDao;
+    }
+
+    public NotificationRegistry getNotificationRegistry() {
+        return notificationRegistry;
+    }
+
+    public void setNotificationRegistry(final NotificationRegistry notificationRegistry) {
+        this.notificationRegistry = notificationRegistry;
+    }
+
+    public PersonIdCache getPersonIdCache() {
+        return personIdCache;
+    }
+
+    public void setPersonIdCache(final PersonIdCache personIdCache) {
+        this.personIdCache = personIdCache;
+    }
+
     /**
      * Return the data with the given id.
      *
@@ -146,6 +228,19 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
         getQueueDataDao().purgeData(formData);
     }
 
+    /**
+     * Delete queue data from the database only when it is still in the queue.
+     *
+     * @param queueData the queue data.
+     * @return true when the queue data was deleted by this call.
+     * @should remove queue data from the database and return true.
+     * @should return false when the queue data was already moved or deleted.
+     */
+    @Override
+    public boolean purgeQueueDataIfExists(final QueueData queueData) {
+        return getQueueDataDao().purgeDataIfExists(queueData);
+    }
+
     /**
      * Get the total number of the queue data in the database with partial matching search term on the payload.
      *
@@ -244,6 +339,28 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
         return errorDataDao.countData(search);
     }
 
+    /**
+     * Get the number of queue data and the creation date of the oldest queue data, grouped by discriminator and data
+     * source.
+     *
+     * @return rows of discriminator, data source name, number of queue data and oldest creation date.
+     */
+    @Override
+    public List<Object[]> getQueueDataStatistics() {
+        return getQueueDataDao().getDataStatistics();
+    }
+
+    /**
+     * Get the number of error data and the creation date of the oldest error data, grouped by discriminator and data
+     * source.
+     *
+     * @return rows of discriminator, data source name, number of error data and oldest creation date.
+     */
+    @Override
+    public List<Object[]> getErrorDataStatistics() {
+        return getErrorDataDao().getDataStatistics();
+    }
+
     /**
      * Get error data with matching search term for a particular page.
      *
@@ -271,16 +388,34 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
     }
 
     /**
-     * Return the archive data with the given uuid.
+     * Return the archive data with the given uuid. Archive data which is no longer in the database is looked up in the
+     * cold archive segments.
      *
      * @param uuid the archive data uuid.
      * @return the archive data with the matching uuid.
      * @should return archive data with matching uuid.
+     * @should return archive data from the cold archive when not in the database.
      * @should return null when no archive data with matching uuid.
      */
     @Override
     public ArchiveData getArchiveDataByUuid(final String uuid) {
-        return getArchiveDataDao().getDataByUuid(uuid);
+        ArchiveData archiveData = getArchiveDataDao().getDataByUuid(uuid);
+        if (archiveData == null) {
+            // the archive data might have been moved to the cold archive segments.
+            archiveData = getArchiveSegmentDao().getArchiveDataByUuid(uuid);
+            if (archiveData != null) {
+                if (archiveData.getDataSource() != null) {
+                    archiveData.setDataSource(getDataSourceByUuid(archiveData.getDataSource().getUuid()));
+                }
+                if (archiveData.getCreator() != null) {
+                    archiveData.setCreator(Context.getUserService().getUser(archiveData.getCreator().getUserId()));
+                }
+                if (archiveData.getChangedBy() != null) {
+                    archiveData.setChangedBy(Context.getUserService().getUser(archiveData.getChangedBy().getUserId()));
+                }
+            }
+        }
+        return archiveData;
     }
 
     /**
@@ -343,6 +478,243 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
         return archiveDataDao.getPagedData(search, pageNumber, pageSize);
     }
 
+    /**
+     * Get the total number of the archive data archived within the date range with partial matching search term.
+     *
+     * @param search    the search term.
+     * @param startDate the start of the archive date range (inclusive), can be null.
+     * @param endDate   the end of the archive date range (exclusive), can be null.
+     * @return the total number of the archive data within the date range.
+     */
+    @Override
+    public Number countArchiveData(final String search, final Date startDate, final Date endDate) {
+        return archiveDataDao.countData(search, startDate, endDate);
+    }
+
+    /**
+     * Get archive data archived within the date range with matching search term for a particular page.
+     *
+     * @param search     the search term.
+     * @param startDate  the start of the archive date range (inclusive), can be null.
+     * @param endDate    the end of the archive date range (exclusive), can be null.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return list of archive data within the date range with matching search term for a particular page.
+     */
+    @Override
+    public List<ArchiveData> getPagedArchiveData(final String search, final Date startDate, final Date endDate,
+                                                 final Integer pageNumber, final Integer pageSize) {
+        return archiveDataDao.getPagedData(search, startDate, endDate, pageNumber, pageSize);
+    }
+
+    /**
+     * Make sure the monthly archive partitions exist up to and including the month of the given date.
+     *
+     * @param date the date which must be covered by a monthly partition.
+     * @return the number of created partitions.
+     * @should create monthly partitions up to the month of the date.
+     */
+    @Override
+    public int createArchivePartitions(final Date date) {
+        return archiveDataDao.createPartitions(date);
+    }
+
+    /**
+     * Drop the archive partitions which only contain data archived before the given date.
+     *
+     * @param date the retention cut off date.
+     * @return the number of dropped partitions.
+     * @should drop partitions older than the date.
+     */
+    @Override
+    public int dropArchivePartitions(final Date date) {
+        return archiveDataDao.dropPartitions(date);
+    }
+
+    /**
+     * Delete a chunk of archive or error data expired according to the retention policy.
+     *
+     * @param policy             the retention policy.
+     * @param overridingPolicies the more specific policies, data covered by these policies is not deleted.
+     * @param chunkSize          the maximum number of data to delete.
+     * @return the number of deleted data.
+     * @should delete expired data matching the policy.
+     * @should not delete data covered by the overriding policies.
+     */
+    @Override
+    public int purgeExpiredData(final RetentionPolicy policy, final List<RetentionPolicy> overridingPolicies,
+                                final Integer chunkSize) {
+        Date cutOffDate = policy.getCutOffDate(new Date());
+        if (RetentionPolicy.ERROR.equals(policy.getTable())) {
+            return getErrorDataDao().purgeExpiredData(policy, overridingPolicies, cutOffDate, chunkSize);
+        }
+        return getArchiveDataDao().purgeExpiredData(policy, overridingPolicies, cutOffDate, chunkSize);
+    }
+
+    /**
+     * Delete a chunk of payloads which are not referenced by any queue, error or archive data anymore.
+     *
+     * @param chunkSize the maximum number of payloads to delete.
+     * @return the number of deleted payloads.
+     * @should delete payloads without referencing data.
+     */
+    @Override
+    public int purgeOrphanedPayloads(final Integer chunkSize) {
+        return getPayloadDao().purgeOrphanedPayloads(chunkSize);
+    }
+
+    /**
+     * Move a segment of archive data archived before the given date out of the database into the cold archive.
+     *
+     * @param date        the archive date cut off.
+     * @param segmentSize the maximum number of archive data in the segment.
+     * @return the number of archive data moved to the cold archive.
+     * @should move archive data archived before the date to the cold archive.
+     * @should not delete archive data when writing the segment failed.
+     */
+    @Override
+    public int tierArchiveData(final Date date, final Integer segmentSize) {
+        final List<Integer> ids = new ArrayList<Integer>();
+        Iterator<ArchiveData> iterator = new Iterator<ArchiveData>() {
+
+            private List<ArchiveData> page = new ArrayList<ArchiveData>();
+
+            private int position;
+
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) {
+                    return true;
+                }
+                if (exhausted || ids.size() >= segmentSize) {
+                    return false;
+                }
+                // written data is dropped from the session, so only a page of data is in memory at a time.
+                for (ArchiveData archiveData : page) {
+                    Context.evictFromSession(archiveData);
+                    Context.evictFromSession(archiveData.getPayloadData());
+                }
+                Integer lastId = ids.isEmpty() ? null : ids.get(ids.size() - 1);
+                int pageSize = Math.min(TIERING_PAGE_SIZE, segmentSize - ids.size());
+                page = getArchiveDataDao().getDataArchivedBefore(date, lastId, pageSize);
+                position = 0;
+                exhausted = page.size() < pageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public ArchiveData next() {
+                ArchiveData archiveData = page.get(position++);
+                ids.add(archiveData.getId());
+                return archiveData;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        int written = getArchiveSegmentDao().writeSegment(iterator);
+        // only delete once the segment is safely on the disk.
+        for (int i = 0; i < ids.size(); i = i + TIERING_PAGE_SIZE) {
+            getArchiveDataDao().deleteData(ids.subList(i, Math.min(i + TIERING_PAGE_SIZE, ids.size())));
+        }
+        return written;
+    }
+
+    /**
+     * Move the processed queue data to the archive.
+     *
+     * @param queueData the queue data.
+     * @param message   the archive message.
+     * @return the archived data.
+     * @should move the queue data to the archive.
+     */
+    @Override
+    public ArchiveData archiveQueueData(final QueueData queueData, final String message) {
+        if (getLifecycleDataDao().isEnabled()) {
+            return getLifecycleDataDao().archiveQueueData(queueData, message);
+        }
+        ArchiveData archiveData = new ArchiveData(queueData);
+        archiveData.setMessage(message);
+        archiveData.setDateArchived(new Date());
+        claim(getQueueDataDao().purgeDataIfExists(queueData), QueueData.class, queueData.getId());
+        // go through the service to get the required data (creator, date created) filled in.
+        Context.getService(DataService.class).saveArchiveData(archiveData);
+        return archiveData;
+    }
+
+    /**
+     * Process the queue data with the handler and move it to the archive in one transaction. The queue data is claimed
+     * before the handler runs, so a queue data moved or deleted by another transaction is never handled, and the claim
+     * is rolled back with the changes of the handler when the handler fails.
+     *
+     * @param queueData the queue data.
+     * @param handler   the queue data handler.
+     * @return the archived data.
+     * @should move the queue data to the archive after processing it.
+     * @should not process the queue data when it was already moved.
+     * @should keep the queue data in the queue when the handler fails.
+     */
+    @Override
+    public ArchiveData processQueueData(final QueueData queueData, final QueueDataHandler handler) {
+        // the guarded move locks the row until the transaction ends, a concurrent move or delete waits for the handler.
+        ArchiveData archiveData = archiveQueueData(queueData, "Queue data processed successfully!");
+        handler.process(queueData);
+        return archiveData;
+    }
+
+    /**
+     * Move the queue data which failed to process to the error data.
+     *
+     * @param queueData the queue data.
+     * @param message   the error message.
+     * @return the error data.
+     * @should move the queue data to the error data.
+     */
+    @Override
+    public ErrorData failQueueData(final QueueData queueData, final String message) {
+        if (getLifecycleDataDao().isEnabled()) {
+            return getLifecycleDataDao().failQueueData(queueData, message);
+        }
+        ErrorData errorData = new ErrorData(queueData);
+        errorData.setMessage(message);
+        errorData.setDateProcessed(new Date());
+        claim(getQueueDataDao().purgeDataIfExists(queueData), QueueData.class, queueData.getId());
+        Context.getService(DataService.class).saveErrorData(errorData);
+        return errorData;
+    }
+
+    /**
+     * Move the error data back to the queue to be processed again.
+     *
+     * @param errorData the error data.
+     * @return the queue data.
+     * @should move the error data back to the queue.
+     */
+    @Override
+    public QueueData requeueErrorData(final ErrorData errorData) {
+        if (getLifecycleDataDao().isEnabled()) {
+            return getLifecycleDataDao().requeueErrorData(errorData);
+        }
+        QueueData queueData = new QueueData(errorData);
+        claim(getErrorDataDao().purgeDataIfExists(errorData), ErrorData.class, errorData.getId());
+        Context.getService(DataService.class).saveQueueData(queueData);
+        return queueData;
+    }
+
+    /**
+     * The source row of a transition is deleted first with a guarded delete. When another transaction already moved or
+     * deleted the row, the transition fails and rolls back, the same way as a guarded update of the lifecycle storage.
+     */
+    private void claim(final boolean deleted, final Class<?> dataClass, final Integer id) {
+        if (!deleted) {
+            throw new StaleObjectStateException(dataClass.getName(), id);
+        }
+    }
+
     /**
      * Return the data source with the given id.
      *
@@ -467,6 +839,60 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
         return getNotificationDataDao().getAllData();
     }
 
+    /**
+     * Return notification data with matching search term for a particular page.
+     *
+     * @param search     the search term.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return notification data with matching search term for the page.
+     * @should return notification data with matching search term for the page.
+     */
+    @Override
+    public List<NotificationData> getPagedNotificationData(final String search, final Integer pageNumber,
+                                                           final Integer pageSize) {
+        return getNotificationDataDao().getPagedData(search, pageNumber, pageSize);
+    }
+
+    /**
+     * Return notification data with matching search term starting at the given position.
+     *
+     * @param receiverId  the receiver person id, null for any receiver.
+     * @param senderId    the sender person id, null for any sender. Ignored when the receiver is given.
+     * @param search      the search term.
+     * @param read        true for read notification data, false for unread, null for both. Only used with a receiver.
+     * @param firstResult the position of the first notification data, starting at 0.
+     * @param maxResults  the maximum number of notification data.
+     * @return notification data with matching search term in the range.
+     * @should return the notification data of the receiver starting at the first result.
+     * @should return the notification data of the sender starting at the first result.
+     */
+    @Override
+    public List<NotificationData> getNotificationDataRange(final Integer receiverId, final Integer senderId,
+                                                           final String search, final Boolean read,
+                                                           final Integer firstResult, final Integer maxResults) {
+        if (receiverId != null) {
+            return getNotificationDataDao().getNotificationRangeByReceiver(receiverId, search, read, firstResult,
+                    maxResults);
+        }
+        if (senderId != null) {
+            return getNotificationDataDao().getNotificationRangeBySender(senderId, search, firstResult, maxResults);
+        }
+        return getNotificationDataDao().getDataRange(search, firstResult, maxResults);
+    }
+
+    /**
+     * Return the total number of notification data with matching search term.
+     *
+     * @param search the search term.
+     * @return the total number of notification data with matching search term.
+     * @should return the number of notification data with matching search term.
+     */
+    @Override
+    public Number countNotificationData(final String search) {
+        return getNotificationDataDao().countData(search);
+    }
+
     /**
      * Return paged notification data for a particular person with matching search term for a particular page.
      *
@@ -480,7 +906,26 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
     @Override
     public List<NotificationData> getNotificationDataByReceiver(final Person person, final String search,
                                                                 final Integer pageNumber, final Integer pageSize) {
-        return getNotificationDataDao().getNotificationsByReceiver(person, search, pageNumber, pageSize);
+        return getNotificationDataByReceiver(person.getPersonId(), search, null, pageNumber, pageSize);
+    }
+
+    /**
+     * Return paged notification data for a particular person with matching search term and read state.
+     *
+     * @param receiverId the receiver person id.
+     * @param search     the search term.
+     * @param read       true for read notification data, false for unread, null for both.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return notification data with matching search term and read state for the page.
+     * @should return only unread notification data when read is false.
+     * @should return only read notification data when read is true.
+     */
+    @Override
+    public List<NotificationData> getNotificationDataByReceiver(final Integer receiverId, final String search,
+                                                                final Boolean read,
+                                                                final Integer pageNumber, final Integer pageSize) {
+        return getNotificationDataDao().getNotificationsByReceiver(receiverId, search, read, pageNumber, pageSize);
     }
 
     /**
@@ -496,7 +941,23 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
     @Override
     public List<NotificationData> getNotificationDataBySender(final Person person, final String search,
                                                               final Integer pageNumber, final Integer pageSize) {
-        return getNotificationDataDao().getNotificationsBySender(person, search, pageNumber, pageSize);
+        return getNotificationDataBySender(person.getPersonId(), search, pageNumber, pageSize);
+    }
+
+    /**
+     * Return paged notification data from a particular person with matching search term for a particular page.
+     *
+     * @param senderId   the sender person id.
+     * @param search     the search term.
+     * @param pageNumber the page number.
+     * @param pageSize   the size of the page.
+     * @return notification data with matching search term for the page.
+     * @should return notification data from the sender.
+     */
+    @Override
+    public List<NotificationData> getNotificationDataBySender(final Integer senderId, final String search,
+                                                              final Integer pageNumber, final Integer pageSize) {
+        return getNotificationDataDao().getNotificationsBySender(senderId, search, pageNumber, pageSize);
     }
 
     /**
@@ -511,7 +972,78 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
      */
     @Override
     public Number countNotificationDataByReceiver(final Person person, final String search) {
-        return getNotificationDataDao().countNotificationsByReceiver(person, search);
+        return countNotificationDataByReceiver(person.getPersonId(), search, null);
+    }
+
+    /**
+     * Return the number of notification data for a particular person with matching search term and read state.
+     *
+     * @param receiverId the receiver person id.
+     * @param search the search term.
+     * @param read   true for read notification data, false for unread, null for both.
+     * @return the number of notification data with matching search term and read state.
+     * @should return the number of unread notification data when read is false.
+     */
+    @Override
+    public Number countNotificationDataByReceiver(final Integer receiverId, final String search, final Boolean read) {
+        if (StringUtils.isEmpty(search)) {
+            NotificationCounter counter = getNotificationDataDao().getNotificationCounter(receiverId);
+            if (read == null) {
+                return counter.getTotal();
+            }
+            return read ? counter.getTotal() - counter.getUnread() : counter.getUnread();
+        }
+        return getNotificationDataDao().countNotificationsByReceiver(receiverId, search, read);
+    }
+
+    /**
+     * Mark the notification data of the receiver with the given uuids read or unread in bulk. Voided notification data,
+     * notification data of other receivers and notification data already in the requested read state are left
+     * untouched.
+     *
+     * @param receiver the receiver of the notification data.
+     * @param uuids    the notification data uuids.
+     * @param read     true to mark the notification data read, false to mark them unread.
+     * @return the number of notification data changing read state.
+     * @should mark unread notification data read.
+     * @should mark read notification data unread.
+     * @should update the unread count of the receiver.
+     * @should not change the notification data of other receivers.
+     */
+    @Override
+    public int markNotificationDataRead(final Person receiver, final List<String> uuids, final boolean read) {
+        if (receiver == null || uuids == null || uuids.isEmpty()) {
+            return 0;
+        }
+        // the read state change moves the notification forward in the sync order.
+        Map<Integer, Integer> updated = getNotificationDataDao().updateReadState(receiver.getPersonId(), uuids, read,
+                getSyncDate(), Context.getAuthenticatedUser());
+        publishNotificationData(updated.keySet());
+        return sum(updated);
+    }
+
+    /**
+     * Return the notification counter for a particular person.
+     *
+     * @param person the person.
+     * @return the notification counter with the total and unread number of notification data.
+     * @should return the counter of the person.
+     * @should compute the counter when the person has no counter yet.
+     */
+    @Override
+    public NotificationCounter getNotificationCounter(final Person person) {
+        return getNotificationDataDao().getNotificationCounter(person.getPersonId());
+    }
+
+    /**
+     * Rebuild all notification counters from the notification data to reconcile any drift.
+     *
+     * @return the number of rebuilt notification counters.
+     * @should rebuild counters of all receivers.
+     */
+    @Override
+    public int rebuildNotificationCounters() {
+        return getNotificationDataDao().rebuildNotificationCounters();
     }
 
     /**
@@ -526,7 +1058,107 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
      */
     @Override
     public Number countNotificationDataBySender(final Person person, final String search) {
-        return getNotificationDataDao().countNotificationsBySender(person, search);
+        return countNotificationDataBySender(person.getPersonId(), search);
+    }
+
+    /**
+     * Return the number of notification data from a particular person with matching search term.
+     *
+     * @param senderId the sender person id.
+     * @param search   the search term.
+     * @return the number of notification data from the sender with matching search term.
+     * @should return the number of notification data from the sender.
+     */
+    @Override
+    public Number countNotificationDataBySender(final Integer senderId, final String search) {
+        return getNotificationDataDao().countNotificationsBySender(senderId, search);
+    }
+
+    /**
+     * Return the id of the non voided person with the given uuid. The id is cached, so polling clients don't load the
+     * person on every request.
+     *
+     * @param uuid the person uuid.
+     * @return the person id or null when no non voided person with matching uuid.
+     * @should return the id of the person with matching uuid.
+     * @should return null for a voided person.
+     */
+    @Override
+    public Integer getPersonIdByUuid(final String uuid) {
+        Integer personId = getPersonIdCache().get(uuid);
+        if (personId == null) {
+            personId = getNotificationDataDao().getPersonIdByUuid(uuid);
+            if (personId != null) {
+                getPersonIdCache().put(uuid, personId);
+            }
+        }
+        return personId;
+    }
+
+    /**
+     * Return the notification data for a particular person created, changed or voided after the sync cursor. Voided
+     * notification data is returned as well so the client can remove them. Notification data changed in the last
+     * couple of seconds is held back until the concurrent transactions writing at the same time have committed.
+     *
+     * @param receiverId  the receiver person id.
+     * @param dateChanged the date changed of the sync cursor, null to start from the beginning.
+     * @param id          the id of the sync cursor.
+     * @param maxResults  the maximum number of notification data to return.
+     * @return notification data changed after the sync cursor, ordered by the date changed and the id.
+     * @should return notification data changed after the sync cursor.
+     * @should return voided notification data.
+     */
+    @Override
+    public List<NotificationData> getNotificationDataByReceiverChangedSince(final Integer receiverId, final Date dateChanged,
+                                                                            final Integer id, final Integer maxResults) {
+        Date until = new Date(getSyncDate().getTime() - SYNC_LAG);
+        return getNotificationDataDao().getNotificationsByReceiverChangedSince(receiverId, dateChanged, id, until, maxResults);
+    }
+
+    /**
+     * Return the notification data for a particular person changed after the sync cursor, waiting for new notification
+     * data when there is no change after the sync cursor yet. Each query goes through the service in its own short
+     * transaction, so no database connection is held while waiting.
+     *
+     * @param receiverId  the receiver person id.
+     * @param dateChanged the date changed of the sync cursor, null to start from the beginning.
+     * @param id          the id of the sync cursor.
+     * @param maxResults  the maximum number of notification data to return.
+     * @param timeout     the maximum time to wait in milliseconds.
+     * @return notification data changed after the sync cursor, empty when nothing changed before the timeout.
+     * @should return notification data saved while waiting.
+     * @should return empty list when nothing changed before the timeout.
+     */
+    @Override
+    public List<NotificationData> awaitNotificationDataByReceiverChangedSince(final Integer receiverId, final Date dateChanged,
+                                                                              final Integer id, final Integer maxResults,
+                                                                              final Long timeout) {
+        long deadline = System.currentTimeMillis() + Math.min(timeout, MAX_SYNC_WAIT);
+        int maxWaiters = NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty(MAX_SYNC_WAITERS),
+                DEFAULT_MAX_SYNC_WAITERS);
+        DataService dataService = Context.getService(DataService.class);
+        while (true) {
+            long version = getNotificationRegistry().getVersion(receiverId);
+            List<NotificationData> notificationDataList =
+                    dataService.getNotificationDataByReceiverChangedSince(receiverId, dateChanged, id, maxResults);
+            long remaining = deadline - System.currentTimeMillis();
+            if (!notificationDataList.isEmpty() || remaining <= 0) {
+                return notificationDataList;
+            }
+            try {
+                if (!getNotificationRegistry().await(receiverId, version, remaining, maxWaiters)) {
+                    return notificationDataList;
+                }
+                // the new notification data is held back by the sync lag, let it settle before querying again.
+                long settle = Math.min(SYNC_LAG + 1000, deadline - System.currentTimeMillis());
+                if (settle > 0) {
+                    Thread.sleep(settle);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return notificationDataList;
+            }
+        }
     }
 
     /**
@@ -538,7 +1170,7 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
      */
     @Override
     public List<NotificationData> getNotificationDataByReceiver(final Person person) {
-        return getNotificationDataDao().getNotificationsByReceiver(person, null, null, null);
+        return getNotificationDataDao().getNotificationsByReceiver(person.getPersonId(), null, null, null, null);
     }
 
     /**
@@ -550,7 +1182,7 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
      */
     @Override
     public List<NotificationData> getNotificationDataBySender(final Person person) {
-        return getNotificationDataDao().getNotificationsBySender(person, null, null, null);
+        return getNotificationDataDao().getNotificationsBySender(person.getPersonId(), null, null, null);
     }
 
     /**
@@ -559,10 +1191,135 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
      * @param notificationData the notification data.
      * @return saved notification data.
      * @should save notification data into the database.
+     * @should update the counters when the read or voided state changes.
      */
     @Override
     public NotificationData saveNotificationData(final NotificationData notificationData) {
-        return getNotificationDataDao().saveOrUpdate(notificationData);
+        // the stored state is read before the save flushes the changes of the notification.
+        int[] stored = notificationData.getId() == null ? null
+                : getNotificationDataDao().getStoredCounterState(notificationData.getId());
+        // every write moves the notification forward in the sync order.
+        notificationData.setDateChanged(getSyncDate());
+        NotificationData savedNotificationData = getNotificationDataDao().saveOrUpdate(notificationData);
+        updateNotificationCounters(stored, savedNotificationData);
+        publishNotificationData(savedNotificationData.getReceiver().getPersonId());
+        return savedNotificationData;
+    }
+
+    /**
+     * Apply the difference between the stored and the saved state of the notification to the counters, so creating,
+     * voiding, reading or moving a notification to another receiver keeps the counters in sync.
+     */
+    private void updateNotificationCounters(final int[] stored, final NotificationData savedNotificationData) {
+        Integer receiverId = savedNotificationData.getReceiver().getPersonId();
+        int total = savedNotificationData.isVoided() ? 0 : 1;
+        int unread = total == 1 && savedNotificationData.getDateRead() == null ? 1 : 0;
+        if (stored != null && stored[0] != receiverId) {
+            if (stored[1] != 0 || stored[2] != 0) {
+                getNotificationDataDao().updateNotificationCounter(stored[0], -stored[1], -stored[2]);
+            }
+            stored[1] = 0;
+            stored[2] = 0;
+        }
+        int totalDelta = total - (stored == null ? 0 : stored[1]);
+        int unreadDelta = unread - (stored == null ? 0 : stored[2]);
+        if (totalDelta != 0 || unreadDelta != 0) {
+            getNotificationDataDao().updateNotificationCounter(receiverId, totalDelta, unreadDelta);
+        }
+    }
+
+    /**
+     * Broadcast a notification data to the receivers. A copy of the notification data is inserted for each receiver
+     * with batched inserts, so the broadcast doesn't load the receivers or go through the save of each copy.
+     *
+     * @param notificationData the notification data with the subject, payload and sender, the receiver is ignored.
+     * @param receivers        the receivers.
+     * @return the number of notification data created.
+     * @should create a notification data for each receiver.
+     * @should create a single notification data for a duplicated receiver.
+     */
+    @Override
+    public int broadcastNotificationData(final NotificationData notificationData, final List<Person> receivers) {
+        List<Integer> receiverIds = new ArrayList<Integer>();
+        for (Person receiver : receivers) {
+            receiverIds.add(receiver.getPersonId());
+        }
+        return broadcastToReceivers(notificationData, receiverIds);
+    }
+
+    /**
+     * Broadcast a notification data to the users having the role.
+     *
+     * @param notificationData the notification data with the subject, payload and sender, the receiver is ignored.
+     * @param role             the role of the receivers.
+     * @return the number of notification data created.
+     * @should create a notification data for each user with the role.
+     */
+    @Override
+    public int broadcastNotificationData(final NotificationData notificationData, final Role role) {
+        return broadcastToReceivers(notificationData, getNotificationDataDao().getPersonIdsByRole(role));
+    }
+
+    /**
+     * Broadcast a notification data to the users having the location as their default location.
+     *
+     * @param notificationData the notification data with the subject, payload and sender, the receiver is ignored.
+     * @param location         the location of the receivers.
+     * @return the number of notification data created.
+     * @should create a notification data for each user at the location.
+     */
+    @Override
+    public int broadcastNotificationData(final NotificationData notificationData, final Location location) {
+        return broadcastToReceivers(notificationData, getNotificationDataDao().getPersonIdsByLocation(location));
+    }
+
+    private int broadcastToReceivers(final NotificationData notificationData, final List<Integer> receiverIds) {
+        Set<Integer> receivers = new LinkedHashSet<Integer>(receiverIds);
+        if (receivers.isEmpty()) {
+            return 0;
+        }
+        Date syncDate = getSyncDate();
+        if (notificationData.getCreator() == null) {
+            notificationData.setCreator(Context.getAuthenticatedUser());
+        }
+        notificationData.setDateCreated(syncDate);
+        notificationData.setDateChanged(syncDate);
+        int inserted = getNotificationDataDao().saveNotifications(notificationData, receivers);
+        getNotificationDataDao().incrementNotificationCounters(receivers);
+        publishNotificationData(receivers);
+        return inserted;
+    }
+
+    /**
+     * Void a chunk of notification data expired before the given date with a bulk update.
+     *
+     * @param date      the expiry cut off date.
+     * @param chunkSize the maximum number of notification data to void.
+     * @return the number of voided notification data.
+     * @should void notification data expired before the date.
+     * @should update the counters of the receivers.
+     */
+    @Override
+    public int voidExpiredNotificationData(final Date date, final Integer chunkSize) {
+        // the voided notification data is sent to the clients on their next sync.
+        Map<Integer, Integer> voided = getNotificationDataDao().voidExpiredNotifications(date, chunkSize,
+                getSyncDate(), Context.getAuthenticatedUser());
+        publishNotificationData(voided.keySet());
+        return sum(voided);
+    }
+
+    /**
+     * Delete a chunk of notification data expired before the given date with a bulk delete.
+     *
+     * @param date      the expiry cut off date.
+     * @param chunkSize the maximum number of notification data to delete.
+     * @return the number of deleted notification data.
+     * @should delete notification data expired before the date.
+     * @should update the counters of the receivers.
+     */
+    @Override
+    public int purgeExpiredNotificationData(final Date date, final Integer chunkSize) {
+        return sum(getNotificationDataDao().purgeExpiredNotifications(date, chunkSize));
     }
 
     /**
@@ -574,6 +1331,10 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
     @Override
     public void purgeNotificationData(final NotificationData notificationData) {
         getNotificationDataDao().purgeData(notificationData);
+        if (!notificationData.isVoided()) {
+            getNotificationDataDao().updateNotificationCounter(notificationData.getReceiver().getPersonId(), -1,
+                    notificationData.getDateRead() == null ? -1 : 0);
+        }
     }
 
     /**
@@ -588,6 +1349,46 @@ public class DataServiceImpl extends BaseOpenmrsService implements DataService {
         notificationData.setVoidedBy(Context.getAuthenticatedUser());
         notificationData.setDateVoided(new Date());
         notificationData.setVoidReason(reason);
+        // the save takes the notification out of the counter of the receiver.
         return saveNotificationData(notificationData);
     }
+
+    /**
+     * Wake up the clients waiting for the receiver once the notification is committed.
+     */
+    private void publishNotificationData(final Integer receiverId) {
+        publishNotificationData(Collections.singleton(receiverId));
+    }
+
+    private void publishNotificationData(final Collection<Integer> receiverIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    for (Integer receiverId : receiverIds) {
+                        getNotificationRegistry().publish(receiverId);
+                    }
+                }
+            });
+        } else {
+            for (Integer receiverId : receiverIds) {
+                getNotificationRegistry().publish(receiverId);
+            }
+        }
+    }
+
+    private int sum(final Map<Integer, Integer> counts) {
+        int sum = 0;
+        for (Integer count : counts.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * The database only keeps seconds, so the in memory date must match what is stored.
+     */
+    private Date getSyncDate() {
+        return new Date(System.currentTimeMillis() / 1000 * 1000);
+    }
 }
@@ -21,7 +21,7 @@ public abstract class AuditableData extends BaseOpenmrsData implements Data {
 
     private Integer id;
 
-    private String payload;
+    private Payload payloadData;
 
     private String discriminator;
 
@@ -35,7 +35,7 @@ public abstract class AuditableData extends BaseOpenmrsData implements Data {
     }
 
     public AuditableData(final AuditableData data) {
-        setPayload(data.getPayload());
+        setPayloadData(data.getPayloadData());
         setDataSource(data.getDataSource());
         setDiscriminator(data.getDiscriminator());
     }
@@ -63,7 +63,10 @@ public abstract class AuditableData extends BaseOpenmrsData implements Data {
      */
     @Override
     public String getPayload() {
-        return payload;
+        if (payloadData == null) {
+            return null;
+        }
+        return payloadData.getContent();
     }
 
     /**
@@ -72,7 +75,29 @@ public abstract class AuditableData extends BaseOpenmrsData implements Data {
      * @param payload the payload for this data
      */
     public void setPayload(final String payload) {
-        this.payload = payload;
+        if (payload == null) {
+            this.payloadData = null;
+        } else if (payloadData == null || !payload.equals(payloadData.getContent())) {
+            this.payloadData = new Payload(payload);
+        }
+    }
+
+    /**
+     * Get the stored payload referenced by this data.
+     *
+     * @return the stored payload referenced by this data.
+     */
+    public Payload getPayloadData() {
+        return payloadData;
+    }
+
+    /**
+     * Set the stored payload referenced by this data.
+     *
+     * @param payloadData the stored payload referenced by this data.
+     */
+    public void setPayloadData(final Payload payloadData) {
+        this.payloadData = payloadData;
     }
 
     /**
@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Incrementally maintained notification counts for a single receiver, so the badge counts don't need to count the
+ * notification table.
+ */
+public class NotificationCounter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Integer personId;
+
+    private Integer total;
+
+    private Integer unread;
+
+    private Date dateUpdated;
+
+    public NotificationCounter() {
+    }
+
+    public NotificationCounter(final Integer personId, final Integer total, final Integer unread) {
+        this.personId = personId;
+        this.total = total;
+        this.unread = unread;
+        this.dateUpdated = new Date();
+    }
+
+    /**
+     * Get the person id of the receiver.
+     *
+     * @return the person id of the receiver.
+     */
+    public Integer getPersonId() {
+        return personId;
+    }
+
+    /**
+     * Set the person id of the receiver.
+     *
+     * @param personId the person id of the receiver.
+     */
+    public void setPersonId(final Integer personId) {
+        this.personId = personId;
+    }
+
+    /**
+     * Get the total number of non voided notification for the receiver.
+     *
+     * @return the total number of notification.
+     */
+    public Integer getTotal() {
+        return total;
+    }
+
+    /**
+     * Set the total number of non voided notification for the receiver.
+     *
+     * @param total the total number of notification.
+     */
+    public void setTotal(final Integer total) {
+        this.total = total;
+    }
+
+    /**
+     * Get the number of non voided unread notification for the receiver.
+     *
+     * @return the number of unread notification.
+     */
+    public Integer getUnread() {
+        return unread;
+    }
+
+    /**
+     * Set the number of non voided unread notification for the receiver.
+     *
+     * @param unread the number of unread notification.
+     */
+    public void setUnread(final Integer unread) {
+        this.unread = unread;
+    }
+
+    /**
+     * Get the date the counter was last updated.
+     *
+     * @return the date the counter was last updated.
+     */
+    public Date getDateUpdated() {
+        return dateUpdated;
+    }
+
+    /**
+     * Set the date the counter was last updated.
+     *
+     * @param dateUpdated the date the counter was last updated.
+     */
+    public void setDateUpdated(final Date dateUpdated) {
+        this.dateUpdated = dateUpdated;
+    }
+}
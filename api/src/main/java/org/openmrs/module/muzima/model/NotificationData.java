@@ -16,6 +16,8 @@ package org.openmrs.module.muzima.model;
 import org.openmrs.BaseOpenmrsData;
 import org.openmrs.Person;
 
+import java.util.Date;
+
 /**
  * TODO: Write brief description about the class here.
  */
@@ -31,6 +33,10 @@ public class NotificationData extends BaseOpenmrsData implements Data {
 
     private String payload;
 
+    private Date dateRead;
+
+    private Date expireDate;
+
     /**
      * @return id - The unique Identifier for the object
      */
@@ -117,4 +123,40 @@ public class NotificationData extends BaseOpenmrsData implements Data {
     public void setPayload(final String payload) {
         this.payload = payload;
     }
+
+    /**
+     * Get the date the receiver read this notification.
+     *
+     * @return the date the notification was read or null when the notification is unread.
+     */
+    public Date getDateRead() {
+        return dateRead;
+    }
+
+    /**
+     * Set the date the receiver read this notification.
+     *
+     * @param dateRead the date the notification was read or null to mark the notification unread.
+     */
+    public void setDateRead(final Date dateRead) {
+        this.dateRead = dateRead;
+    }
+
+    /**
+     * Get the date after which this notification is expired.
+     *
+     * @return the expiry date or null when the notification doesn't expire.
+     */
+    public Date getExpireDate() {
+        return expireDate;
+    }
+
+    /**
+     * Set the date after which this notification is expired.
+     *
+     * @param expireDate the expiry date or null when the notification doesn't expire.
+     */
+    public void setExpireDate(final Date expireDate) {
+        this.expireDate = expireDate;
+    }
 }
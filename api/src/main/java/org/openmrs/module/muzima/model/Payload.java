@@ -0,0 +1,121 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.model;
+
+import org.openmrs.BaseOpenmrsObject;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content addressed payload. A payload is stored once and referenced by the queue, error and archive data, so moving
+ * data between those states never copies the payload itself.
+ */
+public class Payload extends BaseOpenmrsObject {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private Integer id;
+
+    private String hash;
+
+    private String content;
+
+    public Payload() {
+    }
+
+    public Payload(final String content) {
+        setContent(content);
+    }
+
+    /**
+     * @return id - The unique Identifier for the object
+     */
+    @Override
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * @param id - The unique Identifier for the object
+     */
+    @Override
+    public void setId(final Integer id) {
+        this.id = id;
+    }
+
+    /**
+     * Get the SHA-256 hash of the payload content.
+     *
+     * @return the hex encoded hash of the payload content.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Set the SHA-256 hash of the payload content.
+     *
+     * @param hash the hex encoded hash of the payload content.
+     */
+    public void setHash(final String hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Get the actual content of the payload.
+     *
+     * @return the content of the payload.
+     */
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Set the content of the payload and re-calculate the hash of the content.
+     *
+     * @param content the content of the payload.
+     */
+    public void setContent(final String content) {
+        this.content = content;
+        this.hash = hash(content);
+    }
+
+    /**
+     * Calculate the hex encoded SHA-256 hash of the content.
+     *
+     * @param content the content.
+     * @return the hex encoded hash or null when the content is null.
+     */
+    public static String hash(final String content) {
+        if (content == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(content.getBytes("UTF-8"));
+            char[] chars = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+                chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+            }
+            return new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM!", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported by this JVM!", e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.model;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.api.APIException;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Retention policy for the archive or error data. A policy is written as <code>table[:source[:discriminator]]=days</code>
+ * where the table is either <code>archive</code> or <code>error</code>, the source is the data source name and
+ * <code>*</code> matches any source or discriminator. Example: <code>archive=180, error=365,
+ * archive:*:json-registration=30</code>.
+ * <p/>
+ * When several policies of a table cover the same data, the most specific policy wins, in this order: source and
+ * discriminator, discriminator only, source only and the table default. A discriminator only policy thus wins over a
+ * source only policy for the data of that source and discriminator.
+ */
+public class RetentionPolicy {
+
+    public static final String ARCHIVE = "archive";
+
+    public static final String ERROR = "error";
+
+    private static final String WILDCARD = "*";
+
+    private final String table;
+
+    private final String dataSource;
+
+    private final String discriminator;
+
+    private final int days;
+
+    public RetentionPolicy(final String table, final String dataSource, final String discriminator, final int days) {
+        this.table = table;
+        this.dataSource = dataSource;
+        this.discriminator = discriminator;
+        this.days = days;
+    }
+
+    /**
+     * Parse the comma or new line separated retention policies.
+     *
+     * @param policies the retention policies text.
+     * @return the list of retention policies.
+     * @should parse table only policy.
+     * @should parse policy with data source and discriminator.
+     * @should treat wildcard as any value.
+     * @should throw APIException when the policy is invalid.
+     */
+    public static List<RetentionPolicy> parse(final String policies) {
+        List<RetentionPolicy> retentionPolicies = new ArrayList<RetentionPolicy>();
+        if (StringUtils.isBlank(policies)) {
+            return retentionPolicies;
+        }
+        for (String policy : policies.split("[,\\n]")) {
+            if (StringUtils.isBlank(policy)) {
+                continue;
+            }
+            String[] parts = policy.split("=");
+            if (parts.length != 2 || StringUtils.isBlank(parts[1]) || !StringUtils.isNumeric(parts[1].trim())) {
+                throw new APIException("Invalid retention policy: " + policy.trim());
+            }
+            String[] scopes = parts[0].split(":");
+            String table = scopes[0].trim();
+            if (scopes.length > 3 || !(ARCHIVE.equals(table) || ERROR.equals(table))) {
+                throw new APIException("Invalid retention policy: " + policy.trim());
+            }
+            String dataSource = scopes.length > 1 ? toScope(scopes[1]) : null;
+            String discriminator = scopes.length > 2 ? toScope(scopes[2]) : null;
+            retentionPolicies.add(new RetentionPolicy(table, dataSource, discriminator, Integer.parseInt(parts[1].trim())));
+        }
+        return retentionPolicies;
+    }
+
+    private static String toScope(final String scope) {
+        String trimmed = scope.trim();
+        return WILDCARD.equals(trimmed) || trimmed.length() == 0 ? null : trimmed;
+    }
+
+    /**
+     * Get the table covered by this policy, either archive or error.
+     *
+     * @return the table covered by this policy.
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * Get the name of the data source covered by this policy.
+     *
+     * @return the data source name or null when the policy covers any data source.
+     */
+    public String getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Get the discriminator covered by this policy.
+     *
+     * @return the discriminator or null when the policy covers any discriminator.
+     */
+    public String getDiscriminator() {
+        return discriminator;
+    }
+
+    /**
+     * Get the number of days the data is kept.
+     *
+     * @return the number of days the data is kept.
+     */
+    public int getDays() {
+        return days;
+    }
+
+    /**
+     * Get the date before which the data is expired.
+     *
+     * @param date the reference date.
+     * @return the retention cut off date.
+     */
+    public Date getCutOffDate(final Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.add(Calendar.DATE, -days);
+        return calendar.getTime();
+    }
+
+    /**
+     * Get the policies of the same table which take precedence over this policy for some of its data. Data covered by
+     * those policies must be excluded when applying this policy.
+     *
+     * @param policies all retention policies.
+     * @return the policies overriding this policy.
+     * @should return more specific policies within the scope of this policy.
+     * @should not return policies of other tables.
+     * @should let a discriminator only policy override an overlapping source only policy.
+     */
+    public List<RetentionPolicy> getOverridingPolicies(final List<RetentionPolicy> policies) {
+        List<RetentionPolicy> overridingPolicies = new ArrayList<RetentionPolicy>();
+        for (RetentionPolicy policy : policies) {
+            // the scopes overlap unless both policies name a different source or a different discriminator.
+            if (policy != this && table.equals(policy.table)
+                    && policy.getPrecedence() > getPrecedence()
+                    && (dataSource == null || policy.dataSource == null || dataSource.equals(policy.dataSource))
+                    && (discriminator == null || policy.discriminator == null
+                    || discriminator.equals(policy.discriminator))) {
+                overridingPolicies.add(policy);
+            }
+        }
+        return overridingPolicies;
+    }
+
+    /**
+     * Source and discriminator first, then discriminator only, source only and the table default.
+     */
+    private int getPrecedence() {
+        if (discriminator != null) {
+            return dataSource == null ? 2 : 3;
+        }
+        return dataSource == null ? 0 : 1;
+    }
+
+    @Override
+    public String toString() {
+        return table + ":" + (dataSource == null ? WILDCARD : dataSource)
+                + ":" + (discriminator == null ? WILDCARD : discriminator) + "=" + days;
+    }
+}
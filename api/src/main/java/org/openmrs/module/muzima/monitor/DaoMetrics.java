@@ -0,0 +1,122 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing statistics of the dao methods, keyed by dao and method name. The slow threshold follows the global property
+ * through the global property listener, so the timed calls never read the global property themselves.
+ */
+public class DaoMetrics implements GlobalPropertyListener {
+
+    /**
+     * Global property for the duration in milliseconds over which a dao call is logged as slow.
+     */
+    public static final String SLOW_THRESHOLD = "muzima.dao.slowThreshold";
+
+    private static final long DEFAULT_SLOW_THRESHOLD = 500;
+
+    private static final DaoMetrics instance = new DaoMetrics();
+
+    private final ConcurrentMap<String, TimingStatistics> statistics =
+            new ConcurrentHashMap<String, TimingStatistics>();
+
+    private volatile long slowThreshold = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD);
+
+    private DaoMetrics() {
+    }
+
+    /**
+     * Get the dao metrics of the module.
+     *
+     * @return the dao metrics.
+     */
+    public static DaoMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Record the duration of a dao call.
+     *
+     * @param operation the dao and method name.
+     * @param nanos     the duration in nanoseconds.
+     * @return true when the call was over the slow threshold.
+     */
+    public boolean record(final String operation, final long nanos) {
+        TimingStatistics timingStatistics = statistics.get(operation);
+        if (timingStatistics == null) {
+            statistics.putIfAbsent(operation, new TimingStatistics());
+            timingStatistics = statistics.get(operation);
+        }
+        boolean slow = nanos >= slowThreshold;
+        timingStatistics.record(nanos, slow);
+        return slow;
+    }
+
+    /**
+     * Get the slow threshold.
+     *
+     * @return the slow threshold in milliseconds.
+     */
+    public long getSlowThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThreshold);
+    }
+
+    /**
+     * Set the slow threshold, a blank or invalid value restores the default threshold.
+     *
+     * @param threshold the slow threshold in milliseconds.
+     */
+    public void setSlowThreshold(final String threshold) {
+        slowThreshold = TimeUnit.MILLISECONDS.toNanos(NumberUtils.toLong(threshold, DEFAULT_SLOW_THRESHOLD));
+    }
+
+    /**
+     * Get the statistics of every timed dao method.
+     *
+     * @return the statistics keyed by dao and method name.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, TimingStatistics> entry : new TreeMap<String, TimingStatistics>(statistics).entrySet()) {
+            map.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return map;
+    }
+
+    @Override
+    public boolean supportsPropertyName(final String propertyName) {
+        return SLOW_THRESHOLD.equals(propertyName);
+    }
+
+    @Override
+    public void globalPropertyChanged(final GlobalProperty newValue) {
+        setSlowThreshold(newValue.getPropertyValue());
+    }
+
+    @Override
+    public void globalPropertyDeleted(final String propertyName) {
+        setSlowThreshold(null);
+    }
+}
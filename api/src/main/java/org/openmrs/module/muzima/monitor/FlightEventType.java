@@ -0,0 +1,258 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Custom Java Flight Recorder event type of the module. The module is built for older JVMs, so the event type is
+ * defined at runtime through <code>jdk.jfr.EventFactory</code>. On a JVM without the flight recorder the event type
+ * is disabled and every call is a no-op. The enabled state of the event types is cached in a volatile flag, refreshed
+ * by a flight recorder listener when a recording starts or stops and every second for the settings changed on a running
+ * recording. While no recording enables the event, {@link #begin()} returns null after that single flag check, so the
+ * callers only pay for the event when it is recorded.
+ * <p/>
+ * Usage:
+ * <pre>
+ * Object event = FlightEvents.QUEUE_DATA_PROCESSED.begin();
+ * ... work ...
+ * FlightEvents.QUEUE_DATA_PROCESSED.commit(event, value1, value2);
+ * </pre>
+ */
+public class FlightEventType {
+
+    private static final Log log = LogFactory.getLog(FlightEventType.class);
+
+    private static final String CATEGORY = "muzima";
+
+    private static final long REFRESH_INTERVAL = 1000;
+
+    private static final List<FlightEventType> DEFINED_TYPES = new CopyOnWriteArrayList<FlightEventType>();
+
+    private static Timer refreshTimer;
+
+    private final String name;
+
+    private volatile boolean enabled;
+
+    private Object factory;
+
+    private Object eventType;
+
+    private Method newEvent;
+
+    private Method isEnabled;
+
+    private Method beginEvent;
+
+    private Method endEvent;
+
+    private Method shouldCommit;
+
+    private Method commitEvent;
+
+    private Method setField;
+
+    /**
+     * Define an event type, the fields are given as pairs of field name and field class (String, Integer or Long).
+     * Fields with a name ending in <code>Time</code> are recorded as nanosecond time spans.
+     *
+     * @param name   the event name.
+     * @param label  the event label shown in the recording.
+     * @param fields the field name and class pairs.
+     */
+    public FlightEventType(final String name, final String label, final Object... fields) {
+        this.name = name;
+        try {
+            define(label, fields);
+            register(this);
+        } catch (ClassNotFoundException e) {
+            // no flight recorder in this jvm.
+            factory = null;
+        } catch (Exception e) {
+            factory = null;
+            log.warn("Unable to define the flight recorder event " + name + ".", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void define(final String label, final Object[] fields) throws Exception {
+        ClassLoader loader = ClassLoader.getSystemClassLoader();
+        Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", false, loader);
+        Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+        Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", false, loader);
+        Class<? extends Annotation> nameClass =
+                (Class<? extends Annotation>) Class.forName("jdk.jfr.Name", false, loader);
+        Class<? extends Annotation> labelClass =
+                (Class<? extends Annotation>) Class.forName("jdk.jfr.Label", false, loader);
+        Class<? extends Annotation> categoryClass =
+                (Class<? extends Annotation>) Class.forName("jdk.jfr.Category", false, loader);
+        Class<? extends Annotation> timespanClass =
+                (Class<? extends Annotation>) Class.forName("jdk.jfr.Timespan", false, loader);
+
+        Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+        List<Object> annotations = new ArrayList<Object>();
+        annotations.add(annotationElement.newInstance(nameClass, name));
+        annotations.add(annotationElement.newInstance(labelClass, label));
+        annotations.add(annotationElement.newInstance(categoryClass, new String[]{CATEGORY}));
+
+        Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+        List<Object> descriptors = new ArrayList<Object>();
+        for (int i = 0; i < fields.length; i += 2) {
+            String fieldName = (String) fields[i];
+            Class<?> fieldClass = (Class<?>) fields[i + 1];
+            List<Object> fieldAnnotations = new ArrayList<Object>();
+            if (fieldName.endsWith("Time")) {
+                fieldAnnotations.add(annotationElement.newInstance(timespanClass, "NANOSECONDS"));
+            }
+            Class<?> type = fieldClass == Integer.class ? int.class
+                    : fieldClass == Long.class ? long.class : fieldClass;
+            descriptors.add(valueDescriptor.newInstance(type, fieldName, fieldAnnotations));
+        }
+
+        factory = eventFactoryClass.getMethod("create", List.class, List.class)
+                .invoke(null, Collections.unmodifiableList(annotations), Collections.unmodifiableList(descriptors));
+        eventType = eventFactoryClass.getMethod("getEventType").invoke(factory);
+        newEvent = eventFactoryClass.getMethod("newEvent");
+        isEnabled = eventType.getClass().getMethod("isEnabled");
+        Class<?> eventClass = Class.forName("jdk.jfr.Event", false, loader);
+        beginEvent = eventClass.getMethod("begin");
+        endEvent = eventClass.getMethod("end");
+        shouldCommit = eventClass.getMethod("shouldCommit");
+        commitEvent = eventClass.getMethod("commit");
+        setField = eventClass.getMethod("set", int.class, Object.class);
+    }
+
+    /**
+     * Start refreshing the enabled state of the event type. The first defined type adds the flight recorder listener
+     * and starts the refresh timer shared by all the types.
+     *
+     * @param type the defined event type.
+     */
+    private static synchronized void register(final FlightEventType type) throws Exception {
+        if (refreshTimer == null) {
+            ClassLoader loader = ClassLoader.getSystemClassLoader();
+            Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener", false, loader);
+            Object listener = Proxy.newProxyInstance(loader, new Class<?>[]{listenerClass}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    if (method.getDeclaringClass() == Object.class) {
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        return "hashCode".equals(method.getName()) ? System.identityHashCode(proxy) : "muzima";
+                    }
+                    refreshAll();
+                    return null;
+                }
+            });
+            Class.forName("jdk.jfr.FlightRecorder", false, loader)
+                    .getMethod("addListener", listenerClass).invoke(null, listener);
+            refreshTimer = new Timer("muzima-flight-events", true);
+            refreshTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    refreshAll();
+                }
+            }, REFRESH_INTERVAL, REFRESH_INTERVAL);
+        }
+        DEFINED_TYPES.add(type);
+        type.refresh();
+    }
+
+    private static void refreshAll() {
+        for (FlightEventType type : DEFINED_TYPES) {
+            type.refresh();
+        }
+    }
+
+    /**
+     * Read the enabled state of the event type from the flight recorder into the cached flag.
+     */
+    void refresh() {
+        boolean recorded = false;
+        if (factory != null) {
+            try {
+                recorded = (Boolean) isEnabled.invoke(eventType);
+            } catch (Exception e) {
+                recorded = false;
+            }
+        }
+        enabled = recorded;
+    }
+
+    /**
+     * Check whether a recording currently records this event. The state is the cached flag, so a settings change
+     * on a running recording shows up within a second.
+     *
+     * @return true when the event is recorded.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start timing an event.
+     *
+     * @return the started event, or null when the event is not recorded.
+     */
+    public Object begin() {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            Object event = newEvent.invoke(factory);
+            beginEvent.invoke(event);
+            return event;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stop timing the event and commit it with the field values, in the order of the field definitions.
+     *
+     * @param event  the event returned by {@link #begin()}, null is ignored.
+     * @param values the field values.
+     */
+    public void commit(final Object event, final Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            endEvent.invoke(event);
+            if ((Boolean) shouldCommit.invoke(event)) {
+                for (int i = 0; i < values.length; i++) {
+                    setField.invoke(event, i, values[i]);
+                }
+                commitEvent.invoke(event);
+            }
+        } catch (Exception e) {
+            log.debug("Unable to commit the flight recorder event " + name + ".", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+/**
+ * The Java Flight Recorder events of the module, shown under the muzima category of a recording.
+ */
+public class FlightEvents {
+
+    /**
+     * Processing of a queue data by its handler. The outcome is archived, failed or skipped when the queue data was
+     * moved by another transaction.
+     */
+    public static final FlightEventType QUEUE_DATA_PROCESSED = new FlightEventType(
+            "muzima.QueueDataProcessed", "Queue Data Processed",
+            "discriminator", String.class,
+            "dataSource", String.class,
+            "handler", String.class,
+            "outcome", String.class);
+
+    /**
+     * Ingestion of a queue data through the rest resource, split in the payload parsing and the persisting.
+     */
+    public static final FlightEventType QUEUE_DATA_INGESTED = new FlightEventType(
+            "muzima.QueueDataIngested", "Queue Data Ingested",
+            "discriminator", String.class,
+            "dataSource", String.class,
+            "payloadSize", Integer.class,
+            "parseTime", Long.class,
+            "persistTime", Long.class);
+
+    /**
+     * Page or count query of the data daos.
+     */
+    public static final FlightEventType DATA_PAGE_QUERY = new FlightEventType(
+            "muzima.DataPageQuery", "Data Page Query",
+            "entity", String.class,
+            "query", String.class,
+            "searchLength", Integer.class,
+            "rows", Integer.class);
+
+    private FlightEvents() {
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Log-linear latency histogram in milliseconds. Values below 16 have their own bucket, larger values are bucketed by
+ * their power of two and the next four bits, so every recorded value is within 6.25% of its bucket whatever the
+ * magnitude, from a millisecond to years, with a fixed and small number of buckets.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count;
+
+    private long max;
+
+    /**
+     * Record a latency.
+     *
+     * @param millis the latency in milliseconds, negative values are recorded as zero.
+     * @should record the value in a bucket within the relative precision.
+     */
+    public void record(final long millis) {
+        long value = Math.max(0, millis);
+        counts[getIndex(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the recorded values of another histogram to this histogram.
+     *
+     * @param other the other histogram.
+     */
+    public void add(final LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Remove all recorded values.
+     */
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get the value at the percentile, as the middle of the bucket holding it and never over the max value.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the value at the percentile in milliseconds, or 0 when nothing was recorded.
+     * @should return zero for an empty histogram.
+     * @should return the percentile within the relative precision.
+     */
+    public long getPercentile(final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, getLowerBound(i) + getWidth(i) / 2);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Write the histogram with only the non empty buckets.
+     *
+     * @param output the output.
+     * @throws IOException when the histogram can't be written.
+     * @should read back the written histogram.
+     */
+    public void write(final DataOutput output) throws IOException {
+        int buckets = 0;
+        for (long bucketCount : counts) {
+            if (bucketCount > 0) {
+                buckets++;
+            }
+        }
+        output.writeLong(max);
+        output.writeShort(buckets);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                output.writeShort(i);
+                output.writeLong(counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Replace the recorded values with the histogram written by {@link #write(DataOutput)}.
+     *
+     * @param input the input.
+     * @throws IOException when the histogram can't be read.
+     */
+    public void read(final DataInput input) throws IOException {
+        clear();
+        max = input.readLong();
+        int buckets = input.readShort();
+        for (int i = 0; i < buckets; i++) {
+            int index = input.readShort();
+            long bucketCount = input.readLong();
+            if (index < 0 || index >= BUCKETS) {
+                throw new IOException("Invalid latency histogram bucket: " + index);
+            }
+            counts[index] = bucketCount;
+            count += bucketCount;
+        }
+    }
+
+    static int getIndex(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getLowerBound(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static long getWidth(final int index) {
+        if (index < SUB_BUCKETS) {
+            return 1;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return 1L << (exponent - SUB_BUCKET_BITS);
+    }
+}
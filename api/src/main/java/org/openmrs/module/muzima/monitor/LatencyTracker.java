@@ -0,0 +1,240 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Time in queue of the processed queue data per data source and discriminator, measured from the creation of the
+ * queue data to its archive or error, against the processing SLO. The histograms are saved in a small compressed file
+ * of the application data directory, so the percentiles and breach counts survive restarts.
+ */
+public class LatencyTracker implements GlobalPropertyListener {
+
+    /**
+     * Global property for the processing SLO in milliseconds.
+     */
+    public static final String LATENCY_SLO = "muzima.processor.latencySlo";
+
+    private static final long DEFAULT_SLO = 5 * 60 * 1000L;
+
+    private static final int FILE_VERSION = 1;
+
+    private static final String KEY_SEPARATOR = "\u0000";
+
+    private static final LatencyTracker instance = new LatencyTracker();
+
+    private final Log log = LogFactory.getLog(LatencyTracker.class);
+
+    private final ConcurrentMap<String, RollingLatency> latencies = new ConcurrentHashMap<String, RollingLatency>();
+
+    private final AtomicBoolean changed = new AtomicBoolean(false);
+
+    private volatile long slo = DEFAULT_SLO;
+
+    private LatencyTracker() {
+    }
+
+    /**
+     * Get the latency tracker of the module.
+     *
+     * @return the latency tracker.
+     */
+    public static LatencyTracker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Record the time in queue of a processed queue data.
+     *
+     * @param dataSource    the data source name.
+     * @param discriminator the discriminator.
+     * @param millis        the time in queue in milliseconds.
+     */
+    public void record(final String dataSource, final String discriminator, final long millis) {
+        long now = System.currentTimeMillis();
+        String key = dataSource + KEY_SEPARATOR + discriminator;
+        RollingLatency latency = latencies.get(key);
+        if (latency == null) {
+            latencies.putIfAbsent(key, new RollingLatency(now));
+            latency = latencies.get(key);
+        }
+        latency.record(millis, slo, now);
+        changed.set(true);
+    }
+
+    public long getSlo() {
+        return slo;
+    }
+
+    /**
+     * Set the SLO, a blank or invalid value restores the default SLO.
+     *
+     * @param value the SLO in milliseconds.
+     */
+    public void setSlo(final String value) {
+        slo = NumberUtils.toLong(value, DEFAULT_SLO);
+    }
+
+    /**
+     * Get the rolling percentiles and breaches per data source and discriminator.
+     *
+     * @return the latency statistics.
+     */
+    public List<Map<String, Object>> getStatistics() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> statistics = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, RollingLatency> entry : new TreeMap<String, RollingLatency>(latencies).entrySet()) {
+            String[] key = entry.getKey().split(KEY_SEPARATOR, 2);
+            RollingLatency latency = entry.getValue();
+            LatencyHistogram window = latency.getWindow(now);
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("source", key[0]);
+            map.put("discriminator", key[1]);
+            map.put("count", window.getCount());
+            map.put("p50Millis", window.getPercentile(50));
+            map.put("p95Millis", window.getPercentile(95));
+            map.put("p99Millis", window.getPercentile(99));
+            map.put("maxMillis", window.getMax());
+            map.put("breaches", latency.getWindowBreaches(now));
+            map.put("totalCount", latency.getTotalCount());
+            map.put("totalBreaches", latency.getTotalBreaches());
+            statistics.add(map);
+        }
+        return statistics;
+    }
+
+    /**
+     * Save the histograms when something was recorded since the last save. The processor runs and the module stop
+     * may save at the same time, and they share the temporary file, so the saves are serialized.
+     */
+    public synchronized void save() {
+        if (!changed.getAndSet(false)) {
+            return;
+        }
+        File file = getFile();
+        File temporary = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(
+                    new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temporary))));
+            output.writeInt(FILE_VERSION);
+            Map<String, RollingLatency> snapshot = new TreeMap<String, RollingLatency>(latencies);
+            output.writeInt(snapshot.size());
+            for (Map.Entry<String, RollingLatency> entry : snapshot.entrySet()) {
+                output.writeUTF(entry.getKey());
+                entry.getValue().write(output);
+            }
+            output.close();
+            output = null;
+            // replace the previous file only once the new one is complete.
+            if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+                throw new IOException("Unable to replace " + file);
+            }
+        } catch (IOException e) {
+            changed.set(true);
+            log.error("Unable to save the queue latency histograms.", e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    log.debug("Unable to close the queue latency file.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the histograms saved by the previous run, replacing the current ones.
+     */
+    public synchronized void load() {
+        File file = getFile();
+        if (!file.exists()) {
+            return;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+            if (input.readInt() != FILE_VERSION) {
+                log.warn("Ignoring the queue latency file with an unknown version: " + file);
+                return;
+            }
+            Map<String, RollingLatency> loaded = new LinkedHashMap<String, RollingLatency>();
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = input.readUTF();
+                RollingLatency latency = new RollingLatency(System.currentTimeMillis());
+                latency.read(input);
+                loaded.put(key, latency);
+            }
+            latencies.clear();
+            latencies.putAll(loaded);
+        } catch (IOException e) {
+            log.error("Unable to load the queue latency histograms, starting from empty histograms.", e);
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    log.debug("Unable to close the queue latency file.", e);
+                }
+            }
+        }
+    }
+
+    private File getFile() {
+        File directory = OpenmrsUtil.getDirectoryInApplicationDataDirectory("muzima");
+        return new File(directory, "latency.dat");
+    }
+
+    @Override
+    public boolean supportsPropertyName(final String propertyName) {
+        return LATENCY_SLO.equals(propertyName);
+    }
+
+    @Override
+    public void globalPropertyChanged(final GlobalProperty newValue) {
+        setSlo(newValue.getPropertyValue());
+    }
+
+    @Override
+    public void globalPropertyDeleted(final String propertyName) {
+        setSlo(null);
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Register the management beans of the module in the platform mbean server, and remove them when the module stops so
+ * a restarted module can register them again.
+ */
+public class MonitorRegistry {
+
+    public static final String DOMAIN = "org.openmrs.module.muzima";
+
+    private static final Log log = LogFactory.getLog(MonitorRegistry.class);
+
+    private static final List<ObjectName> registered = new ArrayList<ObjectName>();
+
+    private MonitorRegistry() {
+    }
+
+    /**
+     * Register a management bean, replacing a bean left over with the same name.
+     *
+     * @param type the type of the bean, used in the object name.
+     * @param bean the management bean.
+     */
+    public static synchronized void register(final String type, final Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            registered.add(name);
+        } catch (Exception e) {
+            // monitoring is not worth failing the module start.
+            log.error("Unable to register the " + type + " management bean.", e);
+        }
+    }
+
+    /**
+     * Unregister all management beans registered by the module.
+     */
+    public static synchronized void unregisterAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (Exception e) {
+                log.warn("Unable to unregister the " + name + " management bean.", e);
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the queue health, computed with grouped aggregate queries by a background thread and served from memory,
+ * so dashboards polling the health endpoint don't put any load on the database.
+ */
+public class QueueHealthMonitor {
+
+    /**
+     * Global property for the interval in seconds between two refreshes of the snapshot.
+     */
+    public static final String REFRESH_INTERVAL = "muzima.health.refreshInterval";
+
+    private static final long ARCHIVE_RATE_WINDOW = 60 * 60 * 1000L;
+
+    private static final QueueHealthMonitor instance = new QueueHealthMonitor();
+
+    private final Log log = LogFactory.getLog(QueueHealthMonitor.class);
+
+    private volatile Map<String, Object> snapshot;
+
+    private ScheduledExecutorService executor;
+
+    private QueueHealthMonitor() {
+    }
+
+    /**
+     * Get the queue health monitor of the module.
+     *
+     * @return the queue health monitor.
+     */
+    public static QueueHealthMonitor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start refreshing the snapshot in the background, with the interval of the global property.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        int interval = Math.max(1, NumberUtils.toInt(
+                Context.getAdministrationService().getGlobalProperty(REFRESH_INTERVAL), 30));
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable, "muzima-health-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                Context.openSession();
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    // keep the previous snapshot and try again on the next interval.
+                    log.error("Unable to refresh the queue health snapshot.", e);
+                } finally {
+                    Context.closeSession();
+                }
+            }
+        }, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop refreshing the snapshot.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Get the latest snapshot, computing it in the calling thread when the background refresh didn't run yet.
+     *
+     * @return the queue health snapshot.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> current = snapshot;
+        if (current == null) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    /**
+     * Compute a new snapshot and make it the current one.
+     *
+     * @return the new snapshot.
+     */
+    public Map<String, Object> refresh() {
+        DataService dataService = Context.getService(DataService.class);
+        Date now = new Date();
+
+        Map<String, Map<String, Object>> discriminators = new TreeMap<String, Map<String, Object>>();
+        Map<String, Map<String, Object>> sources = new TreeMap<String, Map<String, Object>>();
+        long queueDepth = 0;
+        Date oldestQueued = null;
+        for (Object[] row : dataService.getQueueDataStatistics()) {
+            long count = ((Number) row[2]).longValue();
+            queueDepth += count;
+            add(discriminators, "discriminator", (String) row[0], "queued", count);
+            add(sources, "source", (String) row[1], "queued", count);
+            Date oldest = (Date) row[3];
+            if (oldest != null && (oldestQueued == null || oldest.before(oldestQueued))) {
+                oldestQueued = oldest;
+            }
+        }
+        long errorCount = 0;
+        for (Object[] row : dataService.getErrorDataStatistics()) {
+            long count = ((Number) row[2]).longValue();
+            errorCount += count;
+            add(discriminators, "discriminator", (String) row[0], "errors", count);
+            add(sources, "source", (String) row[1], "errors", count);
+        }
+        Number archived = dataService.countArchiveData(null, new Date(now.getTime() - ARCHIVE_RATE_WINDOW), null);
+
+        Map<String, Object> health = new LinkedHashMap<String, Object>();
+        health.put("generated", Context.getDateTimeFormat().format(now));
+        health.put("queueDepth", queueDepth);
+        health.put("errorCount", errorCount);
+        health.put("oldestQueuedAge", oldestQueued == null ? null : (now.getTime() - oldestQueued.getTime()) / 1000);
+        health.put("archivedPerHour", archived == null ? 0 : archived.longValue());
+        health.put("discriminators", new ArrayList<Map<String, Object>>(discriminators.values()));
+        health.put("sources", new ArrayList<Map<String, Object>>(sources.values()));
+        Map<String, Object> newSnapshot = Collections.unmodifiableMap(health);
+        snapshot = newSnapshot;
+        return newSnapshot;
+    }
+
+    private void add(final Map<String, Map<String, Object>> breakdown, final String keyName, final String key,
+                     final String counter, final long count) {
+        String breakdownKey = key == null ? "" : key;
+        Map<String, Object> entry = breakdown.get(breakdownKey);
+        if (entry == null) {
+            entry = new LinkedHashMap<String, Object>();
+            entry.put(keyName, key);
+            entry.put("queued", 0L);
+            entry.put("errors", 0L);
+            breakdown.put(breakdownKey, entry);
+        }
+        entry.put(counter, (Long) entry.get(counter) + count);
+    }
+}
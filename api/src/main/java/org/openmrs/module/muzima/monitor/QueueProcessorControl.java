@@ -0,0 +1,121 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.task.QueueDataProcessor;
+
+/**
+ * Expose the queue data processor through JMX.
+ */
+public class QueueProcessorControl implements QueueProcessorControlMBean {
+
+    private final QueueDataProcessor processor;
+
+    public QueueProcessorControl(final QueueDataProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public long getQueueDepth() {
+        // jmx calls come in on their own threads, without an openmrs session.
+        Context.openSession();
+        try {
+            return Context.getService(DataService.class).countQueueData(null).longValue();
+        } finally {
+            Context.closeSession();
+        }
+    }
+
+    @Override
+    public String getState() {
+        return processor.getState();
+    }
+
+    @Override
+    public int getRunSize() {
+        return processor.getRunSize();
+    }
+
+    @Override
+    public int getRunProcessed() {
+        return processor.getRunProcessed();
+    }
+
+    @Override
+    public int getRunErrors() {
+        return processor.getRunErrors();
+    }
+
+    @Override
+    public long getTotalProcessed() {
+        return processor.getTotalProcessed();
+    }
+
+    @Override
+    public long getTotalErrors() {
+        return processor.getTotalErrors();
+    }
+
+    @Override
+    public long getTotalTimeouts() {
+        return processor.getTotalTimeouts();
+    }
+
+    @Override
+    public long getTotalDeferred() {
+        return processor.getTotalDeferred();
+    }
+
+    @Override
+    public long getTotalHeld() {
+        return processor.getTotalHeld();
+    }
+
+    @Override
+    public long getLastRunDuration() {
+        return processor.getLastRunDuration();
+    }
+
+    @Override
+    public int getWorkerPoolSize() {
+        return processor.getWorkerPoolSize();
+    }
+
+    @Override
+    public void setWorkerPoolSize(final int size) {
+        processor.setWorkerPoolSize(size);
+    }
+
+    @Override
+    public void pause() {
+        processor.pause();
+    }
+
+    @Override
+    public void resume() {
+        processor.resume();
+    }
+
+    @Override
+    public void runNow() {
+        processor.processQueueDataNow();
+    }
+
+    @Override
+    public boolean resetBreaker(final String discriminator) {
+        return processor.resetBreaker(discriminator);
+    }
+}
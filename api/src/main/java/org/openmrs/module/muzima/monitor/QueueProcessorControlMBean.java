@@ -0,0 +1,136 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+/**
+ * Management interface of the queue data processor, registered as
+ * <code>org.openmrs.module.muzima:type=QueueProcessor</code>.
+ */
+public interface QueueProcessorControlMBean {
+
+    /**
+     * Get the number of queue data waiting in the queue.
+     *
+     * @return the queue depth.
+     */
+    long getQueueDepth();
+
+    /**
+     * Get the run state of the processor.
+     *
+     * @return the run state, one of IDLE, RUNNING or PAUSED.
+     */
+    String getState();
+
+    /**
+     * Get the number of queue data read by the current or last run.
+     *
+     * @return the size of the run.
+     */
+    int getRunSize();
+
+    /**
+     * Get the number of queue data processed by the current or last run, including the failed ones.
+     *
+     * @return the processed queue data of the run.
+     */
+    int getRunProcessed();
+
+    /**
+     * Get the number of queue data which failed in the current or last run.
+     *
+     * @return the failed queue data of the run.
+     */
+    int getRunErrors();
+
+    /**
+     * Get the number of queue data processed since the module started, including the failed ones.
+     *
+     * @return the processed queue data.
+     */
+    long getTotalProcessed();
+
+    /**
+     * Get the number of queue data which failed since the module started.
+     *
+     * @return the failed queue data.
+     */
+    long getTotalErrors();
+
+    /**
+     * Get the number of queue data moved to the error data because their handler timed out since the module started.
+     *
+     * @return the timed out queue data.
+     */
+    long getTotalTimeouts();
+
+    /**
+     * Get the number of times a queue data was left for the next run because the handler threads of its
+     * discriminator were all busy.
+     *
+     * @return the deferred queue data.
+     */
+    long getTotalDeferred();
+
+    /**
+     * Get the number of times a queue data was left in the queue by the open circuit breaker of its discriminator.
+     *
+     * @return the held queue data.
+     */
+    long getTotalHeld();
+
+    /**
+     * Get the duration of the last run, or of the current run so far.
+     *
+     * @return the run duration in milliseconds, or -1 when the processor never ran.
+     */
+    long getLastRunDuration();
+
+    /**
+     * Get the number of worker threads processing the queue data.
+     *
+     * @return the size of the worker pool.
+     */
+    int getWorkerPoolSize();
+
+    /**
+     * Resize the worker pool until the next restart.
+     *
+     * @param size the new size of the worker pool.
+     */
+    void setWorkerPoolSize(final int size);
+
+    /**
+     * Pause the processor after the queue data being processed.
+     */
+    void pause();
+
+    /**
+     * Resume the paused processor.
+     */
+    void resume();
+
+    /**
+     * Start a run right away.
+     */
+    void runNow();
+
+    /**
+     * Close the circuit breaker of the discriminator.
+     *
+     * @param discriminator the discriminator.
+     * @return true when the breaker was open or half open.
+     */
+    boolean resetBreaker(final String discriminator);
+}
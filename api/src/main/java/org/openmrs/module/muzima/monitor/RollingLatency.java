@@ -0,0 +1,150 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Latency histogram over a rolling window of hourly slices, with the number of SLO breaches. The oldest slice is
+ * cleared when a new hour starts, so the percentiles cover the last day.
+ */
+public class RollingLatency {
+
+    public static final int SLICES = 24;
+
+    public static final long SLICE_MILLIS = 60 * 60 * 1000L;
+
+    private final LatencyHistogram[] slices = new LatencyHistogram[SLICES];
+
+    private final long[] sliceBreaches = new long[SLICES];
+
+    private long currentSlice;
+
+    private long totalCount;
+
+    private long totalBreaches;
+
+    public RollingLatency(final long now) {
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new LatencyHistogram();
+        }
+        currentSlice = now / SLICE_MILLIS;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param millis the latency in milliseconds.
+     * @param slo    the SLO in milliseconds, a latency over the SLO is a breach.
+     * @param now    the current time in milliseconds.
+     * @should count the latency over the slo as breach.
+     * @should drop the slices older than the window.
+     */
+    public synchronized void record(final long millis, final long slo, final long now) {
+        rotate(now);
+        int index = (int) (currentSlice % SLICES);
+        slices[index].record(millis);
+        totalCount++;
+        if (millis > slo) {
+            sliceBreaches[index]++;
+            totalBreaches++;
+        }
+    }
+
+    /**
+     * Get the histogram of the latencies recorded within the window.
+     *
+     * @param now the current time in milliseconds.
+     * @return a copy of the histogram of the window.
+     */
+    public synchronized LatencyHistogram getWindow(final long now) {
+        rotate(now);
+        LatencyHistogram window = new LatencyHistogram();
+        for (LatencyHistogram slice : slices) {
+            window.add(slice);
+        }
+        return window;
+    }
+
+    /**
+     * Get the number of SLO breaches within the window.
+     *
+     * @param now the current time in milliseconds.
+     * @return the number of breaches.
+     */
+    public synchronized long getWindowBreaches(final long now) {
+        rotate(now);
+        long breaches = 0;
+        for (long sliceBreach : sliceBreaches) {
+            breaches += sliceBreach;
+        }
+        return breaches;
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public synchronized long getTotalBreaches() {
+        return totalBreaches;
+    }
+
+    private void rotate(final long now) {
+        long slice = now / SLICE_MILLIS;
+        if (slice <= currentSlice) {
+            return;
+        }
+        long first = Math.max(currentSlice + 1, slice - SLICES + 1);
+        for (long s = first; s <= slice; s++) {
+            int index = (int) (s % SLICES);
+            slices[index].clear();
+            sliceBreaches[index] = 0;
+        }
+        currentSlice = slice;
+    }
+
+    /**
+     * Write the slices and the totals.
+     *
+     * @param output the output.
+     * @throws IOException when the latency can't be written.
+     */
+    public synchronized void write(final DataOutput output) throws IOException {
+        output.writeLong(currentSlice);
+        output.writeLong(totalCount);
+        output.writeLong(totalBreaches);
+        for (int i = 0; i < SLICES; i++) {
+            output.writeLong(sliceBreaches[i]);
+            slices[i].write(output);
+        }
+    }
+
+    /**
+     * Replace the slices and the totals with the ones written by {@link #write(DataOutput)}.
+     *
+     * @param input the input.
+     * @throws IOException when the latency can't be read.
+     */
+    public synchronized void read(final DataInput input) throws IOException {
+        currentSlice = input.readLong();
+        totalCount = input.readLong();
+        totalBreaches = input.readLong();
+        for (int i = 0; i < SLICES; i++) {
+            sliceBreaches[i] = input.readLong();
+            slices[i].read(input);
+        }
+    }
+}
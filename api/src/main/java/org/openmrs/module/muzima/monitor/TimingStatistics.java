@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling timing statistics of an operation: totals since the module started, and percentiles over the most recent
+ * calls.
+ */
+public class TimingStatistics {
+
+    private static final int WINDOW_SIZE = 1024;
+
+    private final long[] window = new long[WINDOW_SIZE];
+
+    private int windowCount;
+
+    private int next;
+
+    private long count;
+
+    private long total;
+
+    private long max;
+
+    private long slow;
+
+    /**
+     * Record the duration of a call.
+     *
+     * @param nanos      the duration in nanoseconds.
+     * @param slowCall   flag whether the call was over the slow threshold.
+     */
+    public synchronized void record(final long nanos, final boolean slowCall) {
+        window[next] = nanos;
+        next = (next + 1) % WINDOW_SIZE;
+        windowCount = Math.min(windowCount + 1, WINDOW_SIZE);
+        count++;
+        total += nanos;
+        max = Math.max(max, nanos);
+        if (slowCall) {
+            slow++;
+        }
+    }
+
+    /**
+     * Get the statistics in milliseconds, the percentiles cover the most recent calls.
+     *
+     * @return the statistics.
+     */
+    public synchronized Map<String, Object> toMap() {
+        long[] sorted = Arrays.copyOf(window, windowCount);
+        Arrays.sort(sorted);
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("count", count);
+        map.put("slow", slow);
+        map.put("totalMillis", toMillis(total));
+        map.put("meanMillis", count == 0 ? 0 : toMillis(total / count));
+        map.put("maxMillis", toMillis(max));
+        map.put("p50Millis", toMillis(percentile(sorted, 50)));
+        map.put("p95Millis", toMillis(percentile(sorted, 95)));
+        map.put("p99Millis", toMillis(percentile(sorted, 99)));
+        return map;
+    }
+
+    private long percentile(final long[] sorted, final int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private double toMillis(final long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.notification;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In process registry of the clients waiting for new notification. Each receiver has a version which is bumped every
+ * time a notification for the receiver is committed, a waiting client is woken up when the version of its receiver
+ * changes. The registry only keeps a small signal object per receiver, the waiting itself is bounded by the maximum
+ * number of waiters because each waiting client holds a request thread.
+ */
+public class NotificationRegistry {
+
+    private final ConcurrentMap<Integer, Signal> signals = new ConcurrentHashMap<Integer, Signal>();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * Get the current version of the receiver. The version must be read before querying the notification, so a
+     * notification committed after the query is never missed.
+     *
+     * @param receiverId the receiver person id.
+     * @return the current version of the receiver.
+     */
+    public long getVersion(final Integer receiverId) {
+        Signal signal = signals.get(receiverId);
+        return signal == null ? 0 : signal.getVersion();
+    }
+
+    /**
+     * Bump the version of the receiver and wake up the clients waiting for the receiver.
+     *
+     * @param receiverId the receiver person id.
+     */
+    public void publish(final Integer receiverId) {
+        getSignal(receiverId).publish();
+    }
+
+    /**
+     * Wait until the version of the receiver is different from the given version.
+     *
+     * @param receiverId the receiver person id.
+     * @param version    the version read before querying the notification.
+     * @param timeout    the maximum time to wait in milliseconds.
+     * @param maxWaiters the maximum number of concurrent waiting clients.
+     * @return true when the version changed, false on timeout or when too many clients are already waiting.
+     * @throws InterruptedException when the waiting thread is interrupted.
+     */
+    public boolean await(final Integer receiverId, final long version, final long timeout, final int maxWaiters)
+            throws InterruptedException {
+        if (waiters.incrementAndGet() > maxWaiters) {
+            waiters.decrementAndGet();
+            return false;
+        }
+        try {
+            return getSignal(receiverId).await(version, timeout);
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of clients currently waiting.
+     *
+     * @return the number of waiting clients.
+     */
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    private Signal getSignal(final Integer receiverId) {
+        Signal signal = signals.get(receiverId);
+        if (signal == null) {
+            Signal newSignal = new Signal();
+            signal = signals.putIfAbsent(receiverId, newSignal);
+            if (signal == null) {
+                signal = newSignal;
+            }
+        }
+        return signal;
+    }
+
+    private static class Signal {
+
+        private long version;
+
+        private synchronized long getVersion() {
+            return version;
+        }
+
+        private synchronized void publish() {
+            version++;
+            notifyAll();
+        }
+
+        private synchronized boolean await(final long expectedVersion, final long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (version == expectedVersion) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.notification;
+
+/**
+ * Cache holding data rendered from persons. The registered person caches are evicted by the person id cache advice
+ * when a person is saved, voided, unvoided, purged or merged through the person or patient service.
+ */
+public interface PersonCache {
+
+    /**
+     * Drop the cached entries rendered from the person.
+     *
+     * @param personUuid the person uuid.
+     */
+    void evictPerson(final String personUuid);
+}
@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.notification;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least recently used cache from the person uuid to the person id, used to resolve the receiver and sender of
+ * the notification queries without loading the person. Only non voided persons are cached, entries are evicted when
+ * the person is voided, purged or merged.
+ */
+public class PersonIdCache {
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final Map<String, Integer> personIds;
+
+    public PersonIdCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public PersonIdCache(final int maxSize) {
+        this.personIds = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the cached person id of the uuid.
+     *
+     * @param uuid the person uuid.
+     * @return the person id or null when the uuid is not cached.
+     */
+    public synchronized Integer get(final String uuid) {
+        return personIds.get(uuid);
+    }
+
+    /**
+     * Cache the person id of the uuid, the least recently used entry is dropped when the cache is full.
+     *
+     * @param uuid     the person uuid.
+     * @param personId the person id.
+     */
+    public synchronized void put(final String uuid, final Integer personId) {
+        personIds.put(uuid, personId);
+    }
+
+    /**
+     * Drop the cached person id of the uuid.
+     *
+     * @param uuid the person uuid.
+     */
+    public synchronized void evict(final String uuid) {
+        personIds.remove(uuid);
+    }
+
+    /**
+     * Get the number of cached person ids.
+     *
+     * @return the number of cached person ids.
+     */
+    public synchronized int size() {
+        return personIds.size();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.Calendar;
+
+/**
+ * Move the old archive data out of the database into the compressed cold archive segments.
+ */
+public class ArchiveTieringTask extends AbstractTask {
+
+    /**
+     * Global property for the number of days after which the archive data is moved to the cold archive.
+     */
+    public static final String ARCHIVE_TIER_AFTER_DAYS = "muzima.archive.tierAfterDays";
+
+    /**
+     * Global property for the maximum number of archive data in a single segment.
+     */
+    public static final String ARCHIVE_SEGMENT_SIZE = "muzima.archive.segmentSize";
+
+    private final Log log = LogFactory.getLog(ArchiveTieringTask.class);
+
+    /**
+     * @see org.openmrs.scheduler.Task#execute()
+     */
+    @Override
+    public void execute() {
+        Context.openSession();
+        try {
+            AdministrationService administrationService = Context.getAdministrationService();
+            int tierAfterDays = NumberUtils.toInt(administrationService.getGlobalProperty(ARCHIVE_TIER_AFTER_DAYS), 0);
+            int segmentSize = NumberUtils.toInt(administrationService.getGlobalProperty(ARCHIVE_SEGMENT_SIZE), 5000);
+            if (tierAfterDays <= 0 || segmentSize <= 0) {
+                return;
+            }
+            Calendar calendar = Calendar.getInstance();
+            calendar.add(Calendar.DATE, -tierAfterDays);
+
+            DataService dataService = Context.getService(DataService.class);
+            int moved = 0;
+            int written;
+            do {
+                written = dataService.tierArchiveData(calendar.getTime(), segmentSize);
+                moved = moved + written;
+            } while (written == segmentSize);
+            log.info("Archive tiering moved " + moved + " archive data to the cold archive.");
+        } finally {
+            Context.closeSession();
+        }
+    }
+}
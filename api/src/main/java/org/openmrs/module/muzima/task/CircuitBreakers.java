@@ -0,0 +1,255 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Circuit breakers of the queue data handlers, one per discriminator. After the threshold of consecutive failures the
+ * breaker of the discriminator opens and its queue data stays in the queue instead of being moved to the error data
+ * one by one. Once the cool down is over, a single queue data is let through as a probe: the breaker closes when the
+ * probe succeeds and opens again for another cool down when it fails. The breakers are kept in memory, so a restart
+ * closes them all.
+ */
+public class CircuitBreakers {
+
+    public static final String STATE_CLOSED = "CLOSED";
+
+    public static final String STATE_OPEN = "OPEN";
+
+    public static final String STATE_HALF_OPEN = "HALF_OPEN";
+
+    private final Log log = LogFactory.getLog(CircuitBreakers.class);
+
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+
+    private volatile int threshold;
+
+    private volatile long coolDown;
+
+    /**
+     * Create the circuit breakers.
+     *
+     * @param threshold the number of consecutive failures opening a breaker, 0 to never open the breakers.
+     * @param coolDown  the time in milliseconds an open breaker waits before letting a probe through.
+     */
+    public CircuitBreakers(final int threshold, final long coolDown) {
+        this.threshold = threshold;
+        this.coolDown = coolDown;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    public long getCoolDown() {
+        return coolDown;
+    }
+
+    public void setCoolDown(final long coolDown) {
+        this.coolDown = coolDown;
+    }
+
+    /**
+     * Check whether a queue data of the discriminator can be processed. An open breaker past its cool down lets one
+     * queue data through and becomes half open until the outcome of that queue data is recorded.
+     *
+     * @param discriminator the discriminator of the queue data.
+     * @param now           the current time in milliseconds.
+     * @return true when the queue data can be processed.
+     * @should allow the queue data while the breaker is closed.
+     * @should not allow the queue data while the breaker is open.
+     * @should allow a single probe after the cool down.
+     */
+    public boolean allow(final String discriminator, final long now) {
+        if (threshold <= 0) {
+            return true;
+        }
+        Breaker breaker = breakers.get(key(discriminator));
+        if (breaker == null) {
+            return true;
+        }
+        synchronized (breaker) {
+            if (STATE_CLOSED.equals(breaker.state)) {
+                return true;
+            }
+            if (STATE_OPEN.equals(breaker.state) && now >= breaker.openedAt + coolDown) {
+                log.info("Circuit breaker of " + discriminator + " is half open, probing with one queue data.");
+                breaker.state = STATE_HALF_OPEN;
+            }
+            if (STATE_HALF_OPEN.equals(breaker.state) && !breaker.probing) {
+                breaker.probing = true;
+                return true;
+            }
+            breaker.held++;
+            return false;
+        }
+    }
+
+    /**
+     * Record the queue data of the discriminator processed successfully, closing its breaker.
+     *
+     * @param discriminator the discriminator of the queue data.
+     */
+    public void recordSuccess(final String discriminator) {
+        Breaker breaker = breakers.get(key(discriminator));
+        if (breaker == null) {
+            return;
+        }
+        synchronized (breaker) {
+            if (!STATE_CLOSED.equals(breaker.state)) {
+                log.info("Circuit breaker of " + discriminator + " is closed again.");
+            }
+            breaker.state = STATE_CLOSED;
+            breaker.probing = false;
+            breaker.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Record the queue data of the discriminator failed, opening its breaker after the threshold of consecutive
+     * failures or when the queue data was the probe of a half open breaker.
+     *
+     * @param discriminator the discriminator of the queue data.
+     * @param now           the current time in milliseconds.
+     * @should open the breaker after the threshold of consecutive failures.
+     * @should open the half open breaker again when the probe fails.
+     */
+    public void recordFailure(final String discriminator, final long now) {
+        if (threshold <= 0) {
+            return;
+        }
+        Breaker breaker = getBreaker(discriminator);
+        synchronized (breaker) {
+            breaker.probing = false;
+            breaker.consecutiveFailures++;
+            if (STATE_HALF_OPEN.equals(breaker.state)
+                    || (STATE_CLOSED.equals(breaker.state) && breaker.consecutiveFailures >= threshold)) {
+                log.warn("Circuit breaker of " + discriminator + " is open after " + breaker.consecutiveFailures
+                        + " consecutive failures, its queue data is held for " + coolDown + " ms.");
+                breaker.state = STATE_OPEN;
+                breaker.openedAt = now;
+                breaker.trips++;
+            }
+        }
+    }
+
+    /**
+     * Record the queue data of the discriminator was not processed after all, for example because it was deleted
+     * meanwhile. A half open breaker lets the next queue data through as the probe.
+     *
+     * @param discriminator the discriminator of the queue data.
+     */
+    public void recordIgnored(final String discriminator) {
+        Breaker breaker = breakers.get(key(discriminator));
+        if (breaker == null) {
+            return;
+        }
+        synchronized (breaker) {
+            breaker.probing = false;
+        }
+    }
+
+    /**
+     * Close the breaker of the discriminator, for example once the handler is fixed.
+     *
+     * @param discriminator the discriminator.
+     * @return true when the breaker was not closed.
+     */
+    public boolean reset(final String discriminator) {
+        Breaker breaker = breakers.get(key(discriminator));
+        if (breaker == null) {
+            return false;
+        }
+        synchronized (breaker) {
+            boolean wasOpen = !STATE_CLOSED.equals(breaker.state);
+            breaker.state = STATE_CLOSED;
+            breaker.probing = false;
+            breaker.consecutiveFailures = 0;
+            return wasOpen;
+        }
+    }
+
+    /**
+     * Get the state of the breakers which failed at least once.
+     *
+     * @param now the current time in milliseconds.
+     * @return the state of the breakers ordered by discriminator.
+     */
+    public List<Map<String, Object>> getStates(final long now) {
+        Map<String, Breaker> sorted = new TreeMap<String, Breaker>(breakers);
+        List<Map<String, Object>> states = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, Breaker> entry : sorted.entrySet()) {
+            Breaker breaker = entry.getValue();
+            Map<String, Object> state = new LinkedHashMap<String, Object>();
+            synchronized (breaker) {
+                state.put("discriminator", entry.getKey());
+                state.put("state", breaker.state);
+                state.put("consecutiveFailures", breaker.consecutiveFailures);
+                state.put("trips", breaker.trips);
+                state.put("held", breaker.held);
+                if (STATE_OPEN.equals(breaker.state)) {
+                    state.put("retryIn", Math.max(0, breaker.openedAt + coolDown - now));
+                }
+            }
+            states.add(state);
+        }
+        return states;
+    }
+
+    private static String key(final String discriminator) {
+        return discriminator == null ? "" : discriminator;
+    }
+
+    private Breaker getBreaker(final String discriminator) {
+        String key = key(discriminator);
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            Breaker created = new Breaker();
+            breaker = breakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    private static class Breaker {
+
+        private String state = STATE_CLOSED;
+
+        private boolean probing;
+
+        private int consecutiveFailures;
+
+        private long openedAt;
+
+        private long trips;
+
+        private long held;
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.RetentionPolicy;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.List;
+
+/**
+ * Delete the archive and error data expired according to the retention policies. The data is deleted in chunks, each
+ * in its own transaction, with a pause between the chunks to keep the tables available for the other transactions.
+ */
+public class DataRetentionTask extends AbstractTask {
+
+    /**
+     * Global property for the retention policies, see {@link RetentionPolicy} for the format of the policies.
+     */
+    public static final String RETENTION_POLICIES = "muzima.retention.policies";
+
+    /**
+     * Global property for the maximum number of rows deleted in a single transaction.
+     */
+    public static final String RETENTION_CHUNK_SIZE = "muzima.retention.chunkSize";
+
+    /**
+     * Global property for the pause in milliseconds between two chunks.
+     */
+    public static final String RETENTION_CHUNK_PAUSE = "muzima.retention.chunkPause";
+
+    private final Log log = LogFactory.getLog(DataRetentionTask.class);
+
+    /**
+     * @see org.openmrs.scheduler.Task#execute()
+     */
+    @Override
+    public void execute() {
+        Context.openSession();
+        try {
+            AdministrationService administrationService = Context.getAdministrationService();
+            List<RetentionPolicy> policies =
+                    RetentionPolicy.parse(administrationService.getGlobalProperty(RETENTION_POLICIES, ""));
+            int chunkSize = NumberUtils.toInt(administrationService.getGlobalProperty(RETENTION_CHUNK_SIZE), 500);
+            long chunkPause = NumberUtils.toLong(administrationService.getGlobalProperty(RETENTION_CHUNK_PAUSE), 1000);
+
+            DataService dataService = Context.getService(DataService.class);
+            for (RetentionPolicy policy : policies) {
+                List<RetentionPolicy> overridingPolicies = policy.getOverridingPolicies(policies);
+                int removed = 0;
+                int deleted;
+                do {
+                    deleted = dataService.purgeExpiredData(policy, overridingPolicies, chunkSize);
+                    removed = removed + deleted;
+                } while (deleted == chunkSize && pause(chunkPause));
+                log.info("Retention policy " + policy + " removed " + removed + " rows.");
+            }
+
+            int removed = 0;
+            int deleted;
+            do {
+                deleted = dataService.purgeOrphanedPayloads(chunkSize);
+                removed = removed + deleted;
+            } while (deleted == chunkSize && pause(chunkPause));
+            log.info("Retention removed " + removed + " orphaned payloads.");
+        } finally {
+            Context.closeSession();
+        }
+    }
+
+    private boolean pause(final long chunkPause) {
+        try {
+            Thread.sleep(chunkPause);
+            return true;
+        } catch (InterruptedException e) {
+            log.info("Retention task interrupted, remaining data will be deleted on the next run.");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded handler thread pools, one per discriminator. The tasks of a discriminator are not queued behind its busy
+ * threads: when all the threads of a discriminator are busy, for example stuck in a handler ignoring the interrupt of a
+ * timed out call, the task is rejected right away so the queue data of the other discriminators are still processed.
+ */
+public class HandlerBulkheads {
+
+    private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private volatile int size;
+
+    private volatile boolean isShutdown;
+
+    /**
+     * Create the bulkheads.
+     *
+     * @param size the number of handler threads of each discriminator.
+     */
+    public HandlerBulkheads(final int size) {
+        checkSize(size);
+        this.size = size;
+    }
+
+    private static void checkSize(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A bulkhead needs at least one thread.");
+        }
+    }
+
+    /**
+     * Run the task in a handler thread of the discriminator.
+     *
+     * @param discriminator the discriminator of the processed data.
+     * @param task          the task.
+     * @return the future result of the task.
+     * @throws RejectedExecutionException when all the threads of the discriminator are busy.
+     * @should run the task in a thread of the discriminator.
+     * @should reject the task when all the threads of the discriminator are busy.
+     * @should not reject the task when the threads of another discriminator are busy.
+     */
+    public <T> Future<T> submit(final String discriminator, final Callable<T> task) {
+        String key = discriminator == null ? "" : discriminator;
+        Bulkhead bulkhead = getBulkhead(key);
+        if (!bulkhead.tryAcquire(size)) {
+            throw new RejectedExecutionException("All the handler threads of " + key + " are busy.");
+        }
+        BulkheadTask<T> future = new BulkheadTask<T>(bulkhead, task);
+        try {
+            bulkhead.executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            throw e;
+        }
+        return future;
+    }
+
+    private Bulkhead getBulkhead(final String discriminator) {
+        Bulkhead bulkhead = bulkheads.get(discriminator);
+        if (bulkhead == null) {
+            if (isShutdown) {
+                throw new RejectedExecutionException("The handler bulkheads are shut down.");
+            }
+            Bulkhead created = new Bulkhead(createExecutor(discriminator));
+            bulkhead = bulkheads.putIfAbsent(discriminator, created);
+            if (bulkhead == null) {
+                bulkhead = created;
+            } else {
+                created.executor.shutdown();
+            }
+        }
+        return bulkhead;
+    }
+
+    private ThreadPoolExecutor createExecutor(final String discriminator) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "muzima-handler-" + discriminator + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Get the number of handler threads of each discriminator.
+     *
+     * @return the number of handler threads of each discriminator.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Resize the handler thread pools of all the discriminators.
+     *
+     * @param size the number of handler threads of each discriminator.
+     */
+    public synchronized void setSize(final int size) {
+        checkSize(size);
+        if (size == this.size) {
+            return;
+        }
+        this.size = size;
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            ThreadPoolExecutor executor = bulkhead.executor;
+            // the core size can't be over the maximum size at any time.
+            if (size > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(size);
+                executor.setCorePoolSize(size);
+            } else {
+                executor.setCorePoolSize(size);
+                executor.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    /**
+     * Get the number of busy handler threads per discriminator.
+     *
+     * @return the busy handler threads by discriminator.
+     */
+    public Map<String, Integer> getActiveCounts() {
+        Map<String, Integer> activeCounts = new TreeMap<String, Integer>();
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            activeCounts.put(entry.getKey(), entry.getValue().busy.get());
+        }
+        return activeCounts;
+    }
+
+    /**
+     * Interrupt the handler threads and reject the new tasks.
+     */
+    public void shutdown() {
+        isShutdown = true;
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.executor.shutdownNow();
+        }
+        bulkheads.clear();
+    }
+
+    private static class Bulkhead {
+
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicInteger busy = new AtomicInteger();
+
+        private Bulkhead(final ThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+
+        private boolean tryAcquire(final int size) {
+            while (true) {
+                int current = busy.get();
+                if (current >= size) {
+                    return false;
+                }
+                if (busy.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            busy.decrementAndGet();
+        }
+    }
+
+    /**
+     * The thread of a task stays busy until the handler actually returns, even when the task was cancelled, so a
+     * handler ignoring the interrupt keeps its thread out of the bulkhead.
+     */
+    private static class BulkheadTask<T> extends FutureTask<T> {
+
+        private final Bulkhead bulkhead;
+
+        private final AtomicBoolean released;
+
+        private final AtomicBoolean started;
+
+        private BulkheadTask(final Bulkhead bulkhead, final Callable<T> task) {
+            this(bulkhead, task, new AtomicBoolean(), new AtomicBoolean());
+        }
+
+        private BulkheadTask(final Bulkhead bulkhead, final Callable<T> task,
+                             final AtomicBoolean released, final AtomicBoolean started) {
+            super(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    started.set(true);
+                    try {
+                        return task.call();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            bulkhead.release();
+                        }
+                    }
+                }
+            });
+            this.bulkhead = bulkhead;
+            this.released = released;
+            this.started = started;
+        }
+
+        @Override
+        protected void done() {
+            // a task cancelled before it started never runs, so it releases its thread here.
+            if (!started.get() && released.compareAndSet(false, true)) {
+                bulkhead.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.Calendar;
+
+/**
+ * Create the upcoming monthly archive partitions and drop the partitions older than the archive retention. Dropping
+ * a partition removes the archived data of the whole month without deleting the rows one by one.
+ */
+public class ManageArchivePartitionsTask extends AbstractTask {
+
+    /**
+     * Global property for the number of months the archive data is kept, zero or less keeps the archive forever.
+     */
+    public static final String ARCHIVE_RETENTION_MONTHS = "muzima.archive.retentionMonths";
+
+    private static final int PARTITION_MONTHS_AHEAD = 2;
+
+    private final Log log = LogFactory.getLog(ManageArchivePartitionsTask.class);
+
+    /**
+     * @see org.openmrs.scheduler.Task#execute()
+     */
+    @Override
+    public void execute() {
+        Context.openSession();
+        try {
+            DataService dataService = Context.getService(DataService.class);
+
+            Calendar calendar = Calendar.getInstance();
+            calendar.add(Calendar.MONTH, PARTITION_MONTHS_AHEAD);
+            int created = dataService.createArchivePartitions(calendar.getTime());
+
+            int dropped = 0;
+            String retention = Context.getAdministrationService().getGlobalProperty(ARCHIVE_RETENTION_MONTHS, "0");
+            int retentionMonths = NumberUtils.toInt(retention.trim(), 0);
+            if (retentionMonths > 0) {
+                calendar = Calendar.getInstance();
+                calendar.add(Calendar.MONTH, -retentionMonths);
+                dropped = dataService.dropArchivePartitions(calendar.getTime());
+            }
+            log.info("Archive partitions created: " + created + ", dropped: " + dropped);
+        } finally {
+            Context.closeSession();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.Date;
+
+/**
+ * Void or delete the notification past their expiry date. The notification are handled in chunks, each in its own
+ * transaction, with the same chunk size and pause as the data retention task.
+ */
+public class NotificationExpiryTask extends AbstractTask {
+
+    /**
+     * Global property for the action taken on the expired notification, either void or purge.
+     */
+    public static final String EXPIRY_ACTION = "muzima.notification.expiryAction";
+
+    public static final String ACTION_PURGE = "purge";
+
+    private final Log log = LogFactory.getLog(NotificationExpiryTask.class);
+
+    /**
+     * @see org.openmrs.scheduler.Task#execute()
+     */
+    @Override
+    public void execute() {
+        Context.openSession();
+        try {
+            AdministrationService administrationService = Context.getAdministrationService();
+            boolean purge = ACTION_PURGE.equalsIgnoreCase(administrationService.getGlobalProperty(EXPIRY_ACTION, ""));
+            int chunkSize = NumberUtils.toInt(
+                    administrationService.getGlobalProperty(DataRetentionTask.RETENTION_CHUNK_SIZE), 500);
+            long chunkPause = NumberUtils.toLong(
+                    administrationService.getGlobalProperty(DataRetentionTask.RETENTION_CHUNK_PAUSE), 1000);
+
+            DataService dataService = Context.getService(DataService.class);
+            Date date = new Date();
+            int removed = 0;
+            int expired;
+            do {
+                if (purge) {
+                    expired = dataService.purgeExpiredNotificationData(date, chunkSize);
+                } else {
+                    expired = dataService.voidExpiredNotificationData(date, chunkSize);
+                }
+                removed = removed + expired;
+            } while (expired == chunkSize && pause(chunkPause));
+            log.info("Notification expiry " + (purge ? "purged " : "voided ") + removed + " notification.");
+        } finally {
+            Context.closeSession();
+        }
+    }
+
+    private boolean pause(final long chunkPause) {
+        try {
+            Thread.sleep(chunkPause);
+            return true;
+        } catch (InterruptedException e) {
+            log.info("Notification expiry task interrupted, remaining notification will expire on the next run.");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -23,7 +23,7 @@ public class ProcessQueueDataTask extends AbstractTask {
     private QueueDataProcessor processor;
 
     public ProcessQueueDataTask() {
-        this.processor = new QueueDataProcessor();
+        this.processor = QueueDataProcessor.getInstance();
     }
 
     /**
@@ -32,7 +32,10 @@ public class ProcessQueueDataTask extends AbstractTask {
     @Override
     public void execute() {
         Context.openSession();
-        processor.processQueueData();
-        Context.closeSession();
+        try {
+            processor.processQueueData();
+        } finally {
+            Context.closeSession();
+        }
     }
 }
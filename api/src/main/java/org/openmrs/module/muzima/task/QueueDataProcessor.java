@@ -13,59 +13,433 @@
  */
 package org.openmrs.module.muzima.task;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.StaleStateException;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
 import org.openmrs.module.muzima.api.service.DataService;
-import org.openmrs.module.muzima.exception.QueueProcessorException;
-import org.openmrs.module.muzima.model.ArchiveData;
-import org.openmrs.module.muzima.model.ErrorData;
 import org.openmrs.module.muzima.model.QueueData;
 import org.openmrs.module.muzima.model.handler.QueueDataHandler;
+import org.openmrs.module.muzima.monitor.FlightEvents;
+import org.openmrs.module.muzima.monitor.LatencyTracker;
 import org.openmrs.util.HandlerUtil;
 
-import java.util.Date;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Process the queue data with the registered queue data handlers. There is a single processor per module, so the
+ * scheduled task, the manual runs and the monitoring all see the same run state and statistics.
+ * <p/>
+ * With one worker, the default, the queue data is processed in the calling thread in the order of the queue. With more
+ * workers the queue data of a run is spread over the worker pool, so queue data depending on each other (for example
+ * a registration and the encounter of the registered patient) may be processed out of order and fail.
+ * <p/>
+ * When the handler timeout is set, the handlers run in the bounded handler thread pool of the discriminator and the
+ * processing thread watches them: the handler of a queue data which does not complete in time is interrupted and the
+ * processing thread moves on. The queue data is only moved once its handler actually ended, to the archive when the
+ * handler completed after all and to the error data otherwise, so it is never re-queued while its handler still runs.
+ * <p/>
+ * The queue data of a discriminator whose handler keeps failing is held in the queue by the circuit breaker of the
+ * discriminator, see {@link CircuitBreakers}.
  */
 public class QueueDataProcessor {
 
+    /**
+     * Global property for the number of workers processing the queue data.
+     */
+    public static final String WORKER_POOL_SIZE = "muzima.processor.workers";
+
+    /**
+     * Global property for the time in seconds a handler has to process a queue data, 0 to disable the timeout.
+     */
+    public static final String HANDLER_TIMEOUT = "muzima.processor.handlerTimeout";
+
+    /**
+     * Global property for the number of handler threads of each discriminator when the handler timeout is set,
+     * defaults to the number of workers.
+     */
+    public static final String BULKHEAD_SIZE = "muzima.processor.bulkheadSize";
+
+    /**
+     * Global property for the number of consecutive failures opening the circuit breaker of a discriminator, 0 to
+     * disable the circuit breakers.
+     */
+    public static final String BREAKER_THRESHOLD = "muzima.processor.breakerThreshold";
+
+    /**
+     * Global property for the time in seconds an open circuit breaker holds the queue data of its discriminator.
+     */
+    public static final String BREAKER_COOL_DOWN = "muzima.processor.breakerCoolDown";
+
+    private static final int DEFAULT_BREAKER_THRESHOLD = 10;
+
+    private static final long DEFAULT_BREAKER_COOL_DOWN = 300;
+
+    public static final String STATE_IDLE = "IDLE";
+
+    public static final String STATE_RUNNING = "RUNNING";
+
+    public static final String STATE_PAUSED = "PAUSED";
+
+    private static final String OUTCOME_ARCHIVED = "archived";
+
+    private static final String OUTCOME_FAILED = "failed";
+
+    private static final String OUTCOME_SKIPPED = "skipped";
+
+    private static final String OUTCOME_TIMED_OUT = "timedOut";
+
+    private static final String OUTCOME_DEFERRED = "deferred";
+
+    private static final QueueDataProcessor instance = new QueueDataProcessor();
+
     private final Log log = LogFactory.getLog(QueueDataProcessor.class);
 
-    private static Boolean isRunning = false;
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+
+    private final AtomicBoolean isPaused = new AtomicBoolean(false);
+
+    private final AtomicInteger runSize = new AtomicInteger();
+
+    private final AtomicInteger runProcessed = new AtomicInteger();
+
+    private final AtomicInteger runErrors = new AtomicInteger();
+
+    private final AtomicLong totalProcessed = new AtomicLong();
+
+    private final AtomicLong totalErrors = new AtomicLong();
+
+    private final AtomicLong totalTimeouts = new AtomicLong();
+
+    private final AtomicLong totalDeferred = new AtomicLong();
+
+    private final AtomicLong totalHeld = new AtomicLong();
+
+    private final Set<Integer> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    private final CircuitBreakers breakers =
+            new CircuitBreakers(DEFAULT_BREAKER_THRESHOLD, DEFAULT_BREAKER_COOL_DOWN * 1000);
+
+    private volatile long lastRunStart;
+
+    private volatile long lastRunDuration = -1;
+
+    private volatile UserContext lastUserContext;
+
+    private volatile long handlerTimeout;
+
+    private ThreadPoolExecutor workers;
+
+    private HandlerBulkheads bulkheads;
+
+    private QueueDataProcessor() {
+    }
+
+    /**
+     * Get the queue data processor of the module.
+     *
+     * @return the queue data processor.
+     */
+    public static QueueDataProcessor getInstance() {
+        return instance;
+    }
 
     public void processQueueData() {
-        if (!isRunning) {
-            log.info("Starting up queue data processor ...");
-            processAllQueueData();
+        if (isPaused.get()) {
+            log.info("Queue data processor is paused, skipping this run.");
+            return;
+        }
+        // a plain check then set lets two scheduler threads both start processing the same queue data.
+        if (isRunning.compareAndSet(false, true)) {
+            try {
+                log.info("Starting up queue data processor ...");
+                lastUserContext = Context.getUserContext();
+                processAllQueueData();
+            } finally {
+                isRunning.set(false);
+            }
         } else {
             log.info("Queue data processor aborting (another processor already running)!");
         }
     }
 
+    /**
+     * Start a run right away in a new thread, as the user of the last run because the handlers need an authenticated
+     * user to save the processed data.
+     *
+     * @throws IllegalStateException when the processor never ran yet.
+     */
+    public void processQueueDataNow() {
+        final UserContext userContext = lastUserContext;
+        if (userContext == null) {
+            throw new IllegalStateException("The queue data processor has not run yet, unable to find its user.");
+        }
+        Thread thread = new Thread("muzima-queue-processor-now") {
+            @Override
+            public void run() {
+                Context.openSession();
+                Context.setUserContext(userContext);
+                try {
+                    processQueueData();
+                } finally {
+                    Context.closeSession();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     private void processAllQueueData() {
+        lastRunStart = System.currentTimeMillis();
+        runProcessed.set(0);
+        runErrors.set(0);
         try {
-            isRunning = true;
             DataService dataService = Context.getService(DataService.class);
             List<QueueData> queueDataList = dataService.getAllQueueData();
-            Iterator<QueueData> queueDataIterator = queueDataList.iterator();
-            while (queueDataIterator.hasNext()) {
-                QueueData queueData = queueDataIterator.next();
-                try {
-                    QueueDataHandler queueDataHandler = findHandler(queueData);
-                    queueDataHandler.process(queueData);
-                    // archive them after we're done processing the queue data.
-                    createArchiveData(queueData, "Queue data processed successfully!");
-                } catch (Exception e) {
-                    log.error("Unable to process queue data due to: " + e.getMessage(), e);
-                    createErrorData(queueData, "Unable to process queue data due to: " + e.getMessage());
+            runSize.set(queueDataList.size());
+            ThreadPoolExecutor executor = getWorkers();
+            readSettings(executor.getMaximumPoolSize());
+            if (executor.getMaximumPoolSize() <= 1) {
+                for (QueueData queueData : queueDataList) {
+                    if (isPaused.get()) {
+                        log.info("Queue data processor paused, the rest of the queue data is left for the next run.");
+                        break;
+                    }
+                    processQueueData(dataService, queueData);
                 }
-                dataService.purgeQueueData(queueData);
+            } else {
+                processInWorkers(executor, queueDataList);
             }
         } finally {
-            isRunning = false;
+            lastRunDuration = System.currentTimeMillis() - lastRunStart;
+            LatencyTracker.getInstance().save();
+        }
+    }
+
+    private void processInWorkers(final ThreadPoolExecutor executor, final List<QueueData> queueDataList) {
+        final UserContext userContext = Context.getUserContext();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (QueueData queueData : queueDataList) {
+            final Integer id = queueData.getId();
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (isPaused.get()) {
+                        return;
+                    }
+                    Context.openSession();
+                    Context.setUserContext(userContext);
+                    try {
+                        DataService dataService = Context.getService(DataService.class);
+                        QueueData workerQueueData = dataService.getQueueData(id);
+                        // the queue data might be deleted or re-queued since the queue was read.
+                        if (workerQueueData != null) {
+                            processQueueData(dataService, workerQueueData);
+                        }
+                    } finally {
+                        Context.closeSession();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Queue data worker failed unexpectedly.", e.getCause());
+            }
+        }
+    }
+
+    private void readSettings(final int workerPoolSize) {
+        AdministrationService administrationService = Context.getAdministrationService();
+        breakers.setThreshold(NumberUtils.toInt(
+                administrationService.getGlobalProperty(BREAKER_THRESHOLD), DEFAULT_BREAKER_THRESHOLD));
+        breakers.setCoolDown(Math.max(0, NumberUtils.toLong(
+                administrationService.getGlobalProperty(BREAKER_COOL_DOWN), DEFAULT_BREAKER_COOL_DOWN)) * 1000);
+        long timeout = NumberUtils.toLong(administrationService.getGlobalProperty(HANDLER_TIMEOUT), 0);
+        handlerTimeout = Math.max(0, timeout) * 1000;
+        if (handlerTimeout > 0) {
+            int size = NumberUtils.toInt(administrationService.getGlobalProperty(BULKHEAD_SIZE), workerPoolSize);
+            getBulkheads().setSize(Math.max(1, size));
+        }
+    }
+
+    private void processQueueData(final DataService dataService, final QueueData queueData) {
+        String discriminator = queueData.getDiscriminator();
+        if (!breakers.allow(discriminator, System.currentTimeMillis())) {
+            totalHeld.incrementAndGet();
+            return;
+        }
+        long timeout = handlerTimeout;
+        String outcome = timeout > 0 ? processWithTimeout(dataService, queueData, timeout)
+                : handleQueueData(dataService, queueData, null);
+        if (OUTCOME_ARCHIVED.equals(outcome)) {
+            breakers.recordSuccess(discriminator);
+        } else if (OUTCOME_FAILED.equals(outcome) || OUTCOME_TIMED_OUT.equals(outcome)) {
+            breakers.recordFailure(discriminator, System.currentTimeMillis());
+        } else {
+            breakers.recordIgnored(discriminator);
+        }
+        if (OUTCOME_DEFERRED.equals(outcome)) {
+            totalDeferred.incrementAndGet();
+            return;
+        }
+        runProcessed.incrementAndGet();
+        totalProcessed.incrementAndGet();
+        if (OUTCOME_FAILED.equals(outcome) || OUTCOME_TIMED_OUT.equals(outcome)) {
+            runErrors.incrementAndGet();
+            totalErrors.incrementAndGet();
+        }
+        if (OUTCOME_TIMED_OUT.equals(outcome)) {
+            totalTimeouts.incrementAndGet();
+        }
+        // the timed out queue data is still in the queue until its handler ends.
+        if (!OUTCOME_SKIPPED.equals(outcome) && !OUTCOME_TIMED_OUT.equals(outcome)
+                && queueData.getDateCreated() != null) {
+            long timeInQueue = System.currentTimeMillis() - queueData.getDateCreated().getTime();
+            LatencyTracker.getInstance().record(
+                    queueData.getDataSource() == null ? null : queueData.getDataSource().getName(),
+                    queueData.getDiscriminator(), timeInQueue);
+        }
+    }
+
+    /**
+     * Run the handler in the handler thread pool of the discriminator and wait for it at most the timeout. The
+     * handler thread works in its own session, so it reads the queue data again, and moves the queue data itself once
+     * the handler ended.
+     */
+    private String processWithTimeout(final DataService dataService, final QueueData queueData, final long timeout) {
+        final UserContext userContext = Context.getUserContext();
+        final Integer id = queueData.getId();
+        // the handler of a timed out queue data may still run, the queue data must not be handled a second time.
+        if (!inFlight.add(id)) {
+            return OUTCOME_DEFERRED;
+        }
+        final AtomicReference<String> timeoutMessage = new AtomicReference<String>();
+        Future<String> future;
+        try {
+            future = getBulkheads().submit(queueData.getDiscriminator(), new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    Context.openSession();
+                    Context.setUserContext(userContext);
+                    try {
+                        DataService handlerDataService = Context.getService(DataService.class);
+                        QueueData handlerQueueData = handlerDataService.getQueueData(id);
+                        // the queue data might be deleted or re-queued since the queue was read.
+                        if (handlerQueueData == null) {
+                            return OUTCOME_SKIPPED;
+                        }
+                        return handleQueueData(handlerDataService, handlerQueueData, timeoutMessage);
+                    } finally {
+                        inFlight.remove(id);
+                        Context.closeSession();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(id);
+            log.warn("All handler threads of " + queueData.getDiscriminator() + " are busy, queue data "
+                    + queueData.getUuid() + " is left for the next run.");
+            return OUTCOME_DEFERRED;
+        }
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeoutMessage.set("Queue data processing timed out after " + timeout + " ms.");
+            // cancelling only interrupts the handler, the handler thread moves the queue data once the handler ends.
+            future.cancel(true);
+            log.error("Handler of queue data " + queueData.getUuid() + " timed out after " + timeout + " ms.");
+            return OUTCOME_TIMED_OUT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return OUTCOME_DEFERRED;
+        } catch (ExecutionException e) {
+            log.error("Queue data handler thread failed unexpectedly.", e.getCause());
+            return OUTCOME_FAILED;
+        }
+    }
+
+    private String handleQueueData(final DataService dataService, final QueueData queueData,
+                                   final AtomicReference<String> timeoutMessage) {
+        Object event = FlightEvents.QUEUE_DATA_PROCESSED.begin();
+        QueueDataHandler queueDataHandler = null;
+        String outcome = OUTCOME_ARCHIVED;
+        try {
+            queueDataHandler = findHandler(queueData);
+            // the queue data is claimed before the handler runs, the claim is rolled back when the handler fails.
+            dataService.processQueueData(queueData, queueDataHandler);
+        } catch (StaleStateException e) {
+            log.info("Queue data " + queueData.getUuid() + " was moved or deleted by another transaction, skipping it.");
+            outcome = OUTCOME_SKIPPED;
+        } catch (Exception e) {
+            outcome = failQueueData(dataService, queueData, e, timeoutMessage);
+        } catch (Error e) {
+            // a broken deployment shows up as linkage errors, which are handler failures like any other.
+            if (e instanceof VirtualMachineError) {
+                throw e;
+            }
+            outcome = failQueueData(dataService, queueData, e, timeoutMessage);
+        } finally {
+            if (event != null) {
+                FlightEvents.QUEUE_DATA_PROCESSED.commit(event, queueData.getDiscriminator(),
+                        queueData.getDataSource() == null ? null : queueData.getDataSource().getName(),
+                        queueDataHandler == null ? null : queueDataHandler.getClass().getName(), outcome);
+            }
+        }
+        return outcome;
+    }
+
+    private String failQueueData(final DataService dataService, final QueueData queueData, final Throwable cause,
+                                 final AtomicReference<String> timeoutMessage) {
+        log.error("Unable to process queue data due to: " + cause.getMessage(), cause);
+        String message = "Unable to process queue data due to: " + cause.getMessage();
+        if (timeoutMessage != null && timeoutMessage.get() != null) {
+            message = timeoutMessage.get() + " " + message;
+        }
+        return moveToError(dataService, queueData, message) ? OUTCOME_FAILED : OUTCOME_SKIPPED;
+    }
+
+    private boolean moveToError(final DataService dataService, final QueueData queueData, final String message) {
+        try {
+            // the failed transaction cleared the session, read the queue data again now that the claim is rolled back.
+            QueueData current = dataService.getQueueData(queueData.getId());
+            if (current == null) {
+                log.warn("Queue data " + queueData.getUuid() + " is not in the queue anymore, skipping it.");
+                return false;
+            }
+            dataService.failQueueData(current, message);
+            return true;
+        } catch (Exception failure) {
+            // the queue data was deleted or moved by another transaction after the queue was read.
+            log.warn("Unable to move queue data " + queueData.getUuid() + " to the error data, skipping it.", failure);
+            return false;
         }
     }
 
@@ -82,17 +456,218 @@ public class QueueDataProcessor {
         return queueDataHandler;
     }
 
-    private void createArchiveData(final QueueData queueData, final String message) {
-        ArchiveData archiveData = new ArchiveData(queueData);
-        archiveData.setMessage(message);
-        archiveData.setDateArchived(new Date());
-        Context.getService(DataService.class).saveArchiveData(archiveData);
+    private synchronized ThreadPoolExecutor getWorkers() {
+        if (workers == null) {
+            int size = NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty(WORKER_POOL_SIZE), 1);
+            workers = createWorkers(Math.max(1, size));
+        }
+        return workers;
+    }
+
+    private synchronized HandlerBulkheads getBulkheads() {
+        if (bulkheads == null) {
+            bulkheads = new HandlerBulkheads(1);
+        }
+        return bulkheads;
+    }
+
+    private ThreadPoolExecutor createWorkers(final int size) {
+        final AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(runnable, "muzima-queue-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Pause the processor. The current run stops after the queue data being processed, and the next runs are skipped
+     * until the processor is resumed.
+     */
+    public void pause() {
+        isPaused.set(true);
+    }
+
+    /**
+     * Resume the paused processor, the queue data is processed again on the next run.
+     */
+    public void resume() {
+        isPaused.set(false);
     }
 
-    private void createErrorData(final QueueData queueData, final String message) {
-        ErrorData errorData = new ErrorData(queueData);
-        errorData.setMessage(message);
-        errorData.setDateProcessed(new Date());
-        Context.getService(DataService.class).saveErrorData(errorData);
+    /**
+     * Get the run state of the processor.
+     *
+     * @return the run state, one of IDLE, RUNNING or PAUSED.
+     */
+    public String getState() {
+        if (isPaused.get()) {
+            return STATE_PAUSED;
+        }
+        return isRunning.get() ? STATE_RUNNING : STATE_IDLE;
+    }
+
+    /**
+     * Get the number of worker threads processing the queue data.
+     *
+     * @return the size of the worker pool.
+     */
+    public synchronized int getWorkerPoolSize() {
+        return workers == null ? 1 : workers.getMaximumPoolSize();
+    }
+
+    /**
+     * Resize the worker pool. The size is not persisted, the global property applies again after a restart.
+     *
+     * @param size the new size of the worker pool.
+     */
+    public synchronized void setWorkerPoolSize(final int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The worker pool needs at least one worker.");
+        }
+        if (workers == null) {
+            workers = createWorkers(size);
+            return;
+        }
+        // the core size can't be over the maximum size at any time.
+        if (size > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(size);
+            workers.setCorePoolSize(size);
+        } else {
+            workers.setCorePoolSize(size);
+            workers.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Stop the worker threads, the pool is created again on the next run.
+     */
+    public synchronized void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+            workers = null;
+        }
+        if (bulkheads != null) {
+            bulkheads.shutdown();
+            bulkheads = null;
+        }
+        lastUserContext = null;
+    }
+
+    public int getRunSize() {
+        return runSize.get();
+    }
+
+    public int getRunProcessed() {
+        return runProcessed.get();
+    }
+
+    public int getRunErrors() {
+        return runErrors.get();
+    }
+
+    public long getTotalProcessed() {
+        return totalProcessed.get();
+    }
+
+    public long getTotalErrors() {
+        return totalErrors.get();
+    }
+
+    /**
+     * Get the number of queue data moved to the error data because their handler timed out since the module started.
+     *
+     * @return the timed out queue data.
+     */
+    public long getTotalTimeouts() {
+        return totalTimeouts.get();
+    }
+
+    /**
+     * Get the number of times a queue data was left for the next run because the handler threads of its
+     * discriminator were all busy since the module started.
+     *
+     * @return the deferred queue data.
+     */
+    public long getTotalDeferred() {
+        return totalDeferred.get();
+    }
+
+    /**
+     * Get the number of times a queue data was left in the queue by the open circuit breaker of its discriminator
+     * since the module started.
+     *
+     * @return the held queue data.
+     */
+    public long getTotalHeld() {
+        return totalHeld.get();
+    }
+
+    /**
+     * Get the state of the circuit breakers of the discriminators which failed since the module started.
+     *
+     * @return the state of the circuit breakers.
+     */
+    public List<Map<String, Object>> getBreakerStates() {
+        return breakers.getStates(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the number of consecutive failures opening the circuit breaker of a discriminator, as of the last run.
+     *
+     * @return the circuit breaker threshold, 0 when the circuit breakers are disabled.
+     */
+    public int getBreakerThreshold() {
+        return breakers.getThreshold();
+    }
+
+    /**
+     * Get the time an open circuit breaker holds the queue data of its discriminator, as of the last run.
+     *
+     * @return the cool down in milliseconds.
+     */
+    public long getBreakerCoolDown() {
+        return breakers.getCoolDown();
+    }
+
+    /**
+     * Close the circuit breaker of the discriminator, its queue data is processed again on the next run.
+     *
+     * @param discriminator the discriminator.
+     * @return true when the breaker was open or half open.
+     */
+    public boolean resetBreaker(final String discriminator) {
+        return breakers.reset(discriminator);
+    }
+
+    /**
+     * Get the number of busy handler threads per discriminator.
+     *
+     * @return the busy handler threads by discriminator.
+     */
+    public synchronized Map<String, Integer> getBusyHandlers() {
+        return bulkheads == null ? Collections.<String, Integer>emptyMap() : bulkheads.getActiveCounts();
+    }
+
+    public long getLastRunStart() {
+        return lastRunStart;
+    }
+
+    /**
+     * Get the duration of the last run, or of the current run so far while the processor is running.
+     *
+     * @return the run duration in milliseconds, or -1 when the processor never ran.
+     */
+    public long getLastRunDuration() {
+        if (isRunning.get()) {
+            return System.currentTimeMillis() - lastRunStart;
+        }
+        return lastRunDuration;
     }
 }
@@ -0,0 +1,43 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Rebuild the notification counters from the notification data to reconcile any drift of the incrementally
+ * maintained counts.
+ */
+public class RebuildNotificationCounterTask extends AbstractTask {
+
+    private final Log log = LogFactory.getLog(RebuildNotificationCounterTask.class);
+
+    /**
+     * @see org.openmrs.scheduler.Task#execute()
+     */
+    @Override
+    public void execute() {
+        Context.openSession();
+        try {
+            int counters = Context.getService(DataService.class).rebuildNotificationCounters();
+            log.info("Rebuilt " + counters + " notification counters.");
+        } finally {
+            Context.closeSession();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.version;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In process version counters of the muzima tables. The version of a table is bumped after every committed change to
+ * the table, so an unchanged version means any result read from the table is still the same. The versions start
+ * again after a restart, the epoch tells the versions of the different runs apart.
+ */
+public class DataVersions {
+
+    public static final String QUEUE = "queue";
+
+    public static final String ERROR = "error";
+
+    public static final String ARCHIVE = "archive";
+
+    public static final String SOURCE = "source";
+
+    public static final String NOTIFICATION = "notification";
+
+    public static final String[] TABLES = {QUEUE, ERROR, ARCHIVE, SOURCE, NOTIFICATION};
+
+    private final long epoch = System.currentTimeMillis();
+
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+    public DataVersions() {
+        for (String table : TABLES) {
+            versions.put(table, new AtomicLong());
+        }
+    }
+
+    /**
+     * Get the current version of the table, including the epoch of this run.
+     *
+     * @param table the table.
+     * @return the current version of the table.
+     */
+    public String getVersion(final String table) {
+        return epoch + "." + versions.get(table).get();
+    }
+
+    /**
+     * Bump the version of the table after a committed change.
+     *
+     * @param table the changed table.
+     */
+    public void increment(final String table) {
+        versions.get(table).incrementAndGet();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.advice;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.version.DataVersions;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ */
+public class DataVersionAdviceTest {
+
+    /**
+     * The split storage saves the error data through the service while the lifecycle storage only updates the status
+     * of the row, so the error table must be declared on the failing method itself for both storage modes.
+     *
+     * @verifies return the queue and error tables for failing queue data.
+     * @see DataVersionAdvice#getChangedTables(java.lang.reflect.Method)
+     */
+    @Test
+    public void getChangedTables_shouldReturnTheQueueAndErrorTablesForFailingQueueData() throws Exception {
+        List<String> tables = DataVersionAdvice.getChangedTables(
+                DataService.class.getMethod("failQueueData", QueueData.class, String.class));
+        Assert.assertEquals(2, tables.size());
+        Assert.assertTrue(tables.contains(DataVersions.QUEUE));
+        Assert.assertTrue(tables.contains(DataVersions.ERROR));
+    }
+
+    /**
+     * @verifies return all tables for an undeclared write method.
+     * @see DataVersionAdvice#getChangedTables(java.lang.reflect.Method)
+     */
+    @Test
+    public void getChangedTables_shouldReturnAllTablesForAnUndeclaredWriteMethod() throws Exception {
+        List<String> tables = DataVersionAdvice.getChangedTables(DataService.class.getMethod("onStartup"));
+        Assert.assertEquals(Arrays.asList(DataVersions.TABLES), tables);
+    }
+
+    /**
+     * @verifies return no table for a read method.
+     * @see DataVersionAdvice#getChangedTables(java.lang.reflect.Method)
+     */
+    @Test
+    public void getChangedTables_shouldReturnNoTableForAReadMethod() throws Exception {
+        Assert.assertTrue(DataVersionAdvice.getChangedTables(
+                DataService.class.getMethod("getQueueData", Integer.class)).isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.api.db.hibernate;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+/**
+ */
+public class HibernateQueueDataDaoTest extends BaseModuleContextSensitiveTest {
+
+    /**
+     * @verifies count and page the queue data of the split storage only.
+     * @see HibernateDataDao#countData(String)
+     * @see HibernateDataDao#getDataRange(String, Integer, Integer)
+     */
+    @Test
+    public void countData_shouldCountAndPageTheQueueDataOfTheSplitStorageOnly() throws Exception {
+        DataService dataService = Context.getService(DataService.class);
+        DataSource dataSource = new DataSource();
+        dataSource.setName("split storage");
+        dataSource.setDescription("Split storage data source");
+        dataService.saveDataSource(dataSource);
+        for (int i = 0; i < 3; i++) {
+            QueueData queueData = new QueueData();
+            queueData.setDataSource(dataSource);
+            queueData.setDiscriminator("json-registration");
+            queueData.setPayload("{\"item\": " + i + "}");
+            dataService.saveQueueData(queueData);
+        }
+
+        Assert.assertEquals(3, dataService.countQueueData(null).intValue());
+        Assert.assertEquals(2, dataService.getPagedQueueData(null, 1, 2).size());
+        Assert.assertEquals(1, dataService.getPagedQueueData(null, 2, 2).size());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+
+import java.util.List;
+
+/**
+ */
+public class RetentionPolicyTest {
+    /**
+     * @verifies parse table only policy.
+     * @see RetentionPolicy#parse(String)
+     */
+    @Test
+    public void parse_shouldParseTableOnlyPolicy() throws Exception {
+        List<RetentionPolicy> policies = RetentionPolicy.parse("archive=180, error = 365");
+        Assert.assertEquals(2, policies.size());
+        Assert.assertEquals(RetentionPolicy.ARCHIVE, policies.get(0).getTable());
+        Assert.assertNull(policies.get(0).getDataSource());
+        Assert.assertNull(policies.get(0).getDiscriminator());
+        Assert.assertEquals(180, policies.get(0).getDays());
+        Assert.assertEquals(RetentionPolicy.ERROR, policies.get(1).getTable());
+        Assert.assertEquals(365, policies.get(1).getDays());
+    }
+
+    /**
+     * @verifies parse policy with data source and discriminator.
+     * @see RetentionPolicy#parse(String)
+     */
+    @Test
+    public void parse_shouldParsePolicyWithDataSourceAndDiscriminator() throws Exception {
+        List<RetentionPolicy> policies = RetentionPolicy.parse("archive:Mobile Device:json-registration=30");
+        Assert.assertEquals(1, policies.size());
+        Assert.assertEquals("Mobile Device", policies.get(0).getDataSource());
+        Assert.assertEquals("json-registration", policies.get(0).getDiscriminator());
+        Assert.assertEquals(30, policies.get(0).getDays());
+    }
+
+    /**
+     * @verifies treat wildcard as any value.
+     * @see RetentionPolicy#parse(String)
+     */
+    @Test
+    public void parse_shouldTreatWildcardAsAnyValue() throws Exception {
+        List<RetentionPolicy> policies = RetentionPolicy.parse("error:*:json-encounter=30\narchive:Web:*=7");
+        Assert.assertEquals(2, policies.size());
+        Assert.assertNull(policies.get(0).getDataSource());
+        Assert.assertEquals("json-encounter", policies.get(0).getDiscriminator());
+        Assert.assertEquals("Web", policies.get(1).getDataSource());
+        Assert.assertNull(policies.get(1).getDiscriminator());
+    }
+
+    /**
+     * @verifies throw APIException when the policy is invalid.
+     * @see RetentionPolicy#parse(String)
+     */
+    @Test(expected = APIException.class)
+    public void parse_shouldThrowAPIExceptionWhenThePolicyIsInvalid() throws Exception {
+        RetentionPolicy.parse("queue=10");
+    }
+
+    /**
+     * @verifies return more specific policies within the scope of this policy.
+     * @see RetentionPolicy#getOverridingPolicies(java.util.List)
+     */
+    @Test
+    public void getOverridingPolicies_shouldReturnMoreSpecificPoliciesWithinTheScopeOfThisPolicy() throws Exception {
+        List<RetentionPolicy> policies =
+                RetentionPolicy.parse("archive=180, archive:*:json-registration=30, archive:Web:json-registration=7");
+        List<RetentionPolicy> overridingPolicies = policies.get(0).getOverridingPolicies(policies);
+        Assert.assertEquals(2, overridingPolicies.size());
+        overridingPolicies = policies.get(1).getOverridingPolicies(policies);
+        Assert.assertEquals(1, overridingPolicies.size());
+        Assert.assertSame(policies.get(2), overridingPolicies.get(0));
+        Assert.assertTrue(policies.get(2).getOverridingPolicies(policies).isEmpty());
+    }
+
+    /**
+     * @verifies not return policies of other tables.
+     * @see RetentionPolicy#getOverridingPolicies(java.util.List)
+     */
+    @Test
+    public void getOverridingPolicies_shouldNotReturnPoliciesOfOtherTables() throws Exception {
+        List<RetentionPolicy> policies = RetentionPolicy.parse("archive=180, error:*:json-registration=30");
+        Assert.assertTrue(policies.get(0).getOverridingPolicies(policies).isEmpty());
+    }
+
+    /**
+     * @verifies let a discriminator only policy override an overlapping source only policy.
+     * @see RetentionPolicy#getOverridingPolicies(java.util.List)
+     */
+    @Test
+    public void getOverridingPolicies_shouldLetADiscriminatorOnlyPolicyOverrideAnOverlappingSourceOnlyPolicy()
+            throws Exception {
+        List<RetentionPolicy> policies = RetentionPolicy.parse(
+                "archive:Web:*=7, archive:*:json-registration=365, archive:Mobile:json-registration=1");
+        List<RetentionPolicy> overridingPolicies = policies.get(0).getOverridingPolicies(policies);
+        Assert.assertEquals(1, overridingPolicies.size());
+        Assert.assertSame(policies.get(1), overridingPolicies.get(0));
+        // the source only policy never overrides the discriminator only policy.
+        overridingPolicies = policies.get(1).getOverridingPolicies(policies);
+        Assert.assertEquals(1, overridingPolicies.size());
+        Assert.assertSame(policies.get(2), overridingPolicies.get(0));
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+/**
+ */
+public class LatencyHistogramTest {
+    /**
+     * @verifies record the value in a bucket within the relative precision.
+     * @see LatencyHistogram#record(long)
+     */
+    @Test
+    public void record_shouldRecordTheValueInABucketWithinTheRelativePrecision() throws Exception {
+        long[] values = {0, 1, 15, 16, 17, 100, 1000, 299999, 300001, 86400000L, Long.MAX_VALUE / 2};
+        for (long value : values) {
+            int index = LatencyHistogram.getIndex(value);
+            long lowerBound = LatencyHistogram.getLowerBound(index);
+            Assert.assertTrue(lowerBound <= value);
+            Assert.assertTrue(value - lowerBound <= value / 16);
+        }
+    }
+
+    /**
+     * @verifies return zero for an empty histogram.
+     * @see LatencyHistogram#getPercentile(double)
+     */
+    @Test
+    public void getPercentile_shouldReturnZeroForAnEmptyHistogram() throws Exception {
+        Assert.assertEquals(0, new LatencyHistogram().getPercentile(99));
+    }
+
+    /**
+     * @verifies return the percentile within the relative precision.
+     * @see LatencyHistogram#getPercentile(double)
+     */
+    @Test
+    public void getPercentile_shouldReturnThePercentileWithinTheRelativePrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        Assert.assertEquals(10000, histogram.getCount());
+        Assert.assertEquals(5000, histogram.getPercentile(50), 5000 / 16);
+        Assert.assertEquals(9900, histogram.getPercentile(99), 9900 / 16);
+        Assert.assertEquals(10000, histogram.getPercentile(100), 10000 / 16);
+        Assert.assertTrue(histogram.getPercentile(100) <= histogram.getMax());
+    }
+
+    /**
+     * @verifies read back the written histogram.
+     * @see LatencyHistogram#write(java.io.DataOutput)
+     */
+    @Test
+    public void write_shouldReadBackTheWrittenHistogram() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        histogram.record(1200);
+        histogram.record(450000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        histogram.write(new DataOutputStream(bytes));
+
+        LatencyHistogram read = new LatencyHistogram();
+        read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(3, read.getCount());
+        Assert.assertEquals(450000, read.getMax());
+        Assert.assertEquals(histogram.getPercentile(50), read.getPercentile(50));
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class RollingLatencyTest {
+    /**
+     * @verifies count the latency over the slo as breach.
+     * @see RollingLatency#record(long, long, long)
+     */
+    @Test
+    public void record_shouldCountTheLatencyOverTheSloAsBreach() throws Exception {
+        long now = 1000 * RollingLatency.SLICE_MILLIS;
+        RollingLatency latency = new RollingLatency(now);
+        latency.record(1000, 300000, now);
+        latency.record(300000, 300000, now);
+        latency.record(300001, 300000, now);
+        Assert.assertEquals(1, latency.getWindowBreaches(now));
+        Assert.assertEquals(1, latency.getTotalBreaches());
+        Assert.assertEquals(3, latency.getWindow(now).getCount());
+    }
+
+    /**
+     * @verifies drop the slices older than the window.
+     * @see RollingLatency#record(long, long, long)
+     */
+    @Test
+    public void record_shouldDropTheSlicesOlderThanTheWindow() throws Exception {
+        long now = 1000 * RollingLatency.SLICE_MILLIS;
+        RollingLatency latency = new RollingLatency(now);
+        latency.record(400000, 300000, now);
+        long later = now + RollingLatency.SLICE_MILLIS;
+        latency.record(1000, 300000, later);
+        Assert.assertEquals(2, latency.getWindow(later).getCount());
+
+        long dayLater = now + RollingLatency.SLICES * RollingLatency.SLICE_MILLIS;
+        Assert.assertEquals(1, latency.getWindow(dayLater).getCount());
+        Assert.assertEquals(0, latency.getWindowBreaches(dayLater));
+        Assert.assertEquals(1, latency.getTotalBreaches());
+        Assert.assertEquals(2, latency.getTotalCount());
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ */
+public class CircuitBreakersTest {
+
+    private static final String DISCRIMINATOR = "json-encounter";
+
+    private static final long COOL_DOWN = 60000;
+
+    private CircuitBreakers trippedBreakers(final long now) {
+        CircuitBreakers breakers = new CircuitBreakers(3, COOL_DOWN);
+        for (int i = 0; i < 3; i++) {
+            breakers.recordFailure(DISCRIMINATOR, now);
+        }
+        return breakers;
+    }
+
+    /**
+     * @verifies allow the queue data while the breaker is closed.
+     * @see CircuitBreakers#allow(String, long)
+     */
+    @Test
+    public void allow_shouldAllowTheQueueDataWhileTheBreakerIsClosed() throws Exception {
+        CircuitBreakers breakers = new CircuitBreakers(3, COOL_DOWN);
+        breakers.recordFailure(DISCRIMINATOR, 0);
+        breakers.recordFailure(DISCRIMINATOR, 0);
+        breakers.recordSuccess(DISCRIMINATOR);
+        breakers.recordFailure(DISCRIMINATOR, 0);
+        Assert.assertTrue(breakers.allow(DISCRIMINATOR, 0));
+        Assert.assertTrue(breakers.allow("json-registration", 0));
+    }
+
+    /**
+     * @verifies not allow the queue data while the breaker is open.
+     * @see CircuitBreakers#allow(String, long)
+     */
+    @Test
+    public void allow_shouldNotAllowTheQueueDataWhileTheBreakerIsOpen() throws Exception {
+        CircuitBreakers breakers = trippedBreakers(0);
+        Assert.assertFalse(breakers.allow(DISCRIMINATOR, COOL_DOWN - 1));
+        Assert.assertTrue(breakers.allow("json-registration", COOL_DOWN - 1));
+    }
+
+    /**
+     * @verifies allow a single probe after the cool down.
+     * @see CircuitBreakers#allow(String, long)
+     */
+    @Test
+    public void allow_shouldAllowASingleProbeAfterTheCoolDown() throws Exception {
+        CircuitBreakers breakers = trippedBreakers(0);
+        Assert.assertTrue(breakers.allow(DISCRIMINATOR, COOL_DOWN));
+        Assert.assertFalse(breakers.allow(DISCRIMINATOR, COOL_DOWN));
+        breakers.recordSuccess(DISCRIMINATOR);
+        Assert.assertTrue(breakers.allow(DISCRIMINATOR, COOL_DOWN));
+        Assert.assertTrue(breakers.allow(DISCRIMINATOR, COOL_DOWN));
+    }
+
+    /**
+     * @verifies open the breaker after the threshold of consecutive failures.
+     * @see CircuitBreakers#recordFailure(String, long)
+     */
+    @Test
+    public void recordFailure_shouldOpenTheBreakerAfterTheThresholdOfConsecutiveFailures() throws Exception {
+        CircuitBreakers breakers = trippedBreakers(0);
+        Assert.assertEquals(CircuitBreakers.STATE_OPEN, breakers.getStates(0).get(0).get("state"));
+        Assert.assertEquals(COOL_DOWN, breakers.getStates(0).get(0).get("retryIn"));
+    }
+
+    /**
+     * @verifies open the half open breaker again when the probe fails.
+     * @see CircuitBreakers#recordFailure(String, long)
+     */
+    @Test
+    public void recordFailure_shouldOpenTheHalfOpenBreakerAgainWhenTheProbeFails() throws Exception {
+        CircuitBreakers breakers = trippedBreakers(0);
+        Assert.assertTrue(breakers.allow(DISCRIMINATOR, COOL_DOWN));
+        breakers.recordFailure(DISCRIMINATOR, COOL_DOWN);
+        Assert.assertFalse(breakers.allow(DISCRIMINATOR, COOL_DOWN + 1));
+        Assert.assertEquals(2L, breakers.getStates(COOL_DOWN).get(0).get("trips"));
+    }
+}
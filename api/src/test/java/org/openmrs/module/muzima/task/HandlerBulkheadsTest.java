@@ -0,0 +1,98 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.task;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ */
+public class HandlerBulkheadsTest {
+
+    private HandlerBulkheads bulkheads;
+
+    private CountDownLatch blocked;
+
+    @Before
+    public void setUp() throws Exception {
+        bulkheads = new HandlerBulkheads(1);
+        blocked = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        blocked.countDown();
+        bulkheads.shutdown();
+    }
+
+    private Callable<String> blockingTask() {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                blocked.await();
+                return "blocked";
+            }
+        };
+    }
+
+    private Callable<String> threadNameTask() {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return Thread.currentThread().getName();
+            }
+        };
+    }
+
+    /**
+     * @verifies run the task in a thread of the discriminator.
+     * @see HandlerBulkheads#submit(String, java.util.concurrent.Callable)
+     */
+    @Test
+    public void submit_shouldRunTheTaskInAThreadOfTheDiscriminator() throws Exception {
+        String threadName = bulkheads.submit("json-encounter", threadNameTask()).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(threadName.startsWith("muzima-handler-json-encounter-"));
+        // the thread of a completed task is available right away for the next task.
+        bulkheads.submit("json-encounter", threadNameTask()).get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @verifies reject the task when all the threads of the discriminator are busy.
+     * @see HandlerBulkheads#submit(String, java.util.concurrent.Callable)
+     */
+    @Test(expected = RejectedExecutionException.class)
+    public void submit_shouldRejectTheTaskWhenAllTheThreadsOfTheDiscriminatorAreBusy() throws Exception {
+        bulkheads.submit("json-encounter", blockingTask());
+        bulkheads.submit("json-encounter", threadNameTask());
+    }
+
+    /**
+     * @verifies not reject the task when the threads of another discriminator are busy.
+     * @see HandlerBulkheads#submit(String, java.util.concurrent.Callable)
+     */
+    @Test
+    public void submit_shouldNotRejectTheTaskWhenTheThreadsOfAnotherDiscriminatorAreBusy() throws Exception {
+        bulkheads.submit("json-encounter", blockingTask());
+        String threadName = bulkheads.submit("json-registration", threadNameTask()).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(threadName.startsWith("muzima-handler-json-registration-"));
+        Assert.assertEquals(Integer.valueOf(1), bulkheads.getActiveCounts().get("json-encounter"));
+    }
+}
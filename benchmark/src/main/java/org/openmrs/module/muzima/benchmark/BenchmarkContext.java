@@ -0,0 +1,187 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.test.context.TestContextManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+
+/**
+ * Spring context of the module running against the in memory H2 database of the OpenMRS tests. The context is the one
+ * used by the module tests, it is started once per benchmark JVM and the standard test data set is committed, so every
+ * benchmark call goes through the real service transactions. With <code>-DuseInMemoryDatabase=false</code> the context
+ * uses the database of the OpenMRS runtime properties instead, which must already have the module tables, and the
+ * session is authenticated with the <code>benchmark.username</code> and <code>benchmark.password</code> properties.
+ */
+public class BenchmarkContext extends BaseModuleContextSensitiveTest {
+
+    public static final String ERROR_DISCRIMINATOR = "benchmark-error";
+
+    public static final String FLAKY_DISCRIMINATOR = "benchmark-flaky";
+
+    private static final String PAYLOAD_ID_PREFIX = "{\"uuid\":\"";
+
+    private static final int PAYLOAD_ID_LENGTH = 36;
+
+    private static final String USERNAME_PROPERTY = "benchmark.username";
+
+    private static final String PASSWORD_PROPERTY = "benchmark.password";
+
+    private static BenchmarkContext instance;
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Start the context when it's not started yet, and open an authenticated session for the current thread.
+     *
+     * @return the started context.
+     * @throws Exception when the context can't be started.
+     */
+    public static synchronized BenchmarkContext start() throws Exception {
+        if (instance == null) {
+            BenchmarkContext context = new BenchmarkContext();
+            context.initialize();
+            instance = context;
+        }
+        instance.openSession();
+        return instance;
+    }
+
+    private void initialize() throws Exception {
+        // outside of junit the spring test listeners are driven by hand.
+        new TestContextManager(getClass()).prepareTestInstance(this);
+        if (!useInMemoryDatabase()) {
+            return;
+        }
+        Context.openSession();
+        try {
+            inTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        baseSetupWithStandardDataAndAuthentication();
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Unable to set up the benchmark database.", e);
+                    }
+                }
+            });
+        } finally {
+            Context.closeSession();
+        }
+    }
+
+    public void openSession() {
+        Context.openSession();
+        Context.authenticate(System.getProperty(USERNAME_PROPERTY, "admin"),
+                System.getProperty(PASSWORD_PROPERTY, "test"));
+    }
+
+    public void closeSession() {
+        Context.closeSession();
+    }
+
+    public DataService getDataService() {
+        return Context.getService(DataService.class);
+    }
+
+    /**
+     * Run the work in its own committed transaction.
+     *
+     * @param work the work.
+     */
+    public void inTransaction(final Runnable work) {
+        PlatformTransactionManager transactionManager =
+                (PlatformTransactionManager) applicationContext.getBean("transactionManager");
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                work.run();
+            }
+        });
+    }
+
+    /**
+     * Create and save a data source.
+     *
+     * @param name the name of the data source.
+     * @return the saved data source.
+     */
+    public DataSource createDataSource(final String name) {
+        DataSource dataSource = new DataSource();
+        dataSource.setName(name);
+        dataSource.setDescription("Benchmark data source " + name);
+        return getDataService().saveDataSource(dataSource);
+    }
+
+    /**
+     * Create an unsaved queue data with a unique payload of roughly the requested size.
+     *
+     * @param dataSource    the data source.
+     * @param discriminator the discriminator.
+     * @param payloadSize   the size of the payload in characters.
+     * @return the unsaved queue data.
+     */
+    public static QueueData createQueueData(final DataSource dataSource, final String discriminator,
+                                            final int payloadSize) {
+        QueueData queueData = new QueueData();
+        queueData.setDataSource(dataSource);
+        queueData.setDiscriminator(discriminator);
+        queueData.setPayload(createPayload(payloadSize));
+        return queueData;
+    }
+
+    /**
+     * Create a unique json payload of roughly the requested size, so the payloads are not shared by their hash.
+     *
+     * @param payloadSize the size of the payload in characters.
+     * @return the json payload.
+     */
+    public static String createPayload(final int payloadSize) {
+        StringBuilder builder = new StringBuilder(payloadSize + 64);
+        builder.append(PAYLOAD_ID_PREFIX).append(UUID.randomUUID()).append("\",\"observations\":[");
+        int index = 0;
+        while (builder.length() < payloadSize) {
+            if (index > 0) {
+                builder.append(",");
+            }
+            builder.append("{\"concept\":").append(5000 + index).append(",\"value\":\"value-").append(index).append("\"}");
+            index++;
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Get the uuid embedded at the start of a payload created by {@link #createPayload(int)}.
+     *
+     * @param payload the payload.
+     * @return the embedded uuid, or null when the payload was not created by the benchmarks.
+     */
+    public static String getPayloadId(final String payload) {
+        if (payload == null || !payload.startsWith(PAYLOAD_ID_PREFIX)
+                || payload.length() < PAYLOAD_ID_PREFIX.length() + PAYLOAD_ID_LENGTH) {
+            return null;
+        }
+        return payload.substring(PAYLOAD_ID_PREFIX.length(), PAYLOAD_ID_PREFIX.length() + PAYLOAD_ID_LENGTH);
+    }
+}
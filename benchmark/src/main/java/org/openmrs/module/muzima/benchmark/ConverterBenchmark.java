@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.web.resource.QueueDataResource;
+import org.openmrs.module.muzima.web.utils.WebConverter;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The web conversions: the queue data resource creating a queue data from a posted json payload, and the web
+ * converter turning a page of queue data into the maps served by queues.json.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+    @Param({"50"})
+    public int listSize;
+
+    @Param({"512", "8192"})
+    public int payloadSize;
+
+    private BenchmarkContext context;
+
+    private DataSource dataSource;
+
+    private List<QueueData> queueDataList;
+
+    private Map<String, Object> payload;
+
+    private final QueueDataResource queueDataResource = new QueueDataResource();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        dataSource = context.createDataSource("converter-" + payloadSize);
+        queueDataList = new ArrayList<QueueData>();
+        for (int i = 0; i < listSize; i++) {
+            QueueData queueData = BenchmarkContext.createQueueData(dataSource, "json-registration", payloadSize);
+            queueData.setDateCreated(new Date());
+            queueDataList.add(queueData);
+        }
+        payload = new HashMap<String, Object>();
+        List<Object> observations = new ArrayList<Object>();
+        for (int i = 0; observations.size() * 40 < payloadSize; i++) {
+            Map<String, Object> observation = new HashMap<String, Object>();
+            observation.put("concept", 5000 + i);
+            observation.put("value", "value-" + i);
+            observations.add(observation);
+        }
+        payload.put("observations", observations);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSession() {
+        Context.clearSession();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.closeSession();
+    }
+
+    @Benchmark
+    public List<Object> convertQueueDataList() {
+        List<Object> objects = new ArrayList<Object>();
+        for (QueueData queueData : queueDataList) {
+            objects.add(WebConverter.convertQueueData(queueData));
+        }
+        return objects;
+    }
+
+    @Benchmark
+    public Object createQueueData() {
+        // the payload is unique per call, the payload table would share a repeated payload by its hash.
+        payload.put("uuid", UUID.randomUUID().toString());
+        SimpleObject propertiesToCreate = new SimpleObject();
+        propertiesToCreate.add("dataSource", dataSource.getUuid());
+        propertiesToCreate.add("discriminator", "json-registration");
+        propertiesToCreate.add("payload", payload);
+        return queueDataResource.create(propertiesToCreate, new RequestContext());
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.model.QueueData;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Save, page and count of the queue data through the data service and the hibernate dao, against a queue table
+ * holding the given number of rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class DataDaoBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000"})
+    public int rows;
+
+    @Param({"512", "8192"})
+    public int payloadSize;
+
+    private BenchmarkContext context;
+
+    private DataService dataService;
+
+    private DataSource dataSource;
+
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        dataService = context.getDataService();
+        dataSource = context.createDataSource("dao-" + payloadSize);
+        for (int i = 0; i < rows; i += 1000) {
+            final int chunk = Math.min(1000, rows - i);
+            context.inTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < chunk; j++) {
+                        dataService.saveQueueData(BenchmarkContext.createQueueData(dataSource,
+                                j % 2 == 0 ? "json-registration" : "json-encounter", payloadSize));
+                    }
+                }
+            });
+            Context.clearSession();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSession() {
+        Context.clearSession();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.closeSession();
+    }
+
+    @Benchmark
+    public QueueData saveQueueData() {
+        QueueData queueData = dataService.saveQueueData(
+                BenchmarkContext.createQueueData(dataSource, "json-registration", payloadSize));
+        Context.evictFromSession(queueData);
+        return queueData;
+    }
+
+    @Benchmark
+    public List<QueueData> getPagedQueueData() {
+        int pageNumber = random.nextInt(rows / PAGE_SIZE) + 1;
+        return dataService.getPagedQueueData(null, pageNumber, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<QueueData> searchPagedQueueData() {
+        return dataService.getPagedQueueData("registration", 1, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Number countQueueData() {
+        return dataService.countQueueData(null);
+    }
+
+    @Benchmark
+    public Number searchCountQueueData() {
+        return dataService.countQueueData("registration");
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.task.QueueDataProcessor;
+import org.openmrs.module.muzima.web.resource.QueueDataResource;
+import org.openmrs.module.webservices.rest.SimpleObject;
+import org.openmrs.module.webservices.rest.web.RequestContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End to end load run for capacity planning. Producer threads post synthetic queue data through the queue data
+ * resource, the same path as the rest clients, while the queue data processor drains the queue until every data is
+ * archived or moved to the error. The run is configured with system properties:
+ * <ul>
+ * <li><code>load.items</code>: number of queue data, default 10000.</li>
+ * <li><code>load.payloadSizes</code>: comma separated payload sizes in characters, default 512,4096,16384.</li>
+ * <li><code>load.discriminators</code>: comma separated discriminators, default json-registration,json-encounter.</li>
+ * <li><code>load.dataSources</code>: number of data sources, default 3.</li>
+ * <li><code>load.errorPercent</code>: percentage of data failing in the handler, default 5.</li>
+ * <li><code>load.producers</code>: number of producer threads, default 2.</li>
+ * <li><code>load.rate</code>: total submitted data per second, default 0 for no throttling.</li>
+ * <li><code>load.seed</code>: seed of the random generator, default 42.</li>
+ * </ul>
+ * Run with <code>java -cp benchmark/target/benchmarks.jar org.openmrs.module.muzima.benchmark.LoadGenerator</code>.
+ */
+public class LoadGenerator {
+
+    private static final long IDLE_PAUSE = 100;
+
+    private final int items;
+
+    private final int[] payloadSizes;
+
+    private final String[] discriminators;
+
+    private final int dataSourceCount;
+
+    private final int errorPercent;
+
+    private final int producers;
+
+    private final int rate;
+
+    private final long seed;
+
+    public LoadGenerator() {
+        items = NumberUtils.toInt(System.getProperty("load.items"), 10000);
+        String[] sizes = StringUtils.split(System.getProperty("load.payloadSizes", "512,4096,16384"), ",");
+        payloadSizes = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            payloadSizes[i] = NumberUtils.toInt(sizes[i].trim(), 512);
+        }
+        discriminators = StringUtils.stripAll(StringUtils.split(
+                System.getProperty("load.discriminators", "json-registration,json-encounter"), ","));
+        dataSourceCount = Math.max(1, NumberUtils.toInt(System.getProperty("load.dataSources"), 3));
+        errorPercent = NumberUtils.toInt(System.getProperty("load.errorPercent"), 5);
+        producers = Math.max(1, NumberUtils.toInt(System.getProperty("load.producers"), 2));
+        rate = NumberUtils.toInt(System.getProperty("load.rate"), 0);
+        seed = NumberUtils.toLong(System.getProperty("load.seed"), 42);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new LoadGenerator().run();
+        System.exit(0);
+    }
+
+    /**
+     * Run the load and print the report.
+     *
+     * @throws Exception when the context can't be started.
+     */
+    public void run() throws Exception {
+        final BenchmarkContext context = BenchmarkContext.start();
+        final List<DataSource> dataSources = new ArrayList<DataSource>();
+        for (int i = 0; i < dataSourceCount; i++) {
+            dataSources.add(context.createDataSource("load-source-" + i));
+        }
+        context.closeSession();
+
+        final LoadRecorder recorder = new LoadRecorder(items);
+        StubQueueDataHandler.setRecorder(recorder);
+        recorder.resetHeapPeak();
+
+        final AtomicInteger submittedCount = new AtomicInteger();
+        final AtomicInteger rejectedCount = new AtomicInteger();
+        List<Thread> producerThreads = new ArrayList<Thread>();
+        long start = System.nanoTime();
+        for (int i = 0; i < producers; i++) {
+            final Random random = new Random(seed + i);
+            final int share = items / producers + (i < items % producers ? 1 : 0);
+            Thread thread = new Thread("muzima-load-producer-" + i) {
+                @Override
+                public void run() {
+                    context.openSession();
+                    try {
+                        produce(share, random, dataSources, recorder, submittedCount, rejectedCount);
+                    } finally {
+                        context.closeSession();
+                    }
+                }
+            };
+            thread.start();
+            producerThreads.add(thread);
+        }
+
+        QueueDataProcessor processor = QueueDataProcessor.getInstance();
+        context.openSession();
+        try {
+            while (true) {
+                boolean producing = isAlive(producerThreads);
+                int processedBefore = recorder.getProcessedCount();
+                processor.processQueueData();
+                if (recorder.getProcessedCount() + rejectedCount.get() >= items) {
+                    break;
+                }
+                if (recorder.getProcessedCount() == processedBefore) {
+                    if (!producing) {
+                        // the producers are done and a full pass found nothing left to process.
+                        break;
+                    }
+                    Thread.sleep(IDLE_PAUSE);
+                }
+            }
+        } finally {
+            context.closeSession();
+            StubQueueDataHandler.setRecorder(null);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Thread thread : producerThreads) {
+            thread.join();
+        }
+        report(recorder, submittedCount.get(), rejectedCount.get(), elapsed);
+    }
+
+    private void produce(final int count, final Random random, final List<DataSource> dataSources,
+                         final LoadRecorder recorder, final AtomicInteger submittedCount,
+                         final AtomicInteger rejectedCount) {
+        QueueDataResource resource = new QueueDataResource();
+        long interval = rate > 0 ? 1000000000L * producers / rate : 0;
+        long next = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (interval > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                next += interval;
+            }
+            String discriminator = random.nextInt(100) < errorPercent
+                    ? BenchmarkContext.ERROR_DISCRIMINATOR : discriminators[random.nextInt(discriminators.length)];
+            String payload = BenchmarkContext.createPayload(payloadSizes[random.nextInt(payloadSizes.length)]);
+            String payloadId = BenchmarkContext.getPayloadId(payload);
+
+            SimpleObject propertiesToCreate = new SimpleObject();
+            propertiesToCreate.add("dataSource", dataSources.get(random.nextInt(dataSources.size())).getUuid());
+            propertiesToCreate.add("discriminator", discriminator);
+            propertiesToCreate.add("payload", payload);
+            recorder.submitted(payloadId);
+            try {
+                resource.create(propertiesToCreate, new RequestContext());
+                submittedCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                recorder.rejected(payloadId);
+                rejectedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean isAlive(final List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void report(final LoadRecorder recorder, final int submitted, final int rejected, final long elapsed) {
+        double seconds = elapsed / 1000000000.0;
+        int processed = recorder.getProcessedCount();
+        System.out.println("muzima load run");
+        System.out.println(String.format("  items: %d, payload sizes: %s, discriminators: %s, data sources: %d, "
+                + "error percent: %d, producers: %d, rate: %s", items, toString(payloadSizes),
+                StringUtils.join(discriminators, ","), dataSourceCount, errorPercent, producers,
+                rate > 0 ? String.valueOf(rate) : "unthrottled"));
+        System.out.println(String.format("  submitted: %d, rejected: %d, processed: %d, not processed: %d, "
+                + "unexpected: %d", submitted, rejected, processed, recorder.getPendingCount(),
+                recorder.getUnknownCount()));
+        System.out.println(String.format("  elapsed: %.3f s", seconds));
+        System.out.println(String.format("  throughput: %.1f items/s", processed / seconds));
+        System.out.println(String.format("  time in queue: p50 %.1f ms, p99 %.1f ms",
+                recorder.getTimeInQueuePercentile(50), recorder.getTimeInQueuePercentile(99)));
+        System.out.println(String.format("  heap high water mark: %.1f MB", recorder.getHeapPeak() / 1048576.0));
+    }
+
+    private String toString(final int[] values) {
+        StringBuilder builder = new StringBuilder();
+        for (int value : values) {
+            if (builder.length() > 0) {
+                builder.append(",");
+            }
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
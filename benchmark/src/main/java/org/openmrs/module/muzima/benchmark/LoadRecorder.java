@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the submission and processing time of every queue data of a load run, and the heap high water mark of the
+ * run. The time in queue of a data is the time between its submission to the ingestion path and the call to its
+ * handler. The data are identified by the uuid embedded in their payload, which is known before the data is saved.
+ */
+public class LoadRecorder {
+
+    private final ConcurrentMap<String, Long> submitted = new ConcurrentHashMap<String, Long>();
+
+    private final long[] timesInQueue;
+
+    private final AtomicInteger processedCount = new AtomicInteger();
+
+    private final AtomicInteger duplicateCount = new AtomicInteger();
+
+    private final AtomicInteger unknownCount = new AtomicInteger();
+
+    public LoadRecorder(final int items) {
+        this.timesInQueue = new long[items];
+    }
+
+    /**
+     * Reset the peak usage of the heap pools, so the high water mark only covers the run.
+     */
+    public void resetHeapPeak() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Get the heap high water mark since the last reset, as the sum of the peak usage of the heap pools.
+     *
+     * @return the heap high water mark in bytes.
+     */
+    public long getHeapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Record the submission of a queue data to the ingestion path.
+     *
+     * @param payloadId the uuid embedded in the payload.
+     */
+    public void submitted(final String payloadId) {
+        submitted.put(payloadId, System.nanoTime());
+    }
+
+    /**
+     * Forget a queue data which was rejected by the ingestion path.
+     *
+     * @param payloadId the uuid embedded in the payload.
+     */
+    public void rejected(final String payloadId) {
+        submitted.remove(payloadId);
+    }
+
+    /**
+     * Record the processing of a queue data, whether the handler succeeds or fails.
+     *
+     * @param payloadId the uuid embedded in the payload.
+     */
+    public void processed(final String payloadId) {
+        Long submittedTime = payloadId == null ? null : submitted.remove(payloadId);
+        if (submittedTime == null) {
+            // either processed twice, or not created by this run.
+            unknownCount.incrementAndGet();
+            return;
+        }
+        int index = processedCount.getAndIncrement();
+        if (index < timesInQueue.length) {
+            timesInQueue[index] = System.nanoTime() - submittedTime;
+        } else {
+            duplicateCount.incrementAndGet();
+        }
+    }
+
+    public int getProcessedCount() {
+        return Math.min(processedCount.get(), timesInQueue.length);
+    }
+
+    public int getPendingCount() {
+        return submitted.size();
+    }
+
+    public int getUnknownCount() {
+        return unknownCount.get() + duplicateCount.get();
+    }
+
+    /**
+     * Get the percentile of the time in queue of the processed data.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the time in queue in milliseconds, or 0 when nothing was processed.
+     */
+    public double getTimeInQueuePercentile(final double percentile) {
+        int count = getProcessedCount();
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(timesInQueue, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1000000.0;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.task.QueueDataProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue data processor loop draining a batch of queue data with the stub handler, including the archive and
+ * error transitions. Each invocation drains one batch, the score is the time per queue data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class QueueDataProcessorBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"0", "10"})
+    public int errorPercent;
+
+    @Param({"512"})
+    public int payloadSize;
+
+    private BenchmarkContext context;
+
+    private DataService dataService;
+
+    private DataSource dataSource;
+
+    private final QueueDataProcessor processor = QueueDataProcessor.getInstance();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkContext.start();
+        dataService = context.getDataService();
+        dataSource = context.createDataSource("processor-" + errorPercent);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillQueue() {
+        context.inTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    String discriminator = i % 100 < errorPercent
+                            ? BenchmarkContext.ERROR_DISCRIMINATOR : "json-registration";
+                    dataService.saveQueueData(BenchmarkContext.createQueueData(dataSource, discriminator, payloadSize));
+                }
+            }
+        });
+        Context.clearSession();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSession() {
+        Context.clearSession();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.closeSession();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void processQueueData() {
+        processor.processQueueData();
+    }
+}
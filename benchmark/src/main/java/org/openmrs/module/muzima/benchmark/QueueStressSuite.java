@@ -0,0 +1,387 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.hibernate.StaleStateException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.AuditableData;
+import org.openmrs.module.muzima.model.DataSource;
+import org.openmrs.module.muzima.model.ErrorData;
+import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.task.QueueDataProcessor;
+import org.openmrs.module.muzima.web.controller.ErrorsController;
+import org.openmrs.module.muzima.web.controller.QueuesController;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrency stress run of the queue processing. For each thread count, the threads are split between queue data
+ * processors, error re-queues through the errors controller and queue deletes through the queues controller, all
+ * running at the same time against the embedded database. After the run the queue is drained and every queue data
+ * of the run must be in exactly one of the queue, error or archive data, or have been deleted. The run is configured
+ * with system properties:
+ * <ul>
+ * <li><code>stress.threads</code>: comma separated thread counts, default 3,6,12.</li>
+ * <li><code>stress.items</code>: number of queue data per thread count, default 2000.</li>
+ * <li><code>stress.duration</code>: duration of the concurrent phase in seconds, default 20.</li>
+ * </ul>
+ * Only the stale data failures of the guarded moves count as conflicts, any other failure of an operation is an error.
+ * The process exits with 1 when an invariant is violated or an operation failed with an error. Run with
+ * <code>java -cp benchmark/target/benchmarks.jar org.openmrs.module.muzima.benchmark.QueueStressSuite</code>.
+ */
+public class QueueStressSuite {
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final int REQUEUE_SIZE = 10;
+
+    private static final int DRAIN_PASSES = 20;
+
+    private static final int MAX_LOGGED_ERRORS = 5;
+
+    private final int[] threadCounts;
+
+    private final int items;
+
+    private final long duration;
+
+    public QueueStressSuite() {
+        String[] counts = StringUtils.split(System.getProperty("stress.threads", "3,6,12"), ",");
+        threadCounts = new int[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            threadCounts[i] = Math.max(3, NumberUtils.toInt(counts[i].trim(), 3));
+        }
+        items = NumberUtils.toInt(System.getProperty("stress.items"), 2000);
+        duration = NumberUtils.toLong(System.getProperty("stress.duration"), 20) * 1000;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        boolean passed = new QueueStressSuite().run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Run the stress rounds for every thread count and print the report.
+     *
+     * @return true when no invariant was violated.
+     * @throws Exception when the context can't be started.
+     */
+    public boolean run() throws Exception {
+        BenchmarkContext context = BenchmarkContext.start();
+        context.closeSession();
+        boolean passed = true;
+        for (int threadCount : threadCounts) {
+            passed &= new Round(context, threadCount).run();
+        }
+        System.out.println(passed ? "muzima queue stress passed" : "muzima queue stress FAILED");
+        return passed;
+    }
+
+    private enum Operation {
+        PROCESS, REQUEUE, DELETE
+    }
+
+    /**
+     * Counters of one operation type.
+     */
+    private static class Counter {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final AtomicInteger conflicts = new AtomicInteger();
+
+        private final AtomicInteger errors = new AtomicInteger();
+
+        private final AtomicLong nanos = new AtomicLong();
+
+        private void record(final long start, final boolean conflict, final boolean error) {
+            calls.incrementAndGet();
+            nanos.addAndGet(System.nanoTime() - start);
+            if (conflict) {
+                conflicts.incrementAndGet();
+            }
+            if (error) {
+                errors.incrementAndGet();
+            }
+        }
+
+        private String format(final double seconds) {
+            int count = calls.get();
+            return String.format("%d calls, %.1f calls/s, %.2f ms/call, %d conflicts, %d errors", count,
+                    count / seconds, count == 0 ? 0 : nanos.get() / 1000000.0 / count, conflicts.get(), errors.get());
+        }
+    }
+
+    /**
+     * A stress round with its own data source, so the invariants only look at the data of the round.
+     */
+    private class Round {
+
+        private final BenchmarkContext context;
+
+        private final int threadCount;
+
+        private final Map<Operation, Counter> counters = new HashMap<Operation, Counter>();
+
+        private final Set<String> deleted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private final Set<String> created = new HashSet<String>();
+
+        private DataSource dataSource;
+
+        private volatile boolean running = true;
+
+        private Round(final BenchmarkContext context, final int threadCount) {
+            this.context = context;
+            this.threadCount = threadCount;
+            for (Operation operation : Operation.values()) {
+                counters.put(operation, new Counter());
+            }
+        }
+
+        private boolean run() throws InterruptedException {
+            seed();
+            int archivedBefore = countArchived();
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int i = 0; i < threadCount; i++) {
+                final Operation operation = Operation.values()[i % Operation.values().length];
+                final Random random = new Random(i);
+                Thread thread = new Thread("muzima-stress-" + operation.name().toLowerCase() + "-" + i) {
+                    @Override
+                    public void run() {
+                        context.openSession();
+                        try {
+                            startLatch.await();
+                            while (running) {
+                                execute(operation, random);
+                                Context.clearSession();
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            context.closeSession();
+                        }
+                    }
+                };
+                thread.start();
+                threads.add(thread);
+            }
+            long start = System.nanoTime();
+            startLatch.countDown();
+            Thread.sleep(duration);
+            running = false;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1000000000.0;
+            int archived = countArchived() - archivedBefore;
+            drain();
+            return report(seconds, archived);
+        }
+
+        private void seed() {
+            context.openSession();
+            try {
+                dataSource = context.createDataSource("stress-" + threadCount + "-" + System.currentTimeMillis());
+                final DataService dataService = context.getDataService();
+                context.inTransaction(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < items; i++) {
+                            // a third of the data fails at first, so there is always something to re-queue.
+                            String discriminator = i % 3 == 0 ? BenchmarkContext.FLAKY_DISCRIMINATOR : "json-registration";
+                            QueueData queueData = BenchmarkContext.createQueueData(dataSource, discriminator, 256);
+                            dataService.saveQueueData(queueData);
+                            created.add(BenchmarkContext.getPayloadId(queueData.getPayload()));
+                        }
+                    }
+                });
+            } finally {
+                context.closeSession();
+            }
+        }
+
+        private void execute(final Operation operation, final Random random) {
+            DataService dataService = Context.getService(DataService.class);
+            long start = System.nanoTime();
+            boolean conflict = false;
+            boolean error = false;
+            try {
+                if (operation == Operation.PROCESS) {
+                    QueueDataProcessor.getInstance().processQueueData();
+                } else if (operation == Operation.REQUEUE) {
+                    List<String> uuidList = new ArrayList<String>();
+                    for (ErrorData errorData : dataService.getPagedErrorData(null, 1, PAGE_SIZE)) {
+                        if (uuidList.size() < REQUEUE_SIZE && random.nextBoolean()) {
+                            uuidList.add(errorData.getUuid());
+                        }
+                    }
+                    Map<String, Object> map = new HashMap<String, Object>();
+                    map.put("uuidList", uuidList);
+                    new ErrorsController().reQueue(map);
+                } else {
+                    List<QueueData> queueDataList = dataService.getPagedQueueData(null, 1, PAGE_SIZE);
+                    if (queueDataList.isEmpty()) {
+                        return;
+                    }
+                    QueueData queueData = queueDataList.get(random.nextInt(queueDataList.size()));
+                    // deleting is rare compared to processing, only the unlucky ones go.
+                    if (random.nextInt(20) != 0) {
+                        return;
+                    }
+                    String payloadId = BenchmarkContext.getPayloadId(queueData.getPayload());
+                    Map<String, Object> map = new HashMap<String, Object>();
+                    map.put("uuidList", Collections.singletonList(queueData.getUuid()));
+                    new QueuesController().deleteQueue(map);
+                    deleted.add(payloadId);
+                }
+            } catch (RuntimeException e) {
+                if (isConflict(e)) {
+                    // the other threads moved the data first, the transaction rolled back.
+                    conflict = true;
+                } else {
+                    error = true;
+                    if (counters.get(operation).errors.get() < MAX_LOGGED_ERRORS) {
+                        System.err.println(operation.name().toLowerCase() + " failed with an error:");
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                counters.get(operation).record(start, conflict, error);
+            }
+        }
+
+        private boolean isConflict(final Throwable throwable) {
+            for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+                if (cause instanceof StaleStateException || cause instanceof ConcurrencyFailureException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void drain() {
+            context.openSession();
+            try {
+                QueueDataProcessor processor = QueueDataProcessor.getInstance();
+                for (int i = 0; i < DRAIN_PASSES && !getQueueData().isEmpty(); i++) {
+                    processor.processQueueData();
+                    Context.clearSession();
+                }
+            } finally {
+                context.closeSession();
+            }
+        }
+
+        private List<QueueData> getQueueData() {
+            return filter(Context.getService(DataService.class).getAllQueueData());
+        }
+
+        private int countArchived() {
+            context.openSession();
+            try {
+                return filter(Context.getService(DataService.class).getAllArchiveData()).size();
+            } finally {
+                context.closeSession();
+            }
+        }
+
+        private <T extends AuditableData> List<T> filter(final Collection<T> data) {
+            List<T> filtered = new ArrayList<T>();
+            for (T datum : data) {
+                if (dataSource.getUuid().equals(datum.getDataSource().getUuid())) {
+                    filtered.add(datum);
+                }
+            }
+            return filtered;
+        }
+
+        private boolean report(final double seconds, final int archived) {
+            Map<String, Integer> queued;
+            Map<String, Integer> errors;
+            Map<String, Integer> archives;
+            context.openSession();
+            try {
+                DataService dataService = Context.getService(DataService.class);
+                queued = countByPayload(filter(dataService.getAllQueueData()));
+                errors = countByPayload(filter(dataService.getAllErrorData()));
+                archives = countByPayload(filter(dataService.getAllArchiveData()));
+            } finally {
+                context.closeSession();
+            }
+
+            int lost = 0;
+            int duplicated = 0;
+            int misplaced = 0;
+            for (String payloadId : created) {
+                int locations = (queued.containsKey(payloadId) ? 1 : 0) + (errors.containsKey(payloadId) ? 1 : 0)
+                        + (archives.containsKey(payloadId) ? 1 : 0);
+                if (locations == 0 && !deleted.contains(payloadId)) {
+                    lost++;
+                } else if (locations > 1) {
+                    misplaced++;
+                }
+                if (count(queued, payloadId) > 1 || count(errors, payloadId) > 1 || count(archives, payloadId) > 1) {
+                    duplicated++;
+                }
+            }
+
+            System.out.println(String.format("threads: %d, items: %d, duration: %.1f s", threadCount, items, seconds));
+            System.out.println(String.format("  archived: %d, %.1f items/s", archived, archived / seconds));
+            for (Operation operation : Operation.values()) {
+                System.out.println("  " + operation.name().toLowerCase() + ": " + counters.get(operation).format(seconds));
+            }
+            System.out.println(String.format("  queued: %d, errors: %d, archived: %d, deleted: %d",
+                    queued.size(), errors.size(), archives.size(), deleted.size()));
+            System.out.println(String.format("  lost: %d, duplicated: %d, in more than one table: %d",
+                    lost, duplicated, misplaced));
+            int errorCount = 0;
+            for (Counter counter : counters.values()) {
+                errorCount += counter.errors.get();
+            }
+            return lost == 0 && duplicated == 0 && misplaced == 0 && errorCount == 0;
+        }
+
+        private Map<String, Integer> countByPayload(final List<? extends AuditableData> data) {
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+            for (AuditableData datum : data) {
+                String payloadId = BenchmarkContext.getPayloadId(datum.getPayload());
+                counts.put(payloadId, count(counts, payloadId) + 1);
+            }
+            return counts;
+        }
+
+        private int count(final Map<String, Integer> counts, final String payloadId) {
+            Integer count = counts.get(payloadId);
+            return count == null ? 0 : count;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.benchmark;
+
+import org.openmrs.annotation.Handler;
+import org.openmrs.module.muzima.exception.QueueProcessorException;
+import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.model.handler.QueueDataHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queue data handler doing no work, so the processor benchmark measures the processor and the lifecycle transitions
+ * only. Queue data with the error discriminator fails, to exercise the error path, and queue data with the flaky
+ * discriminator fails half of the time, so re-queued data eventually gets archived. The load generator listens to the
+ * processed queue data to measure the time spent in the queue.
+ */
+@Component
+@Handler(supports = QueueData.class)
+public class StubQueueDataHandler implements QueueDataHandler {
+
+    private static volatile LoadRecorder recorder;
+
+    /**
+     * Set the recorder notified of every processed queue data.
+     *
+     * @param recorder the recorder, or null to stop recording.
+     */
+    public static void setRecorder(final LoadRecorder recorder) {
+        StubQueueDataHandler.recorder = recorder;
+    }
+
+    @Override
+    public void process(final QueueData queueData) throws QueueProcessorException {
+        LoadRecorder currentRecorder = recorder;
+        if (currentRecorder != null) {
+            currentRecorder.processed(BenchmarkContext.getPayloadId(queueData.getPayload()));
+        }
+        if (BenchmarkContext.ERROR_DISCRIMINATOR.equals(queueData.getDiscriminator())) {
+            throw new QueueProcessorException("Benchmark failure for " + queueData.getUuid());
+        }
+        if (BenchmarkContext.FLAKY_DISCRIMINATOR.equals(queueData.getDiscriminator()) && Math.random() < 0.5) {
+            throw new QueueProcessorException("Benchmark flaky failure for " + queueData.getUuid());
+        }
+    }
+
+    @Override
+    public boolean accept(final QueueData queueData) {
+        return true;
+    }
+}
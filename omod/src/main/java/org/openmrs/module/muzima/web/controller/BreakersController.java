@@ -0,0 +1,51 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.web.controller;
+
+import org.openmrs.module.muzima.task.QueueDataProcessor;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Circuit breakers of the queue data processor, one per discriminator which failed since the module started. Posting a
+ * discriminator closes its breaker.
+ */
+@Controller
+@RequestMapping(value = "/module/muzima/breakers.json")
+public class BreakersController {
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> getBreakers() {
+        QueueDataProcessor processor = QueueDataProcessor.getInstance();
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("threshold", processor.getBreakerThreshold());
+        response.put("coolDown", processor.getBreakerCoolDown());
+        response.put("held", processor.getTotalHeld());
+        response.put("objects", processor.getBreakerStates());
+        return response;
+    }
+
+    @RequestMapping(method = RequestMethod.POST)
+    public void resetBreaker(final @RequestBody Map<String, Object> map) {
+        Object discriminator = map.get("discriminator");
+        QueueDataProcessor.getInstance().resetBreaker(discriminator == null ? null : discriminator.toString());
+    }
+}
@@ -16,7 +16,6 @@ package org.openmrs.module.muzima.web.controller;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.muzima.api.service.DataService;
 import org.openmrs.module.muzima.model.ErrorData;
-import org.openmrs.module.muzima.model.QueueData;
 import org.openmrs.module.muzima.web.utils.WebConverter;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -57,13 +56,13 @@ public class ErrorsController {
 
     @RequestMapping(method = RequestMethod.POST)
     public void reQueue(final @RequestBody Map<String, Object> map) {
-        String[] uuidList = (String[]) map.get("uuidList");
         DataService dataService = Context.getService(DataService.class);
-        for (String uuid : uuidList) {
+        for (String uuid : WebConverter.convertUuidList(map.get("uuidList"))) {
             ErrorData errorData = dataService.getErrorDataByUuid(uuid);
-            QueueData queueData = new QueueData(errorData);
-            dataService.saveQueueData(queueData);
-            dataService.purgeErrorData(errorData);
+            // the error data might be re-queued already by another request.
+            if (errorData != null) {
+                dataService.requeueErrorData(errorData);
+            }
         }
     }
 }
@@ -0,0 +1,60 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.web.controller;
+
+import org.openmrs.module.muzima.monitor.DaoMetrics;
+import org.openmrs.module.muzima.monitor.LatencyTracker;
+import org.openmrs.module.muzima.monitor.RollingLatency;
+import org.openmrs.module.muzima.task.QueueDataProcessor;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rolling timing statistics of the module, kept in memory since the module started.
+ */
+@Controller
+@RequestMapping(value = "/module/muzima/metrics.json")
+public class MetricsController {
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        DaoMetrics daoMetrics = DaoMetrics.getInstance();
+        response.put("slowThreshold", daoMetrics.getSlowThreshold());
+        response.put("dao", daoMetrics.getStatistics());
+        LatencyTracker latencyTracker = LatencyTracker.getInstance();
+        Map<String, Object> latency = new LinkedHashMap<String, Object>();
+        latency.put("sloMillis", latencyTracker.getSlo());
+        latency.put("windowHours", RollingLatency.SLICES);
+        latency.put("sources", latencyTracker.getStatistics());
+        response.put("timeInQueue", latency);
+        QueueDataProcessor processor = QueueDataProcessor.getInstance();
+        Map<String, Object> handlers = new LinkedHashMap<String, Object>();
+        handlers.put("timeouts", processor.getTotalTimeouts());
+        handlers.put("deferred", processor.getTotalDeferred());
+        handlers.put("busy", processor.getBusyHandlers());
+        response.put("handlers", handlers);
+        Map<String, Object> breakers = new LinkedHashMap<String, Object>();
+        breakers.put("held", processor.getTotalHeld());
+        breakers.put("discriminators", processor.getBreakerStates());
+        response.put("breakers", breakers);
+        return response;
+    }
+}
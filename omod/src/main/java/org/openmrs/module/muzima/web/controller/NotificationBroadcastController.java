@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.web.controller;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Location;
+import org.openmrs.Person;
+import org.openmrs.Role;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.model.NotificationData;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Broadcast a notification to a set of receivers. The request body contains the subject, payload and sender uuid of
+ * the notification and one of the receiver set: the "receivers" person uuids, the "role" name or the "location" uuid,
+ * for example <code>{"subject": "...", "payload": "...", "sender": "...", "role": "Provider"}</code>. Broadcasting
+ * requires the "Broadcast Muzima Notification" privilege.
+ */
+@Controller
+@RequestMapping(value = "/module/muzima/notificationBroadcast.json")
+public class NotificationBroadcastController {
+
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, Object> broadcast(final @RequestBody Map<String, Object> map) {
+        if (!Context.isAuthenticated()) {
+            throw new APIAuthenticationException("Broadcasting notification requires an authenticated user.");
+        }
+        if (!Context.hasPrivilege(DataService.BROADCAST_NOTIFICATION_PRIVILEGE)) {
+            throw new APIAuthenticationException("Broadcasting notification requires the "
+                    + DataService.BROADCAST_NOTIFICATION_PRIVILEGE + " privilege.");
+        }
+        String subject = getString(map, "subject");
+        if (StringUtils.isBlank(subject)) {
+            throw new APIException("Broadcast requires the subject.");
+        }
+        String payload = getString(map, "payload");
+        if (payload == null) {
+            throw new APIException("Broadcast requires the payload.");
+        }
+        String senderUuid = getString(map, "sender");
+        if (StringUtils.isBlank(senderUuid)) {
+            throw new APIException("Broadcast requires the sender.");
+        }
+        Person sender = Context.getPersonService().getPersonByUuid(senderUuid);
+        if (sender == null || sender.isVoided()) {
+            throw new APIException("Unknown sender: " + senderUuid);
+        }
+        NotificationData notificationData = new NotificationData();
+        notificationData.setSubject(subject);
+        notificationData.setPayload(payload);
+        notificationData.setSender(sender);
+
+        DataService dataService = Context.getService(DataService.class);
+        int created;
+        if (map.get("receivers") instanceof List) {
+            List<Person> receivers = new ArrayList<Person>();
+            for (Object uuid : (List<?>) map.get("receivers")) {
+                Person receiver = Context.getPersonService().getPersonByUuid(String.valueOf(uuid));
+                if (receiver != null) {
+                    receivers.add(receiver);
+                }
+            }
+            created = dataService.broadcastNotificationData(notificationData, receivers);
+        } else if (map.get("role") != null) {
+            Role role = Context.getUserService().getRole(getString(map, "role"));
+            if (role == null) {
+                throw new APIException("Unknown role: " + map.get("role"));
+            }
+            created = dataService.broadcastNotificationData(notificationData, role);
+        } else if (map.get("location") != null) {
+            Location location = Context.getLocationService().getLocationByUuid(getString(map, "location"));
+            if (location == null) {
+                throw new APIException("Unknown location: " + map.get("location"));
+            }
+            created = dataService.broadcastNotificationData(notificationData, location);
+        } else {
+            throw new APIException("Broadcast requires the receivers, role or location.");
+        }
+
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("created", created);
+        return response;
+    }
+
+    private String getString(final Map<String, Object> map, final String key) {
+        Object value = map.get(key);
+        if (value != null && !(value instanceof String)) {
+            throw new APIException("Broadcast expects a string for " + key + ".");
+        }
+        return (String) value;
+    }
+}
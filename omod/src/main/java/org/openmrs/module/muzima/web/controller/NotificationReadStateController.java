@@ -0,0 +1,56 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.web.controller;
+
+import org.openmrs.Person;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.api.service.DataService;
+import org.openmrs.module.muzima.web.utils.WebConverter;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mark a batch of notification read or unread. The request body contains the notification uuids and the read state,
+ * for example <code>{"uuidList": ["..."], "read": true}</code>. The read state defaults to read. Only the notification
+ * received by the authenticated user are changed.
+ */
+@Controller
+@RequestMapping(value = "/module/muzima/notificationReadState.json")
+public class NotificationReadStateController {
+
+    @RequestMapping(method = RequestMethod.POST)
+    @ResponseBody
+    public Map<String, Object> markRead(final @RequestBody Map<String, Object> map) {
+        if (!Context.isAuthenticated()) {
+            throw new APIAuthenticationException("Marking notification read requires an authenticated user.");
+        }
+        List<String> uuidList = WebConverter.convertUuidList(map.get("uuidList"));
+        Object read = map.get("read");
+        boolean readState = read == null || Boolean.valueOf(String.valueOf(read));
+
+        DataService dataService = Context.getService(DataService.class);
+        Person receiver = Context.getAuthenticatedUser().getPerson();
+        Map<String, Object> response = new HashMap<String, Object>();
+        response.put("updated", dataService.markNotificationDataRead(receiver, uuidList, readState));
+        return response;
+    }
+}
@@ -56,11 +56,13 @@ public class QueuesController {
 
     @RequestMapping(method = RequestMethod.POST)
     public void deleteQueue(final @RequestBody Map<String, Object> map) {
-        String[] uuidList = (String[]) map.get("uuidList");
         DataService dataService = Context.getService(DataService.class);
-        for (String uuid : uuidList) {
+        for (String uuid : WebConverter.convertUuidList(map.get("uuidList"))) {
             QueueData queueData = dataService.getQueueDataByUuid(uuid);
-            dataService.purgeQueueData(queueData);
+            // the queue data might be processed already, or be moved by the processor while it is deleted.
+            if (queueData != null) {
+                dataService.purgeQueueDataIfExists(queueData);
+            }
         }
     }
 }
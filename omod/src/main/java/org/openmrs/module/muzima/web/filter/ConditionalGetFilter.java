@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.web.filter;
+
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.version.DataVersions;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conditional GET for the muzima list and detail endpoints. The weak ETag of a response is made of the version of
+ * the table behind the endpoint, the query string and the user. When the client sends back an ETag which is still
+ * current, the filter answers 304 Not Modified without running the query or serializing anything.
+ */
+public class ConditionalGetFilter implements Filter {
+
+    private static final Map<String, String> ENDPOINT_TABLES = new LinkedHashMap<String, String>();
+
+    static {
+        ENDPOINT_TABLES.put("/module/muzima/queues.json", DataVersions.QUEUE);
+        ENDPOINT_TABLES.put("/module/muzima/queue.json", DataVersions.QUEUE);
+        ENDPOINT_TABLES.put("/module/muzima/errors.json", DataVersions.ERROR);
+        ENDPOINT_TABLES.put("/module/muzima/error.json", DataVersions.ERROR);
+        ENDPOINT_TABLES.put("/module/muzima/sources.json", DataVersions.SOURCE);
+        ENDPOINT_TABLES.put("/module/muzima/source.json", DataVersions.SOURCE);
+        ENDPOINT_TABLES.put("/ws/rest/v1/muzima/queueData", DataVersions.QUEUE);
+        ENDPOINT_TABLES.put("/ws/rest/v1/muzima/notificationData", DataVersions.NOTIFICATION);
+    }
+
+    private volatile DataVersions dataVersions;
+
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse,
+                         final FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+        String table = getTable(request);
+        // the long poll must wait for a change instead of answering right away, and the sync holds back the data of the
+        // last seconds, so its result changes with the clock and not only with the table version.
+        if (!"GET".equals(request.getMethod()) || table == null || request.getParameter("wait") != null
+                || request.getParameter("syncToken") != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String version = getVersion(table);
+        if (version == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String eTag = createETag(request, version);
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (matches(ifNoneMatch, eTag)) {
+            response.setHeader("ETag", eTag);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setHeader("ETag", eTag);
+        // the client must check the ETag every time, a cached response is only valid for the same version.
+        response.setHeader("Cache-Control", "private, no-cache");
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private boolean matches(final String ifNoneMatch, final String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals(eTag) || trimmed.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getTable(final HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Map.Entry<String, String> entry : ENDPOINT_TABLES.entrySet()) {
+            if (path.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String getVersion(final String table) {
+        if (dataVersions == null) {
+            List<DataVersions> registeredVersions = Context.getRegisteredComponents(DataVersions.class);
+            if (registeredVersions.isEmpty()) {
+                return null;
+            }
+            dataVersions = registeredVersions.get(0);
+        }
+        return dataVersions.getVersion(table);
+    }
+
+    private String createETag(final HttpServletRequest request, final String version) {
+        User user = Context.getAuthenticatedUser();
+        String query = request.getRequestURI() + "?" + request.getQueryString();
+        return "W/\"" + version + "-" + (user == null ? "" : user.getUserId()) + "-"
+                + Integer.toHexString(query.hashCode()) + "\"";
+    }
+}
@@ -13,11 +13,13 @@
  */
 package org.openmrs.module.muzima.web.resource;
 
-import org.openmrs.Person;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.muzima.api.service.DataService;
 import org.openmrs.module.muzima.model.NotificationData;
 import org.openmrs.module.muzima.web.controller.MuzimaRestController;
+import org.openmrs.module.muzima.web.utils.RepresentationCache;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RequestContext;
 import org.openmrs.module.webservices.rest.web.RestConstants;
@@ -27,14 +29,15 @@ import org.openmrs.module.webservices.rest.web.representation.DefaultRepresentat
 import org.openmrs.module.webservices.rest.web.representation.FullRepresentation;
 import org.openmrs.module.webservices.rest.web.representation.Representation;
 import org.openmrs.module.webservices.rest.web.resource.api.PageableResult;
+import org.openmrs.module.webservices.rest.web.resource.impl.AlreadyPaged;
 import org.openmrs.module.webservices.rest.web.resource.impl.DataDelegatingCrudResource;
 import org.openmrs.module.webservices.rest.web.resource.impl.DelegatingResourceDescription;
 import org.openmrs.module.webservices.rest.web.resource.impl.EmptySearchResult;
-import org.openmrs.module.webservices.rest.web.resource.impl.NeedsPaging;
 import org.openmrs.module.webservices.rest.web.response.ConversionException;
 import org.openmrs.module.webservices.rest.web.response.ResourceDoesNotSupportOperationException;
 import org.openmrs.module.webservices.rest.web.response.ResponseException;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -43,6 +46,15 @@ import java.util.List;
 @Resource(name = RestConstants.VERSION_1 + MuzimaRestController.MUZIMA_NAMESPACE + "/notificationData", supportedClass = NotificationData.class, supportedOpenmrsVersions = {"1.8.*", "1.9.*"})
 public class NotificationDataResource extends DataDelegatingCrudResource<NotificationData> {
 
+    /**
+     * Name of the cache of the rendered representations of the recently served notification, shared by all requests.
+     * Rendering a notification loads the sender and the receiver, while a cached representation is served without
+     * touching them.
+     */
+    private static final String REPRESENTATION_CACHE = "muzimaNotificationRepresentationCache";
+
+    private RepresentationCache representationCache;
+
     /**
      * Gets the delegate object with the given unique id. Implementations may decide whether
      * "unique id" means a uuid, or if they also want to retrieve delegates based on a unique
@@ -72,6 +84,7 @@ public class NotificationDataResource extends DataDelegatingCrudResource<Notific
     protected void delete(final NotificationData delegate, final String reason, final RequestContext context) throws ResponseException {
         DataService dataService = Context.getService(DataService.class);
         dataService.voidNotificationData(delegate, reason);
+        evictRepresentation(delegate.getUuid());
     }
 
     /**
@@ -106,7 +119,47 @@ public class NotificationDataResource extends DataDelegatingCrudResource<Notific
     @Override
     public NotificationData save(final NotificationData delegate) {
         DataService dataService = Context.getService(DataService.class);
-        return dataService.saveNotificationData(delegate);
+        NotificationData notificationData = dataService.saveNotificationData(delegate);
+        evictRepresentation(notificationData.getUuid());
+        return notificationData;
+    }
+
+    /**
+     * Serve the representation from the cache when the notification didn't change since it was rendered for the same
+     * representation and user. The version of the notification covers every change: saving, voiding and marking read
+     * all move the date changed. Changes of the sender or the receiver evict the notification from the cache.
+     */
+    @Override
+    public SimpleObject asRepresentation(final NotificationData delegate, final Representation representation)
+            throws ConversionException {
+        RepresentationCache cache = getRepresentationCache();
+        if (cache == null) {
+            return super.asRepresentation(delegate, representation);
+        }
+        String version = delegate.getDateChanged() + "|" + delegate.getDateRead() + "|" + delegate.isVoided();
+        User user = Context.getAuthenticatedUser();
+        SimpleObject simpleObject =
+                cache.get(delegate.getUuid(), version, representation.getRepresentation(), user);
+        if (simpleObject == null) {
+            simpleObject = super.asRepresentation(delegate, representation);
+            cache.put(delegate.getUuid(), version, representation.getRepresentation(), user, simpleObject,
+                    delegate.getSender().getUuid(), delegate.getReceiver().getUuid());
+        }
+        return simpleObject;
+    }
+
+    private RepresentationCache getRepresentationCache() {
+        if (representationCache == null) {
+            representationCache = RepresentationCache.getRegisteredCache(REPRESENTATION_CACHE);
+        }
+        return representationCache;
+    }
+
+    private void evictRepresentation(final String uuid) {
+        RepresentationCache cache = getRepresentationCache();
+        if (cache != null) {
+            cache.evict(uuid);
+        }
     }
 
     /**
@@ -122,6 +175,10 @@ public class NotificationDataResource extends DataDelegatingCrudResource<Notific
             DelegatingResourceDescription description = new DelegatingResourceDescription();
             description.addProperty("uuid");
             description.addProperty("display", findMethod("getDisplayString"));
+            description.addProperty("dateRead");
+            description.addProperty("expireDate");
+            description.addProperty("voided");
+            description.addProperty("syncToken", findMethod("getSyncToken"));
             description.addSelfLink();
             description.addLink("full", ".?v=" + RestConstants.REPRESENTATION_FULL);
             return description;
@@ -133,6 +190,10 @@ public class NotificationDataResource extends DataDelegatingCrudResource<Notific
             description.addProperty("payload");
             description.addProperty("forPerson", Representation.DEFAULT);
             description.addProperty("fromPerson", Representation.DEFAULT);
+            description.addProperty("dateRead");
+            description.addProperty("expireDate");
+            description.addProperty("voided");
+            description.addProperty("syncToken", findMethod("getSyncToken"));
             description.addSelfLink();
             return description;
         } else {
@@ -163,32 +224,108 @@ public class NotificationDataResource extends DataDelegatingCrudResource<Notific
     }
 
     /**
-     * Implementations should override this method if they are actually searchable.
+     * Implementations should override this method if they are actually searchable. The search term, start index and
+     * limit are pushed down to the database, so only the requested page is loaded.
      */
     @Override
     protected PageableResult doSearch(final RequestContext context) {
         String personUuid;
 
         DataService dataService = Context.getService(DataService.class);
+        String search = context.getRequest().getParameter("q");
 
         personUuid = context.getRequest().getParameter("receiver");
         if (personUuid != null) {
-            Person person = Context.getPersonService().getPersonByUuid(personUuid);
-            if (person == null)
+            Integer personId = dataService.getPersonIdByUuid(personUuid);
+            if (personId == null)
                 return new EmptySearchResult();
-            List<NotificationData> notificationDataList = dataService.getNotificationDataByReceiver(person);
-            return new NeedsPaging<NotificationData>(notificationDataList, context);
+            String syncToken = context.getRequest().getParameter("syncToken");
+            if (syncToken != null) {
+                return doSync(personId, syncToken, context);
+            }
+            String read = context.getRequest().getParameter("read");
+            Boolean readState = StringUtils.isBlank(read) ? null : Boolean.valueOf(read);
+            return doRange(dataService, personId, null, search, readState, context);
         }
 
         personUuid = context.getRequest().getParameter("sender");
         if (personUuid != null) {
-            Person person = Context.getPersonService().getPersonByUuid(personUuid);
-            if (person == null)
+            Integer personId = dataService.getPersonIdByUuid(personUuid);
+            if (personId == null)
                 return new EmptySearchResult();
-            List<NotificationData> notificationDataList = dataService.getNotificationDataBySender(person);
-            return new NeedsPaging<NotificationData>(notificationDataList, context);
+            return doRange(dataService, null, personId, search, null, context);
         }
         // TODO: in the future, this could be searching by category of the notification.
-        return new NeedsPaging<NotificationData>(dataService.getAllNotificationData(), context);
+        return doRange(dataService, null, null, search, null, context);
+    }
+
+    /**
+     * Get the notification starting at the start index of the request, the start index doesn't need to be a multiple
+     * of the limit.
+     */
+    private PageableResult doRange(final DataService dataService, final Integer receiverId, final Integer senderId,
+                                   final String search, final Boolean read, final RequestContext context) {
+        // one extra notification to find out whether there are more notification after this page.
+        List<NotificationData> notificationDataList = dataService.getNotificationDataRange(receiverId, senderId,
+                search, read, context.getStartIndex(), context.getLimit() + 1);
+        boolean hasMoreResults = notificationDataList.size() > context.getLimit();
+        if (hasMoreResults) {
+            notificationDataList = notificationDataList.subList(0, context.getLimit());
+        }
+        return new AlreadyPaged<NotificationData>(context, notificationDataList, hasMoreResults);
+    }
+
+    /**
+     * Incremental sync for the receiver. The sync token is the "syncToken" of the last notification the client has
+     * received (an empty token starts from the beginning), the result contains the notification created, changed or
+     * voided after that notification. With the "wait" parameter (in seconds) the request is held open until a new
+     * notification for the receiver is committed or the wait is over. A waiting request holds its request thread, so
+     * only a limited number of clients wait at the same time, see the "muzima.notification.maxWaiters" property.
+     */
+    private PageableResult doSync(final Integer personId, final String syncToken, final RequestContext context) {
+        Date dateChanged = null;
+        Integer id = null;
+        if (StringUtils.isNotBlank(syncToken)) {
+            String[] cursor = syncToken.split("-");
+            if (cursor.length != 2 || !StringUtils.isNumeric(cursor[0]) || !StringUtils.isNumeric(cursor[1])) {
+                throw new ConversionException("Invalid sync token: " + syncToken);
+            }
+            dateChanged = new Date(Long.parseLong(cursor[0]));
+            id = Integer.valueOf(cursor[1]);
+        }
+        DataService dataService = Context.getService(DataService.class);
+        // one extra notification to find out whether there are more changes after this page.
+        List<NotificationData> notificationDataList;
+        String wait = context.getRequest().getParameter("wait");
+        if (StringUtils.isNumeric(wait) && StringUtils.isNotEmpty(wait)) {
+            notificationDataList = dataService.awaitNotificationDataByReceiverChangedSince(personId, dateChanged, id,
+                    context.getLimit() + 1, Long.parseLong(wait) * 1000);
+        } else {
+            notificationDataList =
+                    dataService.getNotificationDataByReceiverChangedSince(personId, dateChanged, id, context.getLimit() + 1);
+        }
+        boolean hasMoreResults = notificationDataList.size() > context.getLimit();
+        if (hasMoreResults) {
+            notificationDataList = notificationDataList.subList(0, context.getLimit());
+        }
+        return new AlreadyPaged<NotificationData>(context, notificationDataList, hasMoreResults);
+    }
+
+    /**
+     * Get the sync token of the notification, the client sends back the token of the last received notification to
+     * get the changes after that notification.
+     *
+     * @param notificationData the notification.
+     * @return the sync token of the notification.
+     */
+    public String getSyncToken(final NotificationData notificationData) {
+        Date dateChanged = notificationData.getDateChanged();
+        if (dateChanged == null) {
+            dateChanged = notificationData.getDateCreated();
+        }
+        if (dateChanged == null) {
+            return null;
+        }
+        return dateChanged.getTime() + "-" + notificationData.getId();
     }
 }
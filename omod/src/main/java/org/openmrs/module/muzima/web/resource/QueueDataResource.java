@@ -15,11 +15,14 @@ package org.openmrs.module.muzima.web.resource;
 
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.muzima.api.service.DataService;
 import org.openmrs.module.muzima.model.DataSource;
 import org.openmrs.module.muzima.model.QueueData;
+import org.openmrs.module.muzima.monitor.FlightEvents;
 import org.openmrs.module.muzima.web.controller.MuzimaRestController;
+import org.openmrs.module.muzima.web.utils.RepresentationCache;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.ConversionUtil;
 import org.openmrs.module.webservices.rest.web.RequestContext;
@@ -48,6 +51,14 @@ import java.util.Map;
 @Resource(name = RestConstants.VERSION_1 + MuzimaRestController.MUZIMA_NAMESPACE + "/queueData", supportedClass = QueueData.class, supportedOpenmrsVersions = {"1.8.*", "1.9.*"})
 public class QueueDataResource extends DataDelegatingCrudResource<QueueData> {
 
+    /**
+     * Name of the cache of the rendered representations of the recently served queue data, the full representation
+     * carries the payload which is expensive to convert again on every request.
+     */
+    private static final String REPRESENTATION_CACHE = "muzimaQueueDataRepresentationCache";
+
+    private RepresentationCache representationCache;
+
     /**
      *
      * Gets the delegate object with the given unique id. Implementations may decide whether
@@ -113,7 +124,40 @@ public class QueueDataResource extends DataDelegatingCrudResource<QueueData> {
     @Override
     public QueueData save(final QueueData delegate) {
         DataService dataService = Context.getService(DataService.class);
-        return dataService.saveQueueData(delegate);
+        QueueData queueData = dataService.saveQueueData(delegate);
+        RepresentationCache cache = getRepresentationCache();
+        if (cache != null) {
+            cache.evict(queueData.getUuid());
+        }
+        return queueData;
+    }
+
+    /**
+     * Serve the representation from the cache when the queue data didn't change since it was rendered for the same
+     * representation and user.
+     */
+    @Override
+    public SimpleObject asRepresentation(final QueueData delegate, final Representation representation)
+            throws ConversionException {
+        RepresentationCache cache = getRepresentationCache();
+        if (cache == null) {
+            return super.asRepresentation(delegate, representation);
+        }
+        String version = String.valueOf(delegate.getDateChanged());
+        User user = Context.getAuthenticatedUser();
+        SimpleObject simpleObject = cache.get(delegate.getUuid(), version, representation.getRepresentation(), user);
+        if (simpleObject == null) {
+            simpleObject = super.asRepresentation(delegate, representation);
+            cache.put(delegate.getUuid(), version, representation.getRepresentation(), user, simpleObject);
+        }
+        return simpleObject;
+    }
+
+    private RepresentationCache getRepresentationCache() {
+        if (representationCache == null) {
+            representationCache = RepresentationCache.getRegisteredCache(REPRESENTATION_CACHE);
+        }
+        return representationCache;
     }
 
     /**
@@ -218,6 +262,8 @@ public class QueueDataResource extends DataDelegatingCrudResource<QueueData> {
             dataSource = dataSources.get(0);
         }
 
+        Object event = FlightEvents.QUEUE_DATA_INGESTED.begin();
+        long parseStart = System.nanoTime();
         Object payloadObject = propertiesToCreate.get("payload");
         if (payloadObject == null) {
             throw new ConversionException("The payload property is missing!");
@@ -242,7 +288,12 @@ public class QueueDataResource extends DataDelegatingCrudResource<QueueData> {
         queueData.setPayload(payload);
 
         setConvertedProperties(queueData, propertiesToCreate, getCreatableProperties(), true);
+        long persistStart = System.nanoTime();
         queueData = save(queueData);
+        if (event != null) {
+            FlightEvents.QUEUE_DATA_INGESTED.commit(event, queueData.getDiscriminator(), dataSource.getName(),
+                    payload.length(), persistStart - parseStart, System.nanoTime() - persistStart);
+        }
         return ConversionUtil.convertToRepresentation(queueData, Representation.DEFAULT);
     }
 }
@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.muzima.web.utils;
+
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.muzima.notification.PersonCache;
+import org.openmrs.module.webservices.rest.SimpleObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded least recently used cache of the rendered representations of a resource. The representations are cached
+ * per uuid together with the version of the object they were rendered from, a representation rendered from an older
+ * version of the object is never returned. Within the object, a representation is cached per representation name and
+ * user, as the rendered properties depend on the privileges of the user. Callers always get a copy, so changing the
+ * returned representation doesn't change the cached one.
+ * <p/>
+ * The caches are spring beans of the module, looked up by name with {@link #getRegisteredCache(String)}. The entries
+ * rendered from a person are dropped when the person changes, see {@link PersonCache}.
+ */
+public class RepresentationCache implements PersonCache {
+
+    private final String name;
+
+    private final Map<String, Entry> entries;
+
+    public RepresentationCache(final String name, final int maxSize) {
+        this.name = name;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the registered representation cache with the name.
+     *
+     * @param name the cache name.
+     * @return the representation cache or null when no cache with the name is registered.
+     */
+    public static RepresentationCache getRegisteredCache(final String name) {
+        for (RepresentationCache representationCache : Context.getRegisteredComponents(RepresentationCache.class)) {
+            if (representationCache.getName().equals(name)) {
+                return representationCache;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get a copy of the cached representation.
+     *
+     * @param uuid           the uuid of the object.
+     * @param version        the current version of the object.
+     * @param representation the name of the representation.
+     * @param user           the user the representation is rendered for.
+     * @return a copy of the cached representation or null when the representation of this version is not cached.
+     */
+    public SimpleObject get(final String uuid, final String version, final String representation, final User user) {
+        SimpleObject simpleObject;
+        synchronized (this) {
+            Entry entry = entries.get(uuid);
+            if (entry == null || !entry.version.equals(version)) {
+                return null;
+            }
+            simpleObject = entry.representations.get(getKey(representation, user));
+        }
+        return simpleObject == null ? null : (SimpleObject) copy(simpleObject);
+    }
+
+    /**
+     * Cache a copy of the representation, dropping the representations of the older versions of the object.
+     *
+     * @param uuid           the uuid of the object.
+     * @param version        the current version of the object.
+     * @param representation the name of the representation.
+     * @param user           the user the representation is rendered for.
+     * @param simpleObject   the rendered representation.
+     * @param personUuids    the uuids of the persons rendered in the representation.
+     */
+    public void put(final String uuid, final String version, final String representation, final User user,
+                    final SimpleObject simpleObject, final String... personUuids) {
+        SimpleObject cached = (SimpleObject) copy(simpleObject);
+        synchronized (this) {
+            Entry entry = entries.get(uuid);
+            if (entry == null || !entry.version.equals(version)) {
+                entry = new Entry(version);
+                entries.put(uuid, entry);
+            }
+            entry.representations.put(getKey(representation, user), cached);
+            entry.personUuids.addAll(Arrays.asList(personUuids));
+        }
+    }
+
+    /**
+     * Drop all cached representations of the object.
+     *
+     * @param uuid the uuid of the object.
+     */
+    public synchronized void evict(final String uuid) {
+        entries.remove(uuid);
+    }
+
+    /**
+     * Drop all cached representations rendering the person.
+     *
+     * @param personUuid the person uuid.
+     */
+    @Override
+    public synchronized void evictPerson(final String personUuid) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().personUuids.contains(personUuid)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private String getKey(final String representation, final User user) {
+        return representation + "|" + (user == null ? null : user.getUserId());
+    }
+
+    private Object copy(final Object value) {
+        if (value instanceof SimpleObject) {
+            SimpleObject copy = new SimpleObject();
+            for (Map.Entry<String, Object> entry : ((SimpleObject) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>();
+            for (Object element : (List<?>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    private static class Entry {
+
+        private final String version;
+
+        private final Map<String, SimpleObject> representations = new HashMap<String, SimpleObject>();
+
+        private final Set<String> personUuids = new HashSet<String>();
+
+        private Entry(final String version) {
+            this.version = version;
+        }
+    }
+}
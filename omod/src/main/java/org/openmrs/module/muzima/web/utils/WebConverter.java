@@ -18,7 +18,10 @@ import org.openmrs.module.muzima.model.DataSource;
 import org.openmrs.module.muzima.model.ErrorData;
 import org.openmrs.module.muzima.model.QueueData;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -62,4 +65,28 @@ public class WebConverter {
         }
         return map;
     }
+
+    /**
+     * Convert the posted uuid list. The json body is bound to a map, so the list arrives as a list and not an array.
+     *
+     * @param uuids the posted uuid list.
+     * @return the uuid list, empty when nothing was posted.
+     */
+    public static List<String> convertUuidList(final Object uuids) {
+        List<String> uuidList = new ArrayList<String>();
+        if (uuids instanceof Collection) {
+            for (Object uuid : (Collection<?>) uuids) {
+                if (uuid != null) {
+                    uuidList.add(String.valueOf(uuid));
+                }
+            }
+        } else if (uuids instanceof Object[]) {
+            for (Object uuid : (Object[]) uuids) {
+                if (uuid != null) {
+                    uuidList.add(String.valueOf(uuid));
+                }
+            }
+        }
+        return uuidList;
+    }
 }
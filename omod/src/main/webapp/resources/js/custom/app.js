@@ -17,6 +17,8 @@ muzima.
             templateUrl: '../../moduleResources/muzima/partials/source.html'});
         $routeProvider.when('/sources', {controller: SourcesCtrl,
             templateUrl: '../../moduleResources/muzima/partials/sources.html'});
+        $routeProvider.when('/breakers', {controller: BreakersCtrl,
+            templateUrl: '../../moduleResources/muzima/partials/breakers.html'});
         $routeProvider.otherwise({redirectTo: '/sources'});
     }]);
 
@@ -65,6 +67,13 @@ muzima.factory('$data', function ($http) {
     var deleteSource = function (uuid) {
         return $http.post("source.json", {"uuid": uuid});
     };
+
+    var getBreakers = function () {
+        return $http.get("breakers.json");
+    };
+    var resetBreaker = function (discriminator) {
+        return $http.post("breakers.json", {"discriminator": discriminator});
+    };
     return {
         getQueues: getQueues,
         getQueue: getQueue,
@@ -77,7 +86,10 @@ muzima.factory('$data', function ($http) {
         getSources: getSources,
         getSource: getSource,
         saveSource: saveSource,
-        deleteSource: deleteSource
+        deleteSource: deleteSource,
+
+        getBreakers: getBreakers,
+        resetBreaker: resetBreaker
     }
 });
 
@@ -224,4 +224,25 @@ function SourcesCtrl($scope, $data) {
                 });
         }
     }, true);
-}
\ No newline at end of file
+}
+
+function BreakersCtrl($scope, $data) {
+    var loadBreakers = function () {
+        $data.getBreakers().
+            then(function (response) {
+                var serverData = response.data;
+                $scope.threshold = serverData.threshold;
+                $scope.coolDown = serverData.coolDown / 1000;
+                $scope.held = serverData.held;
+                $scope.breakers = serverData.objects;
+            });
+    };
+    loadBreakers();
+
+    $scope.reset = function (discriminator) {
+        $data.resetBreaker(discriminator).
+            then(function () {
+                loadBreakers();
+            })
+    };
+}